@@ -0,0 +1,201 @@
+package com.cs663.visionassist;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of mutable bitmaps shared by the capture pipeline.
+ *
+ * Capture conversion, resizing, the perceptual hash and the Gemini encoder borrow bitmaps
+ * here instead of allocating a new one per frame, and give them back when done. Free
+ * bitmaps are bucketed by allocation size; a request is served from the smallest bucket
+ * that fits (up to MAX_SIZE_MULTIPLE times the size needed) and the bitmap is reconfigured
+ * to the requested dimensions. Free bitmaps are kept within a global byte budget, dropping
+ * the least recently returned first, and are released under memory pressure.
+ *
+ * A bitmap that outlives its borrower - the processed frame is still read by the Gemini
+ * encoder after processImage() returns - is retain()ed by the second user; it goes back to
+ * the pool on the last release().
+ */
+public final class BitmapPool {
+    private static final String TAG = "BitmapPool";
+    private static final int MAX_BUDGET_BYTES = 24 * 1024 * 1024;
+    private static final int MAX_SIZE_MULTIPLE = 2; // don't hand out much larger bitmaps
+
+    private static BitmapPool instance;
+
+    private final int budgetBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    private final ArrayDeque<Bitmap> releaseOrder = new ArrayDeque<>(); // oldest first
+    private final Map<Bitmap, Integer> retainCounts = new IdentityHashMap<>();
+    private final Paint filterPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private long pooledBytes;
+
+    private long hits;
+    private long misses;
+    private long bytesSaved;
+    private long evictions;
+
+    BitmapPool(int budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public static synchronized BitmapPool getInstance() {
+        if (instance == null) {
+            long heapBudget = Runtime.getRuntime().maxMemory() / 8;
+            instance = new BitmapPool((int) Math.min(heapBudget, MAX_BUDGET_BYTES));
+        }
+        return instance;
+    }
+
+    /**
+     * A bitmap of the given size, cleared to transparent.
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = acquireDirty(width, height, config);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * A bitmap of the given size with undefined contents, for callers that overwrite every
+     * pixel (setPixels, decoding with inBitmap).
+     */
+    public synchronized Bitmap acquireDirty(int width, int height, Bitmap.Config config) {
+        if (config == null) {
+            config = Bitmap.Config.ARGB_8888;
+        }
+        int needed = width * height * bytesPerPixel(config);
+        Integer size = buckets.ceilingKey(needed);
+        if (size != null && size <= (long) needed * MAX_SIZE_MULTIPLE) {
+            ArrayDeque<Bitmap> bucket = buckets.get(size);
+            Bitmap bitmap = bucket.pollFirst();
+            if (bucket.isEmpty()) {
+                buckets.remove(size);
+            }
+            releaseOrder.removeFirstOccurrence(bitmap);
+            pooledBytes -= size;
+            if (bitmap.getWidth() != width || bitmap.getHeight() != height
+                    || bitmap.getConfig() != config) {
+                bitmap.reconfigure(width, height, config);
+            }
+            hits++;
+            bytesSaved += needed;
+            return bitmap;
+        }
+        misses++;
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Keeps a borrowed bitmap out of the pool until one more release().
+     */
+    public synchronized void retain(Bitmap bitmap) {
+        if (bitmap != null) {
+            Integer count = retainCounts.get(bitmap);
+            retainCounts.put(bitmap, (count != null ? count : 1) + 1);
+        }
+    }
+
+    /**
+     * Gives a bitmap back. Bitmaps that cannot be reused (immutable, or too large for the
+     * budget) are recycled right away; the caller must not touch the bitmap afterwards.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        Integer count = retainCounts.get(bitmap);
+        if (count != null) {
+            if (count > 2) {
+                retainCounts.put(bitmap, count - 1);
+            } else {
+                retainCounts.remove(bitmap);
+            }
+            return; // still in use by whoever retained it
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || size > budgetBytes / 2) {
+            bitmap.recycle();
+            return;
+        }
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(size, bucket);
+        }
+        bucket.addLast(bitmap);
+        releaseOrder.addLast(bitmap);
+        pooledBytes += size;
+        trimToSize(budgetBytes);
+    }
+
+    /**
+     * Pooled copy of src (or of its srcRect region) scaled to width x height.
+     */
+    public Bitmap scaled(Bitmap src, Rect srcRect, int width, int height) {
+        Bitmap dst = acquire(width, height, Bitmap.Config.ARGB_8888);
+        Rect dstRect = new Rect(0, 0, width, height);
+        synchronized (filterPaint) {
+            new Canvas(dst).drawBitmap(src, srcRect, dstRect, filterPaint);
+        }
+        return dst;
+    }
+
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            synchronized (this) {
+                trimToSize(budgetBytes / 2);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        Log.d(TAG, "Clearing pool (" + getMetricsSummary() + ")");
+        trimToSize(0);
+    }
+
+    private void trimToSize(long maxBytes) {
+        while (pooledBytes > maxBytes && !releaseOrder.isEmpty()) {
+            Bitmap eldest = releaseOrder.pollFirst();
+            int size = eldest.getAllocationByteCount();
+            ArrayDeque<Bitmap> bucket = buckets.get(size);
+            if (bucket != null) {
+                bucket.remove(eldest);
+                if (bucket.isEmpty()) {
+                    buckets.remove(size);
+                }
+            }
+            pooledBytes -= size;
+            evictions++;
+            eldest.recycle();
+        }
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return config == Bitmap.Config.RGB_565 ? 2 : 4;
+    }
+
+    public synchronized String getMetricsSummary() {
+        long requests = hits + misses;
+        return String.format(Locale.US,
+            "hits: %d/%d, saved: %d KB, pooled: %d KB of %d KB, evictions: %d",
+            hits, requests, bytesSaved / 1024, pooledBytes / 1024, budgetBytes / 1024, evictions);
+    }
+}
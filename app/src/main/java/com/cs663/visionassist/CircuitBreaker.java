@@ -0,0 +1,191 @@
+package com.cs663.visionassist;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Circuit breaker for a remote dependency (the Gemini API).
+ *
+ * Tracks the last WINDOW_SIZE calls. The breaker opens when the error rate reaches the
+ * threshold (after MIN_CALLS calls) or the p95 latency exceeds the latency threshold (over a
+ * full window); while open, allowRequest() returns false and callers go straight to their
+ * fallback instead of paying the full timeout. After the open period one probe request is
+ * let through (half-open): success closes the breaker, failure re-opens it with the open
+ * period doubled, up to maxOpenMs.
+ *
+ * Pure Java with an injectable clock, so the state machine runs without a device or network.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Time source in ms.
+     */
+    public interface Clock {
+        long nowMs();
+    }
+
+    private static final int WINDOW_SIZE = 20;
+    private static final int MIN_CALLS = 5;
+    // p95 of fewer calls is just the slowest one; wait for a full window so a single slow
+    // call (already counted as a failure if it timed out) does not trip the breaker
+    private static final int MIN_CALLS_FOR_LATENCY = WINDOW_SIZE;
+
+    private final float errorRateThreshold;
+    private final long latencyThresholdMs;
+    private final long baseOpenMs;
+    private final long maxOpenMs;
+    private final Clock clock;
+
+    // Ring buffer of the most recent outcomes
+    private final boolean[] failed = new boolean[WINDOW_SIZE];
+    private final long[] latencies = new long[WINDOW_SIZE];
+    private final long[] sortedLatencies = new long[WINDOW_SIZE];
+    private int windowCount;
+    private int windowNext;
+
+    private State state = State.CLOSED;
+    private long openUntilMs;
+    private long openMs;
+    private boolean probeInFlight;
+
+    private long calls;
+    private long failures;
+    private long shortCircuited;
+    private long trips;
+
+    public CircuitBreaker(float errorRateThreshold, long latencyThresholdMs, long baseOpenMs, long maxOpenMs) {
+        this(errorRateThreshold, latencyThresholdMs, baseOpenMs, maxOpenMs,
+            () -> System.nanoTime() / 1_000_000);
+    }
+
+    public CircuitBreaker(float errorRateThreshold, long latencyThresholdMs, long baseOpenMs, long maxOpenMs,
+                          Clock clock) {
+        this.errorRateThreshold = errorRateThreshold;
+        this.latencyThresholdMs = latencyThresholdMs;
+        this.baseOpenMs = baseOpenMs;
+        this.maxOpenMs = maxOpenMs;
+        this.openMs = baseOpenMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Whether a call may go to the remote now. Every allowed call must be followed by
+     * recordSuccess() or recordFailure().
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && clock.nowMs() >= openUntilMs) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true; // a single probe at a time
+            return true;
+        }
+        shortCircuited++;
+        return false;
+    }
+
+    public synchronized void recordSuccess(long latencyMs) {
+        record(false, latencyMs);
+    }
+
+    /**
+     * A failed call; timeouts count as failures with their full latency.
+     */
+    public synchronized void recordFailure(long latencyMs) {
+        record(true, latencyMs);
+    }
+
+    private void record(boolean failure, long latencyMs) {
+        calls++;
+        if (failure) {
+            failures++;
+        }
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            if (failure || latencyMs > latencyThresholdMs) {
+                openMs = Math.min(maxOpenMs, openMs * 2);
+                open();
+            } else {
+                state = State.CLOSED;
+                openMs = baseOpenMs;
+                windowCount = 0;
+                windowNext = 0;
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return; // a call admitted before the breaker opened
+        }
+
+        failed[windowNext] = failure;
+        latencies[windowNext] = latencyMs;
+        windowNext = (windowNext + 1) % WINDOW_SIZE;
+        windowCount = Math.min(WINDOW_SIZE, windowCount + 1);
+        if ((windowCount >= MIN_CALLS && getErrorRate() >= errorRateThreshold)
+                || (windowCount >= MIN_CALLS_FOR_LATENCY && getP95LatencyMs() > latencyThresholdMs)) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntilMs = clock.nowMs() + openMs;
+        trips++;
+    }
+
+    public synchronized State getState() {
+        // Report HALF_OPEN as soon as the open period is over, even before the next request
+        if (state == State.OPEN && clock.nowMs() >= openUntilMs) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Error rate over the rolling window (0 when empty).
+     */
+    public synchronized float getErrorRate() {
+        if (windowCount == 0) {
+            return 0;
+        }
+        int failedCount = 0;
+        for (int i = 0; i < windowCount; i++) {
+            if (failed[i]) {
+                failedCount++;
+            }
+        }
+        return (float) failedCount / windowCount;
+    }
+
+    /**
+     * 95th percentile latency over the rolling window (0 when empty).
+     */
+    public synchronized long getP95LatencyMs() {
+        if (windowCount == 0) {
+            return 0;
+        }
+        System.arraycopy(latencies, 0, sortedLatencies, 0, windowCount);
+        Arrays.sort(sortedLatencies, 0, windowCount);
+        int index = (int) Math.ceil(0.95 * windowCount) - 1;
+        return sortedLatencies[Math.max(0, index)];
+    }
+
+    public synchronized long getShortCircuitedCount() {
+        return shortCircuited;
+    }
+
+    public synchronized long getTripCount() {
+        return trips;
+    }
+
+    public synchronized String getMetricsSummary() {
+        return String.format(Locale.US,
+            "state: %s, error rate: %.0f%%, p95: %d ms, calls: %d, failures: %d, short-circuited: %d, trips: %d",
+            getState(), getErrorRate() * 100, getP95LatencyMs(), calls, failures, shortCircuited, trips);
+    }
+}
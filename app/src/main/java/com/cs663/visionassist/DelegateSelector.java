@@ -0,0 +1,387 @@
+package com.cs663.visionassist;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+import org.tensorflow.lite.gpu.CompatibilityList;
+import org.tensorflow.lite.gpu.GpuDelegate;
+import org.tensorflow.lite.nnapi.NnApiDelegate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the fastest inference delegate that produces correct output on this device.
+ *
+ * On first use for a model, every supported delegate (GPU, NNAPI, XNNPACK CPU) is probed
+ * with a short warm-up benchmark on a synthetic input. Outputs are compared against the
+ * plain CPU reference, and the fastest delegate whose output matches wins. The decision is
+ * cached in SharedPreferences per model and build fingerprint, so the probe runs once per
+ * device/OS version. Anything that fails falls back to the CPU reference.
+ */
+public class DelegateSelector {
+    private static final String TAG = "DelegateSelector";
+    private static final String PREFS_NAME = "delegate_selection";
+    private static final int WARMUP_RUNS = 2;
+    private static final int BENCHMARK_RUNS = 5;
+    private static final float MAX_OUTPUT_DIFFERENCE = 0.1f; // mean relative difference vs. CPU
+    private static final int DEFAULT_CPU_THREADS = 4;
+
+    private static DelegateSelector instance;
+
+    private final SharedPreferences preferences;
+    private final Map<String, InferenceDelegate> selections = new HashMap<>();
+    private int cpuThreads = DEFAULT_CPU_THREADS;
+
+    /**
+     * Benchmarks a single delegate. Separated out so selection logic can be exercised
+     * without a device.
+     */
+    public interface Probe {
+        ProbeResult run(InferenceDelegate delegate) throws Exception;
+    }
+
+    public static class ProbeResult {
+        private final float averageMs;
+        private final float[] output;
+
+        public ProbeResult(float averageMs, float[] output) {
+            this.averageMs = averageMs;
+            this.output = output;
+        }
+
+        public float getAverageMs() {
+            return averageMs;
+        }
+
+        public float[] getOutput() {
+            return output;
+        }
+    }
+
+    private DelegateSelector(Context context) {
+        preferences = context.getApplicationContext()
+            .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized DelegateSelector getInstance(Context context) {
+        if (instance == null) {
+            instance = new DelegateSelector(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Number of threads used by the CPU delegates. Takes effect for interpreters created
+     * after the call: the in-memory selections hold delegates built with the old count, so
+     * they are dropped and rebuilt from the stored choice on the next select(), without
+     * probing again.
+     */
+    public synchronized void setCpuThreads(int threads) {
+        int count = Math.max(1, threads);
+        if (count != cpuThreads) {
+            cpuThreads = count;
+            selections.clear();
+        }
+    }
+
+    /**
+     * CPU without XNNPACK - the reference output and the last-resort fallback.
+     */
+    public synchronized InferenceDelegate getCpuFallback() {
+        return new CpuDelegate("cpu", cpuThreads, false);
+    }
+
+    private synchronized List<InferenceDelegate> getCandidates() {
+        List<InferenceDelegate> candidates = new ArrayList<>();
+        candidates.add(getCpuFallback()); // reference must come first
+        candidates.add(new CpuDelegate("xnnpack", cpuThreads, true));
+        candidates.add(new GpuInferenceDelegate());
+        candidates.add(new NnApiInferenceDelegate());
+        return candidates;
+    }
+
+    /**
+     * Returns the delegate to use for the given model, probing and caching on first use.
+     */
+    public synchronized InferenceDelegate select(ModelSpec spec, ByteBuffer modelBuffer) {
+        String modelFile = spec.getModelFile();
+        InferenceDelegate selected = selections.get(modelFile);
+        if (selected != null) {
+            return selected;
+        }
+
+        List<InferenceDelegate> candidates = getCandidates();
+        String cacheKey = cacheKey(modelFile);
+        String cachedName = preferences.getString(cacheKey, null);
+        for (InferenceDelegate candidate : candidates) {
+            if (candidate.getName().equals(cachedName) && candidate.isSupported()) {
+                selected = candidate;
+                break;
+            }
+        }
+
+        if (selected == null) {
+            List<String> probeLog = new ArrayList<>();
+            selected = selectFastest(candidates, delegate -> benchmark(delegate, modelBuffer, spec), probeLog);
+            for (String line : probeLog) {
+                Log.d(TAG, line);
+            }
+            preferences.edit().putString(cacheKey, selected.getName()).apply();
+        }
+        Log.d(TAG, "Using '" + selected.getName() + "' delegate for " + modelFile);
+        selections.put(modelFile, selected);
+        return selected;
+    }
+
+    /**
+     * Forgets the selection for a model after its delegate failed to create an interpreter,
+     * and pins the CPU fallback instead.
+     */
+    public synchronized InferenceDelegate reportFailure(String modelFile, InferenceDelegate delegate) {
+        Log.w(TAG, "Delegate '" + delegate.getName() + "' failed for " + modelFile + ", falling back to CPU");
+        InferenceDelegate fallback = getCpuFallback();
+        selections.put(modelFile, fallback);
+        preferences.edit().putString(cacheKey(modelFile), fallback.getName()).apply();
+        return fallback;
+    }
+
+    public static InferenceDelegate selectFastest(List<InferenceDelegate> candidates, Probe probe) {
+        return selectFastest(candidates, probe, new ArrayList<>());
+    }
+
+    /**
+     * Probes every supported candidate and returns the fastest one whose output matches the
+     * first (reference) candidate. Returns the reference if nothing else qualifies. One line
+     * per probe outcome is appended to log; nothing here touches the Android framework, so
+     * selection runs in plain JVM tests.
+     */
+    public static InferenceDelegate selectFastest(List<InferenceDelegate> candidates, Probe probe,
+                                                  List<String> log) {
+        InferenceDelegate reference = candidates.get(0);
+        ProbeResult referenceResult;
+        try {
+            referenceResult = probe.run(reference);
+        } catch (Exception e) {
+            log.add("Reference delegate probe failed: " + e.getMessage());
+            return reference;
+        }
+
+        InferenceDelegate best = reference;
+        float bestMs = referenceResult.getAverageMs();
+        log.add(reference.getName() + ": " + bestMs + " ms");
+        for (int i = 1; i < candidates.size(); i++) {
+            InferenceDelegate candidate = candidates.get(i);
+            if (!candidate.isSupported()) {
+                continue;
+            }
+            try {
+                ProbeResult result = probe.run(candidate);
+                boolean correct = outputsMatch(referenceResult.getOutput(), result.getOutput());
+                log.add(candidate.getName() + ": " + result.getAverageMs() + " ms, correct=" + correct);
+                if (correct && result.getAverageMs() < bestMs) {
+                    best = candidate;
+                    bestMs = result.getAverageMs();
+                }
+            } catch (Exception e) {
+                log.add("Delegate '" + candidate.getName() + "' probe failed: " + e.getMessage());
+            }
+        }
+        return best;
+    }
+
+    static boolean outputsMatch(float[] reference, float[] candidate) {
+        if (reference == null || candidate == null || reference.length != candidate.length) {
+            return false;
+        }
+        double difference = 0;
+        double magnitude = 0;
+        for (int i = 0; i < reference.length; i++) {
+            if (Float.isNaN(candidate[i]) || Float.isInfinite(candidate[i])) {
+                return false;
+            }
+            difference += Math.abs(reference[i] - candidate[i]);
+            magnitude += Math.abs(reference[i]);
+        }
+        return magnitude == 0 ? difference == 0 : difference / magnitude <= MAX_OUTPUT_DIFFERENCE;
+    }
+
+    /**
+     * Times WARMUP_RUNS + BENCHMARK_RUNS inferences on a deterministic synthetic input and
+     * returns the average of the timed runs plus all float outputs flattened.
+     */
+    private static ProbeResult benchmark(InferenceDelegate delegate, ByteBuffer modelBuffer, ModelSpec spec) {
+        Interpreter.Options options = new Interpreter.Options();
+        Delegate nativeDelegate = delegate.configure(options);
+        Interpreter interpreter = null;
+        try {
+            interpreter = new Interpreter(modelBuffer, options);
+
+            Tensor inputTensor = interpreter.getInputTensor(0);
+            ByteBuffer input = ByteBuffer.allocateDirect(inputTensor.numBytes())
+                .order(ByteOrder.nativeOrder());
+            fillProbeInput(input, inputTensor.dataType(), spec.getInputMean(), spec.getInputStd());
+
+            Map<Integer, Object> outputs = new HashMap<>();
+            int outputCount = interpreter.getOutputTensorCount();
+            ByteBuffer[] outputBuffers = new ByteBuffer[outputCount];
+            for (int i = 0; i < outputCount; i++) {
+                outputBuffers[i] = ByteBuffer.allocateDirect(interpreter.getOutputTensor(i).numBytes())
+                    .order(ByteOrder.nativeOrder());
+                outputs.put(i, outputBuffers[i]);
+            }
+            Object[] inputs = new Object[]{input};
+
+            long timedNanos = 0;
+            for (int run = 0; run < WARMUP_RUNS + BENCHMARK_RUNS; run++) {
+                input.rewind();
+                for (ByteBuffer buffer : outputBuffers) {
+                    buffer.rewind();
+                }
+                long start = System.nanoTime();
+                interpreter.runForMultipleInputsOutputs(inputs, outputs);
+                if (run >= WARMUP_RUNS) {
+                    timedNanos += System.nanoTime() - start;
+                }
+            }
+
+            List<Float> values = new ArrayList<>();
+            for (int i = 0; i < outputCount; i++) {
+                Tensor tensor = interpreter.getOutputTensor(i);
+                if (tensor.dataType() != DataType.FLOAT32) {
+                    continue;
+                }
+                outputBuffers[i].rewind();
+                FloatBuffer floats = outputBuffers[i].asFloatBuffer();
+                while (floats.hasRemaining()) {
+                    values.add(floats.get());
+                }
+            }
+            float[] output = new float[values.size()];
+            for (int i = 0; i < output.length; i++) {
+                output[i] = values.get(i);
+            }
+            return new ProbeResult(timedNanos / 1_000_000f / BENCHMARK_RUNS, output);
+        } finally {
+            if (interpreter != null) {
+                interpreter.close();
+            }
+            if (nativeDelegate != null) {
+                nativeDelegate.close();
+            }
+        }
+    }
+
+    /**
+     * Fills the input with a deterministic pattern of pixel levels encoded for the input
+     * type: normalized with mean and std for FLOAT32, so delegates are timed on realistic
+     * values rather than raw bytes read as floats, and as plain or signed levels for UINT8
+     * and INT8.
+     */
+    static void fillProbeInput(ByteBuffer input, DataType type, float mean, float std) {
+        if (type == DataType.FLOAT32) {
+            FloatBuffer floats = input.asFloatBuffer();
+            for (int i = 0; i < floats.capacity(); i++) {
+                floats.put(i, (((i * 31) & 0xFF) - mean) / std);
+            }
+            return;
+        }
+        int shift = type == DataType.INT8 ? 128 : 0;
+        for (int i = 0; i < input.capacity(); i++) {
+            input.put(i, (byte) (((i * 31) & 0xFF) - shift));
+        }
+    }
+
+    private static String cacheKey(String modelFile) {
+        return modelFile + "|" + Build.FINGERPRINT;
+    }
+
+    static class CpuDelegate implements InferenceDelegate {
+        private final String name;
+        private final int threads;
+        private final boolean useXnnpack;
+
+        CpuDelegate(String name, int threads, boolean useXnnpack) {
+            this.name = name;
+            this.threads = threads;
+            this.useXnnpack = useXnnpack;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isSupported() {
+            return true;
+        }
+
+        @Override
+        public Delegate configure(Interpreter.Options options) {
+            options.setNumThreads(threads);
+            options.setUseXNNPACK(useXnnpack);
+            return null;
+        }
+    }
+
+    static class GpuInferenceDelegate implements InferenceDelegate {
+        @Override
+        public String getName() {
+            return "gpu";
+        }
+
+        @Override
+        public boolean isSupported() {
+            CompatibilityList compatibilityList = new CompatibilityList();
+            try {
+                return compatibilityList.isDelegateSupportedOnThisDevice();
+            } finally {
+                compatibilityList.close();
+            }
+        }
+
+        @Override
+        public Delegate configure(Interpreter.Options options) {
+            CompatibilityList compatibilityList = new CompatibilityList();
+            try {
+                GpuDelegate delegate = new GpuDelegate(compatibilityList.getBestOptionsForThisDevice());
+                options.addDelegate(delegate);
+                return delegate;
+            } finally {
+                compatibilityList.close();
+            }
+        }
+    }
+
+    static class NnApiInferenceDelegate implements InferenceDelegate {
+        @Override
+        public String getName() {
+            return "nnapi";
+        }
+
+        @Override
+        public boolean isSupported() {
+            // NNAPI 1.1+ (Android 8.1) is needed for the quantized ops EfficientDet uses
+            return Build.VERSION.SDK_INT >= 27;
+        }
+
+        @Override
+        public Delegate configure(Interpreter.Options options) {
+            NnApiDelegate delegate = new NnApiDelegate();
+            options.addDelegate(delegate);
+            return delegate;
+        }
+    }
+}
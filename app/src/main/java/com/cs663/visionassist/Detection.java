@@ -4,8 +4,9 @@ public class Detection {
     private String label;
     private float confidence;
     private int left, top, right, bottom;
-    private String side; // left, center, right
-    private String distance; // near, mid, far
+    private byte side = DetectionBatch.SIDE_CENTER; // left, center, right
+    private byte distance = DetectionBatch.DISTANCE_MID; // near, mid, far
+    private int trackId = -1; // stable across frames when tracked, -1 otherwise
     
     public Detection(String label, float confidence, int left, int top, int right, int bottom) {
         this.label = label;
@@ -41,21 +42,45 @@ public class Detection {
     }
     
     public String getSide() {
-        return side != null ? side : "center";
+        return DetectionBatch.sideName(side);
     }
     
     public void setSide(String side) {
+        this.side = DetectionBatch.sideCode(side);
+    }
+    
+    public byte getSideCode() {
+        return side;
+    }
+    
+    public void setSideCode(byte side) {
         this.side = side;
     }
     
     public String getDistance() {
-        return distance != null ? distance : "mid";
+        return DetectionBatch.distanceName(distance);
     }
     
     public void setDistance(String distance) {
+        this.distance = DetectionBatch.distanceCode(distance);
+    }
+    
+    public byte getDistanceCode() {
+        return distance;
+    }
+    
+    public void setDistanceCode(byte distance) {
         this.distance = distance;
     }
     
+    public int getTrackId() {
+        return trackId;
+    }
+    
+    public void setTrackId(int trackId) {
+        this.trackId = trackId;
+    }
+    
     public int getWidth() {
         return right - left;
     }
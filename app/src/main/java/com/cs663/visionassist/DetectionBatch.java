@@ -0,0 +1,232 @@
+package com.cs663.visionassist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, reusable container for the detections of one frame.
+ *
+ * Stores detections as parallel primitive arrays (box, confidence, class id, track id)
+ * with side and distance as byte codes, so the detect -> analyze -> narrate path can run
+ * without allocating a Detection per box or comparing strings. Labels are looked up from
+ * the class-id table of the model that produced the batch.
+ *
+ * A batch is reset and refilled every frame; arrays only grow. toDetections() and get()
+ * provide Detection views for code that still works on List<Detection>.
+ */
+public class DetectionBatch {
+    public static final byte SIDE_LEFT = 0;
+    public static final byte SIDE_CENTER = 1;
+    public static final byte SIDE_RIGHT = 2;
+    public static final byte DISTANCE_NEAR = 0;
+    public static final byte DISTANCE_MID = 1;
+    public static final byte DISTANCE_FAR = 2;
+
+    private static final String[] SIDE_NAMES = {"left", "center", "right"};
+    private static final String[] DISTANCE_NAMES = {"near", "mid", "far"};
+
+    private List<String> labels = new ArrayList<>();
+    private boolean[] hazardClasses = new boolean[0];
+    private int size;
+    private float[] left;
+    private float[] top;
+    private float[] right;
+    private float[] bottom;
+    private float[] confidence;
+    private int[] classId;
+    private int[] trackId;
+    private byte[] side;
+    private byte[] distance;
+
+    public DetectionBatch(int initialCapacity) {
+        allocate(Math.max(1, initialCapacity));
+    }
+
+    private void allocate(int capacity) {
+        left = new float[capacity];
+        top = new float[capacity];
+        right = new float[capacity];
+        bottom = new float[capacity];
+        confidence = new float[capacity];
+        classId = new int[capacity];
+        trackId = new int[capacity];
+        side = new byte[capacity];
+        distance = new byte[capacity];
+    }
+
+    private void grow() {
+        int capacity = left.length * 2;
+        left = Arrays.copyOf(left, capacity);
+        top = Arrays.copyOf(top, capacity);
+        right = Arrays.copyOf(right, capacity);
+        bottom = Arrays.copyOf(bottom, capacity);
+        confidence = Arrays.copyOf(confidence, capacity);
+        classId = Arrays.copyOf(classId, capacity);
+        trackId = Arrays.copyOf(trackId, capacity);
+        side = Arrays.copyOf(side, capacity);
+        distance = Arrays.copyOf(distance, capacity);
+    }
+
+    /**
+     * Empties the batch and sets the class-id to label table used by the next detections.
+     * The hazard table is only rebuilt when the labels change, not when an equal table
+     * arrives as another list.
+     */
+    public void reset(List<String> labels) {
+        if (labels != this.labels) {
+            if (!labels.equals(this.labels)) {
+                hazardClasses = new boolean[labels.size()];
+                for (int i = 0; i < hazardClasses.length; i++) {
+                    hazardClasses[i] = NarrationGenerator.isHazard(labels.get(i));
+                }
+            }
+            this.labels = labels;
+        }
+        size = 0;
+    }
+
+    /**
+     * Appends a detection with default side/distance (center, mid) and no track id.
+     * Returns its index.
+     */
+    public int add(int classId, float confidence, float left, float top, float right, float bottom) {
+        if (size == this.left.length) {
+            grow();
+        }
+        int i = size++;
+        this.classId[i] = classId;
+        this.confidence[i] = confidence;
+        this.left[i] = left;
+        this.top[i] = top;
+        this.right[i] = right;
+        this.bottom[i] = bottom;
+        this.trackId[i] = -1;
+        this.side[i] = SIDE_CENTER;
+        this.distance[i] = DISTANCE_MID;
+        return i;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public float getLeft(int i) { return left[i]; }
+    public float getTop(int i) { return top[i]; }
+    public float getRight(int i) { return right[i]; }
+    public float getBottom(int i) { return bottom[i]; }
+    public float getWidth(int i) { return right[i] - left[i]; }
+    public float getHeight(int i) { return bottom[i] - top[i]; }
+    public float getCenterX(int i) { return (left[i] + right[i]) / 2f; }
+    public float getCenterY(int i) { return (top[i] + bottom[i]) / 2f; }
+    public float getConfidence(int i) { return confidence[i]; }
+    public int getClassId(int i) { return classId[i]; }
+
+    public String getLabel(int i) {
+        return labels.get(classId[i]);
+    }
+
+    public boolean isHazard(int i) {
+        return hazardClasses[classId[i]];
+    }
+
+    public int getTrackId(int i) {
+        return trackId[i];
+    }
+
+    public void setTrackId(int i, int id) {
+        trackId[i] = id;
+    }
+
+    public byte getSide(int i) {
+        return side[i];
+    }
+
+    public void setSide(int i, byte code) {
+        side[i] = code;
+    }
+
+    public byte getDistance(int i) {
+        return distance[i];
+    }
+
+    public void setDistance(int i, byte code) {
+        distance[i] = code;
+    }
+
+    public static String sideName(byte code) {
+        return SIDE_NAMES[code];
+    }
+
+    public static String distanceName(byte code) {
+        return DISTANCE_NAMES[code];
+    }
+
+    public static byte sideCode(String name) {
+        if ("left".equals(name)) {
+            return SIDE_LEFT;
+        }
+        return "right".equals(name) ? SIDE_RIGHT : SIDE_CENTER;
+    }
+
+    public static byte distanceCode(String name) {
+        if ("near".equals(name)) {
+            return DISTANCE_NEAR;
+        }
+        return "far".equals(name) ? DISTANCE_FAR : DISTANCE_MID;
+    }
+
+    /**
+     * Detection view of entry i (allocates; for callers still on the object API).
+     */
+    public Detection get(int i) {
+        Detection detection = new Detection(getLabel(i), confidence[i],
+            Math.round(left[i]), Math.round(top[i]), Math.round(right[i]), Math.round(bottom[i]));
+        detection.setSideCode(side[i]);
+        detection.setDistanceCode(distance[i]);
+        detection.setTrackId(trackId[i]);
+        return detection;
+    }
+
+    public List<Detection> toDetections() {
+        List<Detection> detections = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            detections.add(get(i));
+        }
+        return detections;
+    }
+
+    /**
+     * Builds a batch from Detection objects, deriving the label table from their labels.
+     */
+    public static DetectionBatch fromDetections(List<Detection> detections) {
+        List<String> labelTable = new ArrayList<>();
+        Map<String, Integer> labelIds = new HashMap<>();
+        for (Detection detection : detections) {
+            if (!labelIds.containsKey(detection.getLabel())) {
+                labelIds.put(detection.getLabel(), labelTable.size());
+                labelTable.add(detection.getLabel());
+            }
+        }
+        DetectionBatch batch = new DetectionBatch(detections.size());
+        batch.reset(labelTable);
+        for (Detection detection : detections) {
+            int i = batch.add(labelIds.get(detection.getLabel()), detection.getConfidence(),
+                detection.getLeft(), detection.getTop(), detection.getRight(), detection.getBottom());
+            batch.setSide(i, detection.getSideCode());
+            batch.setDistance(i, detection.getDistanceCode());
+            batch.setTrackId(i, detection.getTrackId());
+        }
+        return batch;
+    }
+}
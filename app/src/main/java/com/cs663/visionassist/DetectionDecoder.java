@@ -0,0 +1,187 @@
+package com.cs663.visionassist;
+
+import java.util.Arrays;
+
+/**
+ * Turns a detector's output tensors into the final boxes: thresholds, NMS and top-K.
+ *
+ * Two kinds of output are accepted. Models with the post-processing op built in give one
+ * class and score per box; models exported without it give raw per-class scores for every
+ * box (anchor), and each (box, class) pair above its class threshold becomes a candidate.
+ * Raw boxes must already be decoded to normalized [ymin, xmin, ymax, xmax] corners and
+ * scores must be probabilities, as the detection exports with in-graph box decoding produce.
+ *
+ * Every class has its own score threshold (classes without one use the default, and a
+ * threshold above 1 disables a class); candidates then go through NonMaxSuppression, hard or
+ * soft, class-aware or not, with a total and a per-class top-K. Results are read back by
+ * index; boxes stay normalized. Everything is held in primitive arrays that are reused
+ * across calls. Pure Java, not thread-safe.
+ */
+public class DetectionDecoder {
+    public static final float DEFAULT_SCORE_THRESHOLD = 0.5f;
+    public static final float DEFAULT_IOU_THRESHOLD = 0.5f;
+    public static final float DEFAULT_SOFT_SIGMA = 0.5f;
+
+    private final NonMaxSuppression nms = new NonMaxSuppression()
+        .setContainmentThreshold(1f); // one pass: nested boxes are separate objects
+    private float defaultThreshold = DEFAULT_SCORE_THRESHOLD;
+    private float[] classThresholds = new float[0];
+    private int numClasses = Integer.MAX_VALUE; // classes at or above are ignored
+
+    // Candidates, then the kept ones by index into them
+    private int candidateCount;
+    private float[] left = new float[64];
+    private float[] top = new float[64];
+    private float[] right = new float[64];
+    private float[] bottom = new float[64];
+    private float[] scores = new float[64];
+    private int[] classes = new int[64];
+    private int[] keep = new int[64];
+    private int keptCount;
+
+    public DetectionDecoder() {
+        setNms(true, DEFAULT_IOU_THRESHOLD, 0f);
+    }
+
+    /**
+     * Score threshold for classes without their own.
+     */
+    public DetectionDecoder setDefaultThreshold(float threshold) {
+        this.defaultThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Per-class thresholds by class id (NaN = use the default); numClasses is the size of
+     * the label table, and class ids outside it are dropped.
+     */
+    public DetectionDecoder setClassThresholds(float[] thresholds, int numClasses) {
+        this.classThresholds = thresholds != null ? thresholds : new float[0];
+        this.numClasses = numClasses;
+        return this;
+    }
+
+    /**
+     * @param softSigma 0 for hard NMS, otherwise the Gaussian Soft-NMS sigma
+     */
+    public DetectionDecoder setNms(boolean classAware, float iouThreshold, float softSigma) {
+        nms.setClassAware(classAware).setIouThreshold(iouThreshold).setSoftSigma(softSigma);
+        return this;
+    }
+
+    /**
+     * Keeps at most maxDetections boxes in total and maxPerClass per class.
+     */
+    public DetectionDecoder setTopK(int maxDetections, int maxPerClass) {
+        nms.setMaxDetections(maxDetections).setMaxPerClass(maxPerClass);
+        return this;
+    }
+
+    /**
+     * Decodes post-processed outputs: boxes [count][4], one class id and score per box.
+     *
+     * @return the number of kept boxes
+     */
+    public int decode(float[][] boxes, float[] boxClasses, float[] boxScores, int count) {
+        candidateCount = 0;
+        for (int i = 0; i < count; i++) {
+            int classId = (int) boxClasses[i];
+            float score = boxScores[i];
+            if (score >= threshold(classId)) {
+                addCandidate(boxes[i], classId, score);
+            }
+        }
+        return suppress();
+    }
+
+    /**
+     * Decodes raw outputs: boxes [count][4] and per-class scores [count][classes].
+     *
+     * @return the number of kept boxes
+     */
+    public int decode(float[][] boxes, float[][] classScores, int count) {
+        candidateCount = 0;
+        float minThreshold = minThreshold();
+        for (int i = 0; i < count; i++) {
+            float[] row = classScores[i];
+            for (int classId = 0; classId < row.length; classId++) {
+                float score = row[classId];
+                // Most anchors score near zero for every class: one compare rejects them
+                if (score >= minThreshold && score >= threshold(classId)) {
+                    addCandidate(boxes[i], classId, score);
+                }
+            }
+        }
+        return suppress();
+    }
+
+    private int suppress() {
+        // Soft-NMS drops a box once its decayed score falls below every class threshold
+        nms.setMinScore(minThreshold());
+        if (keep.length < candidateCount) {
+            keep = new int[left.length];
+        }
+        keptCount = nms.run(left, top, right, bottom, scores, classes, candidateCount, keep);
+        // A decayed box may still be under its own class threshold
+        int kept = 0;
+        for (int k = 0; k < keptCount; k++) {
+            int i = keep[k];
+            if (scores[i] >= threshold(classes[i])) {
+                keep[kept++] = i;
+            }
+        }
+        keptCount = kept;
+        return keptCount;
+    }
+
+    private float threshold(int classId) {
+        if (classId < 0 || classId >= numClasses) {
+            return Float.POSITIVE_INFINITY;
+        }
+        if (classId < classThresholds.length && !Float.isNaN(classThresholds[classId])) {
+            return classThresholds[classId];
+        }
+        return defaultThreshold;
+    }
+
+    private float minThreshold() {
+        float min = defaultThreshold;
+        for (float threshold : classThresholds) {
+            if (threshold < min) {
+                min = threshold;
+            }
+        }
+        return min;
+    }
+
+    private void addCandidate(float[] box, int classId, float score) {
+        if (candidateCount == left.length) {
+            int capacity = left.length * 2;
+            left = Arrays.copyOf(left, capacity);
+            top = Arrays.copyOf(top, capacity);
+            right = Arrays.copyOf(right, capacity);
+            bottom = Arrays.copyOf(bottom, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+            classes = Arrays.copyOf(classes, capacity);
+        }
+        int i = candidateCount++;
+        top[i] = box[0];
+        left[i] = box[1];
+        bottom[i] = box[2];
+        right[i] = box[3];
+        scores[i] = score;
+        classes[i] = classId;
+    }
+
+    public int size() {
+        return keptCount;
+    }
+
+    // Kept box k, highest score first; coordinates are normalized like the model output
+    public float getLeft(int k) { return left[keep[k]]; }
+    public float getTop(int k) { return top[keep[k]]; }
+    public float getRight(int k) { return right[keep[k]]; }
+    public float getBottom(int k) { return bottom[keep[k]]; }
+    public float getScore(int k) { return scores[keep[k]]; }
+    public int getClassId(int k) { return classes[keep[k]]; }
+}
@@ -0,0 +1,130 @@
+package com.cs663.visionassist;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Bounding boxes and labels of a result, drawn over the captured image.
+ *
+ * Layered on top of the image (see ResultsActivity) instead of painted into a copy of it:
+ * the processed bitmap is shared with the result store and may still be read by the Gemini
+ * encoder, and no second full-size bitmap is needed. Coordinates are in image pixels and
+ * are scaled to the drawable bounds, which match the image's.
+ */
+public class DetectionOverlayDrawable extends Drawable {
+    private final DetectionBatch detections;
+    private final List<OCRResult.TextRegion> textRegions;
+    private final int imageWidth;
+    private final int imageHeight;
+
+    private final Paint objectPaint = new Paint();
+    private final Paint textPaint = new Paint();
+    private final Paint labelPaint = new Paint();
+    private final Paint backgroundPaint = new Paint();
+    private final Rect rect = new Rect();
+    private int alpha = 255;
+
+    public DetectionOverlayDrawable(DetectionBatch detections, List<OCRResult.TextRegion> textRegions,
+                                    int imageWidth, int imageHeight) {
+        this.detections = detections;
+        this.textRegions = textRegions;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+
+        objectPaint.setStyle(Paint.Style.STROKE);
+        objectPaint.setStrokeWidth(4f);
+
+        textPaint.setStyle(Paint.Style.STROKE);
+        textPaint.setStrokeWidth(4f);
+        textPaint.setColor(Color.CYAN); // Cyan for text bounding boxes
+
+        labelPaint.setColor(Color.WHITE);
+        labelPaint.setTextSize(32f);
+        labelPaint.setStyle(Paint.Style.FILL);
+        labelPaint.setFakeBoldText(true);
+
+        backgroundPaint.setColor(Color.BLACK);
+        backgroundPaint.setStyle(Paint.Style.FILL);
+        backgroundPaint.setAlpha(128); // Semi-transparent background for labels
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        Rect bounds = getBounds();
+        if (imageWidth <= 0 || imageHeight <= 0 || bounds.width() <= 0 || bounds.height() <= 0) {
+            return;
+        }
+        int saveCount = canvas.save();
+        canvas.translate(bounds.left, bounds.top);
+        canvas.scale((float) bounds.width() / imageWidth, (float) bounds.height() / imageHeight);
+
+        for (OCRResult.TextRegion region : textRegions) {
+            rect.set(region.getLeft(), region.getTop(), region.getRight(), region.getBottom());
+            canvas.drawRect(rect, textPaint);
+            drawLabel(canvas, "TEXT: " + region.getText(), region.getLeft(), region.getTop());
+        }
+
+        for (int i = 0; i < detections.size(); i++) {
+            // Choose color based on distance for objects
+            byte distance = detections.getDistance(i);
+            if (distance == DetectionBatch.DISTANCE_NEAR) {
+                objectPaint.setColor(Color.RED);
+            } else if (distance == DetectionBatch.DISTANCE_MID) {
+                objectPaint.setColor(Color.YELLOW);
+            } else {
+                objectPaint.setColor(Color.GREEN);
+            }
+            objectPaint.setAlpha(alpha); // setColor() resets it
+            int left = Math.round(detections.getLeft(i));
+            int top = Math.round(detections.getTop(i));
+            rect.set(left, top, Math.round(detections.getRight(i)), Math.round(detections.getBottom(i)));
+            canvas.drawRect(rect, objectPaint);
+            drawLabel(canvas, String.format(Locale.US, "%s (%.0f%%)",
+                detections.getLabel(i), detections.getConfidence(i) * 100), left, top);
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    private void drawLabel(Canvas canvas, String labelText, int left, int top) {
+        float textWidth = labelPaint.measureText(labelText);
+        rect.set(left, Math.max(0, top - 40), left + (int) textWidth + 10, top);
+        canvas.drawRect(rect, backgroundPaint);
+        canvas.drawText(labelText, left + 5, top - 10, labelPaint);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return imageWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return imageHeight;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        this.alpha = alpha;
+        textPaint.setAlpha(alpha);
+        labelPaint.setAlpha(alpha);
+        backgroundPaint.setAlpha(alpha / 2);
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        // Box colors carry meaning (distance), so they are never filtered
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,196 @@
+package com.cs663.visionassist;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Cheap check of whether a frame is worth running the models on.
+ *
+ * Sharpness is the variance of the 4-neighbour Laplacian (the usual blur measure: motion
+ * blur and defocus remove the high frequencies it responds to), taken at a fixed grid of
+ * SAMPLE_COLUMNS x SAMPLE_ROWS points with their real neighbours, so the cost does not grow
+ * with resolution. The luma values at the same points form a histogram for the exposure
+ * check: a frame is too dark or over-exposed when most of it sits in the crushed or clipped
+ * end of the range. Both come out of one pass over the Y plane, without RGB conversion.
+ *
+ * Sharpness depends on scene texture as well as blur (a blank wall scores low), so the
+ * threshold is tunable and burst selection compares getSharpness() between frames rather
+ * than against it. Pure Java; one instance per frame source, not thread-safe.
+ */
+public class FrameQualityGate {
+    public static final int OK = 0;
+    public static final int BLURRED = 1;
+    public static final int TOO_DARK = 2;
+    public static final int OVEREXPOSED = 3;
+
+    public static final int SAMPLE_COLUMNS = 96;
+    public static final int SAMPLE_ROWS = 72;
+
+    public static final float DEFAULT_SHARPNESS_THRESHOLD = 100f; // Laplacian variance
+    private static final int DARK_LEVEL = 24;          // luma at or below counts as crushed
+    private static final int BRIGHT_LEVEL = 240;       // luma at or above counts as clipped
+    private static final float MAX_DARK_FRACTION = 0.7f;
+    private static final float MAX_BRIGHT_FRACTION = 0.5f;
+
+    private final int[] histogram = new int[256];
+    private float sharpnessThreshold;
+
+    private float sharpness;
+    private float meanLuma;
+    private float darkFraction;
+    private float brightFraction;
+    private int verdict = OK;
+
+    private long frames;
+    private long blurred;
+    private long dark;
+    private long overexposed;
+
+    public FrameQualityGate() {
+        this(DEFAULT_SHARPNESS_THRESHOLD);
+    }
+
+    public FrameQualityGate(float sharpnessThreshold) {
+        this.sharpnessThreshold = sharpnessThreshold;
+    }
+
+    /**
+     * Frames whose Laplacian variance is below the threshold count as blurred.
+     */
+    public void setSharpnessThreshold(float sharpnessThreshold) {
+        this.sharpnessThreshold = sharpnessThreshold;
+    }
+
+    /**
+     * Scores a Y plane (e.g. plane 0 of a YUV_420_888 ImageProxy) and returns the verdict.
+     */
+    public int evaluate(ByteBuffer yPlane, int rowStride, int pixelStride, int width, int height) {
+        Arrays.fill(histogram, 0);
+        long sum = 0;
+        long sumSquares = 0;
+        for (int row = 0; row < SAMPLE_ROWS; row++) {
+            int center = sampleCoordinate(row, SAMPLE_ROWS, height) * rowStride;
+            for (int column = 0; column < SAMPLE_COLUMNS; column++) {
+                int index = center + sampleCoordinate(column, SAMPLE_COLUMNS, width) * pixelStride;
+                int luma = yPlane.get(index) & 0xFF;
+                int laplacian = 4 * luma
+                    - (yPlane.get(index - pixelStride) & 0xFF) - (yPlane.get(index + pixelStride) & 0xFF)
+                    - (yPlane.get(index - rowStride) & 0xFF) - (yPlane.get(index + rowStride) & 0xFF);
+                histogram[luma]++;
+                sum += laplacian;
+                sumSquares += laplacian * laplacian;
+            }
+        }
+        return decide(sum, sumSquares);
+    }
+
+    /**
+     * Scores ARGB pixels (e.g. from Bitmap.getPixels()), row stride = width.
+     */
+    public int evaluate(int[] argb, int width, int height) {
+        Arrays.fill(histogram, 0);
+        long sum = 0;
+        long sumSquares = 0;
+        for (int row = 0; row < SAMPLE_ROWS; row++) {
+            int center = sampleCoordinate(row, SAMPLE_ROWS, height) * width;
+            for (int column = 0; column < SAMPLE_COLUMNS; column++) {
+                int index = center + sampleCoordinate(column, SAMPLE_COLUMNS, width);
+                int luma = luma(argb[index]);
+                int laplacian = 4 * luma - luma(argb[index - 1]) - luma(argb[index + 1])
+                    - luma(argb[index - width]) - luma(argb[index + width]);
+                histogram[luma]++;
+                sum += laplacian;
+                sumSquares += laplacian * laplacian;
+            }
+        }
+        return decide(sum, sumSquares);
+    }
+
+    private int decide(long sum, long sumSquares) {
+        int samples = SAMPLE_ROWS * SAMPLE_COLUMNS;
+        float mean = (float) sum / samples;
+        sharpness = (float) sumSquares / samples - mean * mean;
+
+        long lumaSum = 0;
+        int darkCount = 0;
+        int brightCount = 0;
+        for (int level = 0; level < histogram.length; level++) {
+            lumaSum += (long) level * histogram[level];
+            if (level <= DARK_LEVEL) {
+                darkCount += histogram[level];
+            } else if (level >= BRIGHT_LEVEL) {
+                brightCount += histogram[level];
+            }
+        }
+        meanLuma = (float) lumaSum / samples;
+        darkFraction = (float) darkCount / samples;
+        brightFraction = (float) brightCount / samples;
+
+        // Exposure first: a black or blown-out frame also has no detail
+        frames++;
+        if (darkFraction > MAX_DARK_FRACTION) {
+            verdict = TOO_DARK;
+            dark++;
+        } else if (brightFraction > MAX_BRIGHT_FRACTION) {
+            verdict = OVEREXPOSED;
+            overexposed++;
+        } else if (sharpness < sharpnessThreshold) {
+            verdict = BLURRED;
+            blurred++;
+        } else {
+            verdict = OK;
+        }
+        return verdict;
+    }
+
+    // Evenly spread over [1, size - 2], so every sample has all four neighbours
+    private static int sampleCoordinate(int sample, int samples, int size) {
+        return 1 + (int) ((2L * sample + 1) * (size - 2) / (2L * samples));
+    }
+
+    private static int luma(int pixel) {
+        return (((pixel >> 16) & 0xFF) * 77 + ((pixel >> 8) & 0xFF) * 150 + (pixel & 0xFF) * 29) >> 8;
+    }
+
+    /** Verdict of the last evaluated frame. */
+    public int getVerdict() {
+        return verdict;
+    }
+
+    /** Laplacian variance of the last evaluated frame; higher is sharper. */
+    public float getSharpness() {
+        return sharpness;
+    }
+
+    public float getMeanLuma() {
+        return meanLuma;
+    }
+
+    public float getDarkFraction() {
+        return darkFraction;
+    }
+
+    public float getBrightFraction() {
+        return brightFraction;
+    }
+
+    public static String describe(int verdict) {
+        switch (verdict) {
+            case BLURRED:
+                return "blurred";
+            case TOO_DARK:
+                return "too dark";
+            case OVEREXPOSED:
+                return "over-exposed";
+            default:
+                return "ok";
+        }
+    }
+
+    public String getMetricsSummary() {
+        return String.format(Locale.US,
+            "frames: %d, blurred: %d, dark: %d, over-exposed: %d (last: sharpness %.0f, mean luma %.0f)",
+            frames, blurred, dark, overexposed, sharpness, meanLuma);
+    }
+}
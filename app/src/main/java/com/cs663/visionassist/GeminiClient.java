@@ -0,0 +1,341 @@
+package com.cs663.visionassist;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Process-wide HTTP client for the Gemini API.
+ *
+ * One OkHttpClient is shared by every request, so the connection pool, TLS sessions and
+ * HTTP/2 connection to the API host are reused across narrations. The dispatcher is bounded:
+ * at most MAX_REQUESTS calls run at once and the rest queue inside OkHttp, waiting for a
+ * running call to finish rather than each holding a thread.
+ *
+ * Identical requests (same coalescing key) that overlap in time share one HTTP call. Every
+ * caller has its own deadline; when it expires that caller gets a TimeoutException, and the
+ * HTTP call is cancelled once no caller is waiting for it anymore.
+ */
+public class GeminiClient {
+    private static final String TAG = "GeminiClient";
+    static final String DEFAULT_BASE_URL = "https://generativelanguage.googleapis.com/v1beta/models/";
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final int TIMEOUT_SECONDS = 30;
+    private static final int MAX_REQUESTS = 4;
+    private static final int MAX_IDLE_CONNECTIONS = 2;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final int STREAM_BUFFER_SIZE = 1024; // small reads so events are parsed as they arrive
+
+    private static GeminiClient instance;
+
+    private final OkHttpClient httpClient;
+    private final ScheduledExecutorService deadlineScheduler;
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private volatile String baseUrl = DEFAULT_BASE_URL;
+    private long coalescedRequests;
+    private long cancelledRequests;
+
+    /**
+     * One HTTP call and the callers currently waiting for it.
+     */
+    private static class InFlight {
+        final CompletableFuture<String> response = new CompletableFuture<>();
+        Call call;
+        int waiters;
+    }
+
+    private GeminiClient() {
+        // Dispatcher threads are created on demand; the limit is setMaxRequests alone. A bounded
+        // pool would reject the queued call OkHttp promotes from a worker that is finishing.
+        ThreadPoolExecutor dispatcherExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "GeminiHttp");
+                thread.setDaemon(true);
+                return thread;
+            });
+        Dispatcher dispatcher = new Dispatcher(dispatcherExecutor);
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS);
+
+        httpClient = new OkHttpClient.Builder()
+            .dispatcher(dispatcher)
+            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+        deadlineScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GeminiDeadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized GeminiClient getInstance() {
+        if (instance == null) {
+            instance = new GeminiClient();
+        }
+        return instance;
+    }
+
+    /**
+     * Points the client at another server, e.g. a local mock server during testing.
+     * Must end with a slash; the model method ("gemini-2.0-flash:generateContent") is appended.
+     */
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * POSTs a JSON request to baseUrl + method and completes with the response body.
+     *
+     * Requests with the same coalescingKey that are still in flight share one HTTP call.
+     * The returned future fails with TimeoutException after deadlineMs, and with IOException
+     * on HTTP or network errors. Cancelling the returned future also counts as giving up.
+     */
+    public CompletableFuture<String> post(String method, String apiKey, String requestJson,
+                                          String coalescingKey, long deadlineMs) {
+        return post(method, apiKey, RequestBody.create(requestJson, JSON), coalescingKey, deadlineMs);
+    }
+    
+    /**
+     * Same as above with a prebuilt (e.g. streaming) body. The body is only written if this
+     * call is not coalesced into an identical one.
+     */
+    public CompletableFuture<String> post(String method, String apiKey, RequestBody body,
+                                          String coalescingKey, long deadlineMs) {
+        InFlight entry;
+        boolean start = false;
+        synchronized (inFlight) {
+            entry = inFlight.get(coalescingKey);
+            if (entry == null) {
+                entry = new InFlight();
+                inFlight.put(coalescingKey, entry);
+                start = true;
+            } else {
+                coalescedRequests++;
+                Log.d(TAG, "Coalescing identical request (" + entry.waiters + " already waiting)");
+            }
+            entry.waiters++;
+        }
+        if (start) {
+            enqueue(entry, coalescingKey, method, apiKey, body);
+        }
+
+        // Per-caller view: completing or cancelling it never affects the other waiters
+        CompletableFuture<String> result = new CompletableFuture<>();
+        InFlight shared = entry;
+        shared.response.whenComplete((response, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(response);
+            }
+        });
+        ScheduledFuture<?> deadline = deadlineScheduler.schedule(() -> {
+            result.completeExceptionally(new TimeoutException(
+                "Gemini request exceeded deadline of " + deadlineMs + " ms"));
+        }, deadlineMs, TimeUnit.MILLISECONDS);
+        result.whenComplete((response, error) -> {
+            deadline.cancel(false);
+            if (error instanceof TimeoutException || error instanceof CancellationException) {
+                release(shared, coalescingKey);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * POSTs to the streaming (SSE) variant of a method and feeds the response to the parser
+     * as it arrives, on an OkHttp dispatcher thread. Completes with the full text once the
+     * stream ends. Streams are never coalesced, since each one drives its own listener; the
+     * call is cancelled when deadlineMs passes or the returned future is cancelled.
+     */
+    public CompletableFuture<String> stream(String method, String apiKey, RequestBody body,
+                                            GeminiStreamParser parser, long deadlineMs) {
+        Request request = new Request.Builder()
+            .url(baseUrl + method + "?alt=sse&key=" + apiKey)
+            .post(body)
+            .addHeader("Content-Type", "application/json")
+            .build();
+        Call call = httpClient.newCall(request);
+        CompletableFuture<String> result = new CompletableFuture<>();
+        ScheduledFuture<?> deadline = deadlineScheduler.schedule(() -> {
+            result.completeExceptionally(new TimeoutException(
+                "Gemini stream exceeded deadline of " + deadlineMs + " ms"));
+        }, deadlineMs, TimeUnit.MILLISECONDS);
+        result.whenComplete((text, error) -> {
+            deadline.cancel(false);
+            if (error instanceof TimeoutException || error instanceof CancellationException) {
+                synchronized (inFlight) {
+                    cancelledRequests++;
+                }
+                call.cancel(); // the reader thread then fails on its next read
+            }
+        });
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response closing = response) {
+                    if (!closing.isSuccessful()) {
+                        String errorBody = closing.body() != null ? closing.body().string() : "Unknown error";
+                        throw new IOException("Gemini API error: " + closing.code() + " - " + errorBody);
+                    }
+                    if (closing.body() == null) {
+                        throw new IOException("Empty response from Gemini API");
+                    }
+                    InputStream in = closing.body().byteStream();
+                    byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                    int read;
+                    while ((read = in.read(buffer)) != -1 && !result.isDone()) {
+                        parser.feed(buffer, 0, read);
+                    }
+                    if (!result.isDone()) {
+                        parser.finish();
+                        result.complete(parser.getText());
+                    }
+                } catch (IOException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        return result;
+    }
+
+    private void enqueue(InFlight entry, String coalescingKey, String method, String apiKey,
+                         RequestBody body) {
+        Request request = new Request.Builder()
+            .url(baseUrl + method + "?key=" + apiKey)
+            .post(body)
+            .addHeader("Content-Type", "application/json")
+            .build();
+        Call call = httpClient.newCall(request);
+        boolean abandoned;
+        synchronized (inFlight) {
+            entry.call = call;
+            abandoned = entry.waiters == 0; // every caller already gave up
+        }
+        if (abandoned) {
+            call.cancel();
+        }
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                finish(entry, coalescingKey);
+                entry.response.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response closing = response) {
+                    String body = closing.body() != null ? closing.body().string() : "";
+                    finish(entry, coalescingKey);
+                    if (!closing.isSuccessful()) {
+                        entry.response.completeExceptionally(new IOException(
+                            "Gemini API error: " + closing.code() + " - " + body));
+                    } else if (body.isEmpty()) {
+                        entry.response.completeExceptionally(new IOException("Empty response from Gemini API"));
+                    } else {
+                        entry.response.complete(body);
+                    }
+                } catch (IOException e) {
+                    finish(entry, coalescingKey);
+                    entry.response.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops new callers from joining a call that has produced its result.
+     */
+    private void finish(InFlight entry, String coalescingKey) {
+        synchronized (inFlight) {
+            if (inFlight.get(coalescingKey) == entry) {
+                inFlight.remove(coalescingKey);
+            }
+        }
+    }
+
+    /**
+     * A caller gave up; cancels the HTTP call when it was the last one waiting.
+     */
+    private void release(InFlight entry, String coalescingKey) {
+        Call call = null;
+        synchronized (inFlight) {
+            if (--entry.waiters == 0 && !entry.response.isDone()) {
+                if (inFlight.get(coalescingKey) == entry) {
+                    inFlight.remove(coalescingKey);
+                }
+                call = entry.call;
+                cancelledRequests++;
+            }
+        }
+        if (call != null) {
+            Log.d(TAG, "Cancelling Gemini request: no caller waiting anymore");
+            call.cancel(); // OkHttp then reports onFailure, which completes the shared future
+        }
+    }
+
+    long getCoalescedRequests() {
+        synchronized (inFlight) {
+            return coalescedRequests;
+        }
+    }
+
+    long getCancelledRequests() {
+        synchronized (inFlight) {
+            return cancelledRequests;
+        }
+    }
+
+    int getRunningCalls() {
+        return httpClient.dispatcher().runningCallsCount();
+    }
+
+    public String getMetricsSummary() {
+        synchronized (inFlight) {
+            return "in flight: " + inFlight.size()
+                + ", coalesced: " + coalescedRequests
+                + ", cancelled: " + cancelledRequests
+                + ", running calls: " + httpClient.dispatcher().runningCallsCount()
+                + ", queued calls: " + httpClient.dispatcher().queuedCallsCount();
+        }
+    }
+}
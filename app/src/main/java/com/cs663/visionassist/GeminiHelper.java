@@ -1,22 +1,18 @@
 package com.cs663.visionassist;
 
 import android.graphics.Bitmap;
-import android.util.Base64;
 import android.util.Log;
 
 import com.cs663.visionassist.BuildConfig;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
 import okhttp3.RequestBody;
-import okhttp3.Response;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -39,13 +35,30 @@ public class GeminiHelper {
     // Gemini 2.5 Flash uses thinking tokens that consume the entire output budget
     // Switching to 2.0 Flash which should work better for short outputs
     // Alternative: gemini-2.0-flash-lite (even lighter, faster)
-    private static final String GEMINI_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash:generateContent";
+    // The base URL lives in GeminiClient (https://generativelanguage.googleapis.com/v1beta/models/)
+    private static final String GEMINI_METHOD = "gemini-2.0-flash:generateContent";
+    private static final String GEMINI_STREAM_METHOD = "gemini-2.0-flash:streamGenerateContent";
     
-    // Alternative endpoints if primary fails (commented out - uncomment to try)
-    // private static final String GEMINI_API_URL_ALT1 = "https://generativelanguage.googleapis.com/v1beta/models/gemini-1.5-pro:generateContent";
-    // private static final String GEMINI_API_URL_ALT2 = "https://generativelanguage.googleapis.com/v1/models/gemini-1.5-pro:generateContent";
-    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    // Alternative models if primary fails (commented out - uncomment to try)
+    // private static final String GEMINI_METHOD_ALT1 = "gemini-1.5-pro:generateContent";
     private static final int TIMEOUT_SECONDS = 30;
+    private static final int MAX_NARRATION_WORDS = 12;
+    private static final int FIRST_PHRASE_WORDS = 3; // start speaking as early as possible
+    private static final int PHRASE_WORDS = 6;
+    
+    // Image encoding and prompt building run here instead of on a new thread per request;
+    // the HTTP call itself runs on GeminiClient's dispatcher
+    private static final ThreadPoolExecutor REQUEST_EXECUTOR = new ThreadPoolExecutor(
+        1, 2, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(4),
+        runnable -> new Thread(runnable, "GeminiRequest"),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    
+    // Stop calling Gemini for a while after repeated errors/timeouts or when it gets too slow
+    private static final CircuitBreaker CIRCUIT_BREAKER = new CircuitBreaker(
+        0.5f, 8_000, 15_000, 120_000);
+    
+    private static final GeminiPayloadEncoder PAYLOAD_ENCODER =
+        new GeminiPayloadEncoder(GeminiPayloadEncoder.DEFAULT_BYTE_BUDGET, true);
     
     /**
      * Checks if Gemini API is configured and available.
@@ -55,15 +68,58 @@ public class GeminiHelper {
         return apiKey != null && !apiKey.isEmpty() && !apiKey.equals("YOUR_API_KEY_HERE");
     }
     
+    /**
+     * Breaker guarding every Gemini request; exposed for diagnostics.
+     */
+    public static CircuitBreaker getCircuitBreaker() {
+        return CIRCUIT_BREAKER;
+    }
+    
     /**
      * Sends image and detection summary to Gemini for enhanced narration.
      * Returns a more natural, contextual description.
      * If API is unavailable or fails, returns null to trigger fallback.
      */
     public static CompletableFuture<String> generateEnhancedNarration(
-            Bitmap image, List<Detection> detections, List<String> textDetections) {
+            Bitmap image, List<Detection> detections, OCRResult ocrResult) {
+        return generateEnhancedNarration(image, detections, ocrResult, TIMEOUT_SECONDS * 1000L);
+    }
+    
+    /**
+     * Same as above, but the HTTP request is cancelled once deadlineMs has passed (unless an
+     * identical in-flight request still has a caller waiting for it). Completes with null on
+     * timeout, like on any other failure.
+     */
+    public static CompletableFuture<String> generateEnhancedNarration(
+            Bitmap image, List<Detection> detections, OCRResult ocrResult, long deadlineMs) {
+        return requestNarration(image, detections, ocrResult, deadlineMs, null);
+    }
+    
+    /**
+     * Receives a streamed narration phrase by phrase, on a network thread.
+     */
+    public interface PhraseListener {
+        void onPhrase(String phrase);
+    }
+    
+    /**
+     * Streaming variant (streamGenerateContent over SSE): phrases are handed to the listener
+     * as soon as they are complete - the first one after FIRST_PHRASE_WORDS words - so speech
+     * can start before Gemini has finished. The future completes with the whole narration,
+     * or null on failure or timeout.
+     */
+    public static CompletableFuture<String> streamEnhancedNarration(
+            Bitmap image, List<Detection> detections, OCRResult ocrResult, long deadlineMs,
+            PhraseListener phraseListener) {
+        return requestNarration(image, detections, ocrResult, deadlineMs, phraseListener);
+    }
+    
+    private static CompletableFuture<String> requestNarration(
+            Bitmap image, List<Detection> detections, OCRResult ocrResult, long deadlineMs,
+            PhraseListener phraseListener) {
         
         CompletableFuture<String> future = new CompletableFuture<>();
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
         
         // Check if API is available
         if (!isAvailable()) {
@@ -72,110 +128,225 @@ public class GeminiHelper {
             return future;
         }
         
-        // Run in background thread
-        new Thread(() -> {
+        // Remote unhealthy: fall back right away instead of waiting for another timeout
+        if (!CIRCUIT_BREAKER.allowRequest()) {
+            Log.d(TAG, "Gemini circuit breaker open (" + CIRCUIT_BREAKER.getMetricsSummary() + "), using fallback");
+            future.complete(null);
+            return future;
+        }
+        long startNanos = System.nanoTime();
+        
+        // The caller may hand the frame back to BitmapPool before it has been encoded
+        BitmapPool.getInstance().retain(image);
+        REQUEST_EXECUTOR.execute(() -> {
             try {
-                // Convert bitmap to base64
-                String imageBase64 = bitmapToBase64(image);
-                
-                // Create detection summary
-                StringBuilder detectionSummary = new StringBuilder();
-                if (detections != null && !detections.isEmpty()) {
-                    for (int i = 0; i < Math.min(detections.size(), 10); i++) {
-                        Detection det = detections.get(i);
-                        detectionSummary.append(String.format("%s (%s, %s, %.0f%%), ",
-                            det.getLabel(), det.getSide(), det.getDistance(), 
-                            det.getConfidence() * 100));
-                    }
-                } else {
-                    detectionSummary.append("No objects detected");
+                // Compress to the byte budget (hazard ROI crop if that is what matters)
+                GeminiPayloadEncoder.Payload payload;
+                try {
+                    payload = PAYLOAD_ENCODER.encode(image,
+                        detections != null ? detections : java.util.Collections.<Detection>emptyList());
+                } finally {
+                    BitmapPool.getInstance().release(image);
                 }
+                String prompt = buildPrompt(detections, ocrResult, payload.isCropped());
                 
-                // Create text summary
-                String textSummary = "";
-                if (textDetections != null && !textDetections.isEmpty()) {
-                    textSummary = String.join(", ", textDetections.subList(0, Math.min(textDetections.size(), 5)));
+                // The image is streamed as base64 into the body in place of the placeholder
+                String requestJson = buildRequestJson(GeminiPayloadEncoder.IMAGE_PLACEHOLDER, prompt);
+                RequestBody body = PAYLOAD_ENCODER.requestBody(requestJson, payload);
+                long remainingMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+                
+                CompletableFuture<String> response;
+                PhraseSplitter splitter = null;
+                if (phraseListener == null) {
+                    // Identical requests already in flight share one HTTP call
+                    String coalescingKey = prompt + "|" + payload.digest();
+                    response = GeminiClient.getInstance()
+                        .post(GEMINI_METHOD, BuildConfig.GEMINI_API_KEY, body, coalescingKey, remainingMs);
                 } else {
-                    textSummary = "No text detected";
+                    splitter = new PhraseSplitter(phraseListener);
+                    response = GeminiClient.getInstance().stream(GEMINI_STREAM_METHOD,
+                        BuildConfig.GEMINI_API_KEY, body, new GeminiStreamParser(splitter), remainingMs);
                 }
-                
-                // Create prompt - ultra-shortened to minimize token usage
-                // Gemini 2.5 Flash uses thinking tokens, so we need to keep prompt very concise
-                String prompt = String.format(
-                    "Narrate for low-vision user (max 12 words). Action-first, safety-focused, natural language.\n" +
-                    "Objects: %s. Text: %s.\n" +
-                    "Return only narration text.",
-                    detectionSummary.toString(),
-                    textSummary
-                );
-                
-                // Make API call
-                String response = callGeminiAPI(imageBase64, prompt);
-                
-                // Parse response
-                String narration = parseGeminiResponse(response);
-                
-                if (narration != null && !narration.isEmpty()) {
-                    // Clean up narration - remove any JSON formatting if present
-                    narration = narration.trim();
-                    if (narration.startsWith("{") && narration.contains("narration")) {
+                PhraseSplitter streamed = splitter;
+                response.whenComplete((result, error) -> {
+                    long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                    // An HTTP 200 can still carry an error, a blocked response or no text:
+                    // the call only counts as healthy once a usable narration came out of it
+                    String narration = null;
+                    Throwable failure = error;
+                    if (failure == null) {
                         try {
-                            JSONObject json = new JSONObject(narration);
-                            narration = json.optString("narration", narration);
+                            if (streamed != null) {
+                                streamed.flush();
+                                narration = cleanNarration(result);
+                            } else {
+                                narration = cleanNarration(parseGeminiResponse(result));
+                            }
                         } catch (Exception e) {
-                            // Not JSON, use as is
+                            failure = e;
                         }
                     }
-                    
-                    // Ensure it's concise (max 12 words)
-                    String[] words = narration.split("\\s+");
-                    if (words.length > 12) {
-                        StringBuilder shortened = new StringBuilder();
-                        for (int i = 0; i < 12; i++) {
-                            shortened.append(words[i]);
-                            if (i < 11) shortened.append(" ");
-                        }
-                        narration = shortened.toString();
+                    if (failure != null) {
+                        CIRCUIT_BREAKER.recordFailure(latencyMs);
+                        Log.e(TAG, "Error calling Gemini API: " + failure.getMessage(), failure);
+                        future.complete(null); // Return null to trigger fallback to local narration
+                        return;
                     }
-                    
-                    Log.d(TAG, "Gemini narration generated: " + narration);
+                    CIRCUIT_BREAKER.recordSuccess(latencyMs);
                     future.complete(narration);
-                } else {
-                    throw new IOException("Empty narration from Gemini API");
-                }
+                });
                 
             } catch (Exception e) {
                 Log.e(TAG, "Error calling Gemini API: " + e.getMessage(), e);
+                CIRCUIT_BREAKER.recordFailure(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
                 // Return null to trigger fallback to local narration
                 future.complete(null);
             }
-        }).start();
+        });
         
         return future;
     }
     
-    private static String bitmapToBase64(Bitmap bitmap) {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        // Compress to reduce size (80% quality is good balance)
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 80, outputStream);
-        byte[] byteArray = outputStream.toByteArray();
-        return Base64.encodeToString(byteArray, Base64.NO_WRAP);
+    private static String buildPrompt(List<Detection> detections, OCRResult ocrResult, boolean cropped) {
+        // Create detection summary
+        StringBuilder detectionSummary = new StringBuilder();
+        if (detections != null && !detections.isEmpty()) {
+            for (int i = 0; i < Math.min(detections.size(), 10); i++) {
+                Detection det = detections.get(i);
+                detectionSummary.append(String.format("%s (%s, %s, %.0f%%), ",
+                    det.getLabel(), det.getSide(), det.getDistance(), 
+                    det.getConfidence() * 100));
+            }
+        } else {
+            detectionSummary.append("No objects detected");
+        }
+        
+        // Create text summary
+        String textSummary = "";
+        List<String> textDetections = ocrResult != null ? ocrResult.getTexts() : null;
+        if (textDetections != null && !textDetections.isEmpty()) {
+            textSummary = String.join(", ", textDetections.subList(0, Math.min(textDetections.size(), 5)));
+            // Language hint helps Gemini read non-English signs naturally
+            if (!ocrResult.getLanguages().isEmpty()) {
+                textSummary += " (language: " + String.join("/", ocrResult.getLanguages()) + ")";
+            }
+        } else {
+            textSummary = "No text detected";
+        }
+        
+        // Create prompt - ultra-shortened to minimize token usage
+        // Gemini 2.5 Flash uses thinking tokens, so we need to keep prompt very concise
+        String prompt = String.format(
+            "Narrate for low-vision user (max 12 words). Action-first, safety-focused, natural language.\n" +
+            "Objects: %s. Text: %s.\n" +
+            "Return only narration text.",
+            detectionSummary.toString(),
+            textSummary
+        );
+        if (cropped) {
+            prompt += "\nImage is cropped to the nearest hazards.";
+        }
+        return prompt;
     }
     
-    private static String callGeminiAPI(String imageBase64, String prompt) throws IOException {
-        String apiKey = BuildConfig.GEMINI_API_KEY;
+    /**
+     * Cuts streamed text into speakable phrases: at clause punctuation, or after
+     * FIRST_PHRASE_WORDS words for the first phrase and PHRASE_WORDS after that. Stops at the
+     * 12-word narration limit.
+     */
+    private static class PhraseSplitter implements GeminiStreamParser.Listener {
+        private final PhraseListener listener;
+        private final StringBuilder pending = new StringBuilder();
+        private int wordsDelivered;
         
-        if (apiKey == null || apiKey.isEmpty()) {
-            throw new IOException("Gemini API key not configured");
+        PhraseSplitter(PhraseListener listener) {
+            this.listener = listener;
         }
         
-        // Create HTTP client with timeout
-        OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .build();
+        @Override
+        public void onText(String delta) {
+            pending.append(delta);
+            emitPhrases(false);
+        }
         
+        void flush() {
+            emitPhrases(true);
+        }
+        
+        private void emitPhrases(boolean end) {
+            while (wordsDelivered < MAX_NARRATION_WORDS) {
+                int limit = wordsDelivered == 0 ? FIRST_PHRASE_WORDS : PHRASE_WORDS;
+                int boundary = -1;
+                int words = 0;
+                boolean inWord = false;
+                for (int i = 0; i < pending.length(); i++) {
+                    if (Character.isWhitespace(pending.charAt(i))) {
+                        if (inWord) {
+                            words++;
+                            inWord = false;
+                            boolean clauseEnd = ".,!?;:".indexOf(pending.charAt(i - 1)) >= 0;
+                            if (clauseEnd || words >= limit
+                                    || wordsDelivered + words >= MAX_NARRATION_WORDS) {
+                                boundary = i;
+                                break;
+                            }
+                        }
+                    } else {
+                        inWord = true;
+                    }
+                }
+                if (boundary < 0) {
+                    if (!end || pending.toString().trim().isEmpty()) {
+                        return;
+                    }
+                    boundary = pending.length();
+                    words += inWord ? 1 : 0;
+                }
+                String phrase = pending.substring(0, boundary).trim();
+                pending.delete(0, boundary);
+                if (wordsDelivered + words > MAX_NARRATION_WORDS) {
+                    // Only the last phrase at end of stream can overshoot
+                    String[] parts = phrase.split("\\s+");
+                    phrase = String.join(" ", java.util.Arrays.copyOf(parts, MAX_NARRATION_WORDS - wordsDelivered));
+                    words = MAX_NARRATION_WORDS - wordsDelivered;
+                }
+                wordsDelivered += words;
+                listener.onPhrase(phrase);
+            }
+        }
+    }
+    
+    private static String cleanNarration(String narration) throws IOException {
+        if (narration != null && !narration.isEmpty()) {
+            // Clean up narration - remove any JSON formatting if present
+            narration = narration.trim();
+            if (narration.startsWith("{") && narration.contains("narration")) {
+                try {
+                    JSONObject json = new JSONObject(narration);
+                    narration = json.optString("narration", narration);
+                } catch (Exception e) {
+                    // Not JSON, use as is
+                }
+            }
+            
+            // Ensure it's concise (max 12 words)
+            String[] words = narration.split("\\s+");
+            if (words.length > 12) {
+                StringBuilder shortened = new StringBuilder();
+                for (int i = 0; i < 12; i++) {
+                    shortened.append(words[i]);
+                    if (i < 11) shortened.append(" ");
+                }
+                narration = shortened.toString();
+            }
+            
+            Log.d(TAG, "Gemini narration generated: " + narration);
+            return narration;
+        }
+        throw new IOException("Empty narration from Gemini API");
+    }
+    
+    private static String buildRequestJson(String imageBase64, String prompt) throws IOException {
         // Build request JSON
         JSONObject requestBody = new JSONObject();
         JSONArray contents = new JSONArray();
@@ -220,29 +391,7 @@ public class GeminiHelper {
             throw new IOException("Error assembling request: " + e.getMessage());
         }
         
-        // Create HTTP request
-        RequestBody body = RequestBody.create(requestBody.toString(), JSON);
-        String url = GEMINI_API_URL + "?key=" + apiKey;
-        Request request = new Request.Builder()
-            .url(url)
-            .post(body)
-            .addHeader("Content-Type", "application/json")
-            .build();
-        
-        // Execute request
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "Unknown error";
-                throw new IOException("Gemini API error: " + response.code() + " - " + errorBody);
-            }
-            
-            String responseBody = response.body() != null ? response.body().string() : "";
-            if (responseBody.isEmpty()) {
-                throw new IOException("Empty response from Gemini API");
-            }
-            
-            return responseBody;
-        }
+        return requestBody.toString();
     }
     
     private static String parseGeminiResponse(String response) throws IOException {
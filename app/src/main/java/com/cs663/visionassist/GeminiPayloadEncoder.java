@@ -0,0 +1,232 @@
+package com.cs663.visionassist;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Base64;
+import android.util.Base64OutputStream;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * Encodes the image sent to Gemini within a byte budget.
+ *
+ * The JPEG is compressed once per attempt into a reusable buffer: quality is lowered first,
+ * then the image is downscaled (into bitmaps borrowed from BitmapPool), until it fits the
+ * budget (or the minimum size is reached).
+ * With ROI cropping on, a frame whose near hazards cover only part of the view is cropped
+ * to those hazards plus some context, since that is what the narration has to describe.
+ *
+ * The request body streams the base64 of the JPEG straight into the HTTP sink between the
+ * serialized JSON before and after it, so the image never exists as a base64 String or
+ * inside a JSONObject. Bytes on the wire are counted per request.
+ */
+public class GeminiPayloadEncoder {
+    private static final String TAG = "GeminiPayloadEncoder";
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    /** Stands in for the base64 data while the request JSON is serialized. */
+    public static final String IMAGE_PLACEHOLDER = "__VISIONASSIST_IMAGE_BASE64__";
+
+    public static final int DEFAULT_BYTE_BUDGET = 48 * 1024;
+    private static final int MAX_DIMENSION = 640;
+    private static final int MIN_DIMENSION = 224;
+    private static final int[] QUALITY_STEPS = {80, 65, 50};
+    private static final float DOWNSCALE_STEP = 0.75f;
+    private static final float ROI_PADDING = 0.25f;        // context around the hazards, per side
+    private static final float MAX_ROI_AREA_FRACTION = 0.6f; // larger ROIs send the full frame
+
+    private final int byteBudget;
+    private final boolean roiCropping;
+    private final ByteArrayOutputStream jpegBuffer = new ByteArrayOutputStream(DEFAULT_BYTE_BUDGET);
+    private long requests;
+    private long totalBytesOnWire;
+
+    /**
+     * A compressed image ready to be sent.
+     */
+    public static class Payload {
+        private final byte[] jpeg;
+        private final int width;
+        private final int height;
+        private final int quality;
+        private final boolean cropped;
+
+        Payload(byte[] jpeg, int width, int height, int quality, boolean cropped) {
+            this.jpeg = jpeg;
+            this.width = width;
+            this.height = height;
+            this.quality = quality;
+            this.cropped = cropped;
+        }
+
+        public byte[] getJpeg() { return jpeg; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public int getQuality() { return quality; }
+        public boolean isCropped() { return cropped; }
+
+        /**
+         * SHA-1 of the JPEG, for coalescing identical requests.
+         */
+        public String digest() {
+            try {
+                byte[] hash = MessageDigest.getInstance("SHA-1").digest(jpeg);
+                StringBuilder hex = new StringBuilder(hash.length * 2);
+                for (byte b : hash) {
+                    hex.append(String.format("%02x", b));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                return jpeg.length + ":" + java.util.Arrays.hashCode(jpeg);
+            }
+        }
+    }
+
+    public GeminiPayloadEncoder(int byteBudget, boolean roiCropping) {
+        this.byteBudget = byteBudget;
+        this.roiCropping = roiCropping;
+    }
+
+    /**
+     * Compresses the bitmap (or its hazard ROI) to a JPEG no larger than the byte budget
+     * whenever that is possible above MIN_DIMENSION.
+     */
+    public synchronized Payload encode(Bitmap bitmap, List<Detection> detections) {
+        Rect roi = roiCropping ? hazardRegion(bitmap.getWidth(), bitmap.getHeight(), detections) : null;
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap source = roi == null ? bitmap : pool.scaled(bitmap, roi, roi.width(), roi.height());
+
+        float scale = Math.min(1f, (float) MAX_DIMENSION / Math.max(source.getWidth(), source.getHeight()));
+        Bitmap scaled = null;
+        int quality = QUALITY_STEPS[0];
+        try {
+            while (true) {
+                int width = Math.max(1, Math.round(source.getWidth() * scale));
+                int height = Math.max(1, Math.round(source.getHeight() * scale));
+                if (scaled != null && scaled != source) {
+                    pool.release(scaled);
+                }
+                scaled = scale < 1f ? pool.scaled(source, null, width, height) : source;
+
+                for (int q : QUALITY_STEPS) {
+                    quality = q;
+                    jpegBuffer.reset();
+                    scaled.compress(Bitmap.CompressFormat.JPEG, quality, jpegBuffer);
+                    if (jpegBuffer.size() <= byteBudget) {
+                        break;
+                    }
+                }
+                boolean atMinimum = Math.max(width, height) * DOWNSCALE_STEP < MIN_DIMENSION;
+                if (jpegBuffer.size() <= byteBudget || atMinimum) {
+                    Log.d(TAG, "Encoded " + width + "x" + height + " q" + quality + (roi != null ? " ROI" : "")
+                        + ": " + jpegBuffer.size() + " bytes (budget " + byteBudget + ")");
+                    return new Payload(jpegBuffer.toByteArray(), width, height, quality, roi != null);
+                }
+                scale *= DOWNSCALE_STEP;
+            }
+        } finally {
+            if (scaled != null && scaled != source && scaled != bitmap) {
+                pool.release(scaled);
+            }
+            if (source != bitmap) {
+                pool.release(source);
+            }
+        }
+    }
+
+    /**
+     * Bounding box (with padding) of the near hazards, or null when there are none or they
+     * already cover most of the frame.
+     */
+    static Rect hazardRegion(int imageWidth, int imageHeight, List<Detection> detections) {
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (Detection detection : detections) {
+            if (detection.getDistanceCode() != DetectionBatch.DISTANCE_NEAR
+                    || !NarrationGenerator.isHazard(detection.getLabel())) {
+                continue;
+            }
+            left = Math.min(left, detection.getLeft());
+            top = Math.min(top, detection.getTop());
+            right = Math.max(right, detection.getRight());
+            bottom = Math.max(bottom, detection.getBottom());
+        }
+        if (left >= right || top >= bottom) {
+            return null;
+        }
+        int padX = Math.round((right - left) * ROI_PADDING);
+        int padY = Math.round((bottom - top) * ROI_PADDING);
+        Rect roi = new Rect(Math.max(0, left - padX), Math.max(0, top - padY),
+            Math.min(imageWidth, right + padX), Math.min(imageHeight, bottom + padY));
+        if (roi.width() <= 0 || roi.height() <= 0
+                || (float) roi.width() * roi.height() > MAX_ROI_AREA_FRACTION * imageWidth * imageHeight) {
+            return null;
+        }
+        return roi;
+    }
+
+    /**
+     * Request body that streams: requestJson up to IMAGE_PLACEHOLDER, the base64 of the
+     * payload, then the rest of requestJson.
+     */
+    public RequestBody requestBody(String requestJson, Payload payload) {
+        int split = requestJson.lastIndexOf(IMAGE_PLACEHOLDER);
+        if (split < 0) {
+            throw new IllegalArgumentException("Request JSON has no image placeholder");
+        }
+        byte[] prefix = requestJson.substring(0, split).getBytes(StandardCharsets.UTF_8);
+        byte[] suffix = requestJson.substring(split + IMAGE_PLACEHOLDER.length()).getBytes(StandardCharsets.UTF_8);
+        long base64Length = 4L * ((payload.getJpeg().length + 2) / 3);
+        long contentLength = prefix.length + base64Length + suffix.length;
+        synchronized (this) {
+            requests++;
+            totalBytesOnWire += contentLength;
+        }
+        Log.d(TAG, "Request body: " + contentLength + " bytes on wire (image " + payload.getJpeg().length
+            + " bytes JPEG, " + base64Length + " base64)");
+
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return JSON;
+            }
+
+            @Override
+            public long contentLength() {
+                return contentLength;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                sink.write(prefix);
+                // NO_CLOSE: closing the encoder flushes its padding but leaves the sink open
+                OutputStream base64 = new Base64OutputStream(sink.outputStream(),
+                    Base64.NO_WRAP | Base64.NO_CLOSE);
+                base64.write(payload.getJpeg());
+                base64.close();
+                sink.write(suffix);
+            }
+        };
+    }
+
+    public synchronized long getTotalBytesOnWire() {
+        return totalBytesOnWire;
+    }
+
+    public synchronized String getMetricsSummary() {
+        return "requests: " + requests + ", bytes on wire: " + totalBytesOnWire
+            + (requests > 0 ? " (avg " + (totalBytesOnWire / requests) + ")" : "");
+    }
+}
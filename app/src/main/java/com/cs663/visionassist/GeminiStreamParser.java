@@ -0,0 +1,152 @@
+package com.cs663.visionassist;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental parser for streamGenerateContent?alt=sse responses.
+ *
+ * Bytes are fed as they come off the network, split anywhere - inside a line, inside a JSON
+ * event or inside a multi-byte UTF-8 character. Complete lines are decoded, "data:" lines
+ * are collected into events, and each event (one GenerateContentResponse chunk) is parsed
+ * as soon as its terminating blank line arrives. New text is handed to the listener right
+ * away, so narration can start before the response is complete.
+ *
+ * A safety or recitation block, a blocked prompt or an error event fails the stream with an
+ * IOException, like the non-streaming parser in GeminiHelper.
+ */
+public class GeminiStreamParser {
+    public interface Listener {
+        /** Called for every piece of new text, in order. */
+        void onText(String delta);
+    }
+
+    private final Listener listener;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+    private final StringBuilder eventData = new StringBuilder();
+    private final StringBuilder text = new StringBuilder();
+    private String finishReason;
+    private int events;
+
+    public GeminiStreamParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void feed(byte[] data, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            byte b = data[i];
+            if (b == '\n') {
+                onLine(lineText());
+                line.reset();
+            } else {
+                line.write(b);
+            }
+        }
+    }
+
+    /**
+     * End of stream: handles a last event that was not followed by a blank line.
+     */
+    public void finish() throws IOException {
+        if (line.size() > 0) {
+            onLine(lineText());
+            line.reset();
+        }
+        dispatchEvent();
+        if (text.length() == 0) {
+            if ("MAX_TOKENS".equals(finishReason)) {
+                throw new IOException("Response truncated at token limit - no content generated.");
+            }
+            throw new IOException("Empty text in Gemini response");
+        }
+    }
+
+    private String lineText() {
+        // Lines are only decoded once complete, so split UTF-8 sequences are never seen
+        String decoded = new String(line.toByteArray(), StandardCharsets.UTF_8);
+        return decoded.endsWith("\r") ? decoded.substring(0, decoded.length() - 1) : decoded;
+    }
+
+    private void onLine(String current) throws IOException {
+        if (current.isEmpty()) {
+            dispatchEvent();
+        } else if (current.startsWith("data:")) {
+            if (eventData.length() > 0) {
+                eventData.append('\n');
+            }
+            String value = current.substring(5);
+            eventData.append(value.startsWith(" ") ? value.substring(1) : value);
+        }
+        // Comments (":") and other SSE fields (event, id, retry) carry nothing we need
+    }
+
+    private void dispatchEvent() throws IOException {
+        if (eventData.length() == 0) {
+            return;
+        }
+        String data = eventData.toString();
+        eventData.setLength(0);
+        events++;
+        try {
+            handleChunk(new JSONObject(data));
+        } catch (JSONException e) {
+            throw new IOException("Error parsing Gemini stream event: " + e.getMessage());
+        }
+    }
+
+    private void handleChunk(JSONObject chunk) throws IOException, JSONException {
+        if (chunk.has("error")) {
+            JSONObject error = chunk.getJSONObject("error");
+            throw new IOException("Gemini API error: " + error.optString("message", "Unknown error"));
+        }
+        JSONObject promptFeedback = chunk.optJSONObject("promptFeedback");
+        if (promptFeedback != null && promptFeedback.has("blockReason")) {
+            throw new IOException("Prompt blocked. Block reason: " + promptFeedback.optString("blockReason"));
+        }
+        JSONArray candidates = chunk.optJSONArray("candidates");
+        if (candidates == null || candidates.length() == 0) {
+            return; // e.g. a usage-metadata-only chunk
+        }
+        JSONObject candidate = candidates.getJSONObject(0);
+
+        JSONObject content = candidate.optJSONObject("content");
+        JSONArray parts = content != null ? content.optJSONArray("parts") : null;
+        if (parts != null) {
+            for (int i = 0; i < parts.length(); i++) {
+                String delta = parts.getJSONObject(i).optString("text", "");
+                if (!delta.isEmpty()) {
+                    text.append(delta);
+                    listener.onText(delta);
+                }
+            }
+        }
+
+        String reason = candidate.optString("finishReason", "");
+        if (!reason.isEmpty() && !"FINISH_REASON_UNSPECIFIED".equals(reason)) {
+            finishReason = reason;
+            if (!"STOP".equals(reason) && !"MAX_TOKENS".equals(reason)) {
+                throw new IOException("Response blocked or filtered. Finish reason: " + reason);
+            }
+        }
+    }
+
+    public String getText() {
+        return text.toString().trim();
+    }
+
+    /**
+     * STOP, MAX_TOKENS, or null while the stream has not finished.
+     */
+    public String getFinishReason() {
+        return finishReason;
+    }
+
+    public int getEventCount() {
+        return events;
+    }
+}
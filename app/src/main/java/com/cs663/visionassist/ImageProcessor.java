@@ -4,58 +4,156 @@ import android.content.Context;
 import android.graphics.Bitmap;
 
 public class ImageProcessor {
+    private static final long GEMINI_DEADLINE_MS = 10_000;
+    private static final long GEMINI_NARRATION_TTL_MS = 30_000;
+    private static final long LOCAL_NARRATION_TTL_MS = 5_000; // retry Gemini soon after a fallback
+    private static final int MAX_CACHED_NARRATIONS = 32;
+    private static final int MAX_IMAGE_HASH_DISTANCE = 12; // of 64 dHash bits
+    
+    private static final NarrationCache NARRATION_CACHE =
+        new NarrationCache(MAX_CACHED_NARRATIONS, MAX_IMAGE_HASH_DISTANCE);
+    
+    // Progressive mode: return the local narration right away and publish the Gemini
+    // narration through NarrationUpdates if it arrives within the window
+    private static volatile boolean progressiveNarration = true;
+    private static volatile long geminiUpgradeWindowMs = GEMINI_DEADLINE_MS;
+    // Stream the upgrade over SSE so its first words can be spoken before Gemini finishes
+    private static volatile boolean streamingNarration = true;
+
+    // Captures of an unchanged scene reuse the previous frame's detections and/or text
+    private static final SceneChangeGate CAPTURE_GATE = new SceneChangeGate();
+    private static VisionPipeline.Output lastOutput;
+    private static int lastWidth;
+    private static int lastHeight;
+
+    // Captures are scored at about the detector's input scale: blur it cannot see does not matter
+    private static final int QUALITY_SCORE_WIDTH = 320;
+    private static final FrameQualityGate CAPTURE_QUALITY = new FrameQualityGate();
+    
+    public static void setProgressiveNarration(boolean enabled) {
+        progressiveNarration = enabled;
+    }
+    
+    public static void setStreamingNarration(boolean enabled) {
+        streamingNarration = enabled;
+    }
+    
+    /**
+     * How long a Gemini upgrade may take in progressive mode before it is cancelled.
+     */
+    public static void setGeminiUpgradeWindowMs(long windowMs) {
+        geminiUpgradeWindowMs = windowMs;
+    }
+    
+    /**
+     * Sensitivity of the scene-change gate for captures (see SceneChangeGate).
+     */
+    public static void setSceneChangeSensitivity(int blockThreshold, float changedFraction) {
+        synchronized (CAPTURE_GATE) {
+            CAPTURE_GATE.setSensitivity(blockThreshold, changedFraction);
+        }
+    }
+    
+    /**
+     * Blur threshold for captures (see FrameQualityGate).
+     */
+    public static void setCaptureSharpnessThreshold(float threshold) {
+        synchronized (CAPTURE_QUALITY) {
+            CAPTURE_QUALITY.setSharpnessThreshold(threshold);
+        }
+    }
+    
+    /**
+     * Scores a captured frame before it is processed; returns a FrameQualityGate verdict.
+     */
+    public static int checkCaptureQuality(Bitmap bitmap) {
+        int width = Math.min(QUALITY_SCORE_WIDTH, bitmap.getWidth());
+        int height = Math.max(1, bitmap.getHeight() * width / bitmap.getWidth());
+        if (width < FrameQualityGate.SAMPLE_COLUMNS + 2 || height < FrameQualityGate.SAMPLE_ROWS + 2) {
+            return FrameQualityGate.OK; // too small to judge
+        }
+        Bitmap thumbnail = BitmapPool.getInstance().scaled(bitmap, null, width, height);
+        int[] pixels = new int[width * height];
+        thumbnail.getPixels(pixels, 0, width, 0, 0, width, height);
+        BitmapPool.getInstance().release(thumbnail);
+        synchronized (CAPTURE_QUALITY) {
+            int verdict = CAPTURE_QUALITY.evaluate(pixels, width, height);
+            android.util.Log.d("ImageProcessor", "Capture quality: " + FrameQualityGate.describe(verdict)
+                + " (" + CAPTURE_QUALITY.getMetricsSummary() + ")");
+            return verdict;
+        }
+    }
     
     public static ProcessingResult processImage(Context context, Bitmap bitmap) {
         // Resize bitmap for processing (maintain aspect ratio)
         int maxDimension = 640;
         Bitmap processedBitmap = resizeBitmap(bitmap, maxDimension);
         
-        // Run object detection
-        ObjectDetector detector = new ObjectDetector(context);
-        java.util.List<Detection> detections = detector.detect(processedBitmap);
+        // Run object detection (+ spatial analysis) and OCR in parallel.
+        // OCR runs once - every consumer below shares this single result.
+        VisionPipeline.Output pipelineOutput = runPipeline(context, bitmap, processedBitmap);
+        java.util.List<Detection> analyzedDetections = pipelineOutput.getDetections();
+        OCRResult ocrResult = pipelineOutput.getOcrResult();
         
-        // Run OCR - extract text with bounding boxes
-        OCRProcessor ocrProcessor = new OCRProcessor(context);
-        java.util.List<String> textDetections = ocrProcessor.extractText(processedBitmap);
-        java.util.List<OCRProcessor.TextDetection> textDetectionsWithBoxes = 
-            ocrProcessor.extractTextWithBoxes(processedBitmap);
+        // Narration priority order for everything below; the one batch built from it feeds
+        // the local narration and the results screen
+        NarrationGenerator.prioritizeDetections(analyzedDetections);
+        DetectionBatch detectionBatch = DetectionBatch.fromDetections(analyzedDetections);
         
-        // Analyze spatial relationships
-        SpatialAnalyzer analyzer = new SpatialAnalyzer();
-        java.util.List<Detection> analyzedDetections = analyzer.analyze(detections, 
-            processedBitmap.getWidth(), processedBitmap.getHeight());
-        
-        // Generate narration - try Gemini first if available, fallback to local
-        String narration = generateNarration(processedBitmap, analyzedDetections, textDetections);
+        // Generate narration - local first in progressive mode, Gemini may follow as an update
+        long resultId = NarrationUpdates.register();
+        String narration = generateNarration(processedBitmap, analyzedDetections, detectionBatch,
+            ocrResult, resultId);
         
         // Create summary
-        String summary = createSummary(analyzedDetections, textDetections);
+        String summary = ResultFormatter.createSummary(analyzedDetections, ocrResult);
         
-        // Convert to JSON - include both object and text detections
-        String detectionsJson = convertToJson(analyzedDetections, textDetectionsWithBoxes);
+        android.util.Log.d("ImageProcessor", "Bitmap pool: " + BitmapPool.getInstance().getMetricsSummary());
         
-        return new ProcessingResult(narration, summary, detectionsJson, processedBitmap);
+        // Detections stay typed for the results screen; JSON is only built on demand
+        return new ProcessingResult(resultId, narration, summary, processedBitmap,
+            detectionBatch, ocrResult);
     }
     
     /**
      * Generates narration using Gemini API if available, otherwise falls back to local narration.
-     * This method handles the async Gemini call and waits for result with timeout.
+     * In progressive mode the local narration is returned immediately and the Gemini call runs
+     * in the background; otherwise this waits for the Gemini result with timeout.
      */
-    private static String generateNarration(Bitmap bitmap, java.util.List<Detection> detections, 
-                                           java.util.List<String> textDetections) {
+    private static String generateNarration(Bitmap bitmap, java.util.List<Detection> detections,
+                                           DetectionBatch detectionBatch, OCRResult ocrResult,
+                                           long resultId) {
+        // Same scene as a recent frame: reuse its narration instead of asking Gemini again
+        SceneSignature signature = SceneSignature.of(detections, ocrResult, perceptualHash(bitmap));
+        NarrationCache.CachedNarration cached = NARRATION_CACHE.get(signature);
+        if (cached != null) {
+            android.util.Log.d("ImageProcessor", "Using cached " + cached.getSource() + " narration ("
+                + NARRATION_CACHE.getMetricsSummary() + ")");
+            return cached.getNarration();
+        }
+        
         // Check if Gemini is available
+        if (GeminiHelper.isAvailable() && progressiveNarration) {
+            String localNarration = NarrationGenerator.generate(detectionBatch, ocrResult);
+            NARRATION_CACHE.put(signature, localNarration, NarrationCache.SOURCE_LOCAL, LOCAL_NARRATION_TTL_MS);
+            requestGeminiUpgrade(bitmap, detections, ocrResult, signature, resultId, localNarration);
+            android.util.Log.d("ImageProcessor", "Using local narration, Gemini upgrade pending");
+            return localNarration;
+        }
         if (GeminiHelper.isAvailable()) {
             try {
-                // Try Gemini with timeout (10 seconds)
+                // Try Gemini with timeout (10 seconds); the request is cancelled at the deadline
                 java.util.concurrent.CompletableFuture<String> geminiFuture = 
-                    GeminiHelper.generateEnhancedNarration(bitmap, detections, textDetections);
+                    GeminiHelper.generateEnhancedNarration(bitmap, detections, ocrResult, GEMINI_DEADLINE_MS);
                 
                 try {
                     // Wait for Gemini response with timeout
-                    String geminiNarration = geminiFuture.get(10, java.util.concurrent.TimeUnit.SECONDS);
+                    String geminiNarration = geminiFuture.get(GEMINI_DEADLINE_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
                     
                     if (geminiNarration != null && !geminiNarration.trim().isEmpty()) {
                         android.util.Log.d("ImageProcessor", "Using Gemini narration");
+                        NARRATION_CACHE.put(signature, geminiNarration, NarrationCache.SOURCE_GEMINI,
+                            GEMINI_NARRATION_TTL_MS);
                         return geminiNarration;
                     }
                 } catch (java.util.concurrent.TimeoutException e) {
@@ -73,117 +171,110 @@ public class ImageProcessor {
         
         // Fallback to local narration
         android.util.Log.d("ImageProcessor", "Using local narration");
-        return NarrationGenerator.generate(detections, textDetections);
-    }
-    
-    private static Bitmap resizeBitmap(Bitmap bitmap, int maxDimension) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        
-        if (width <= maxDimension && height <= maxDimension) {
-            return bitmap;
-        }
-        
-        float scale = Math.min((float) maxDimension / width, (float) maxDimension / height);
-        int newWidth = Math.round(width * scale);
-        int newHeight = Math.round(height * scale);
-        
-        return Bitmap.createScaledBitmap(bitmap, newWidth, newHeight, true);
+        String narration = NarrationGenerator.generate(detectionBatch, ocrResult);
+        NARRATION_CACHE.put(signature, narration, NarrationCache.SOURCE_LOCAL, LOCAL_NARRATION_TTL_MS);
+        return narration;
     }
     
-    private static String createSummary(java.util.List<Detection> detections, 
-                                       java.util.List<String> texts) {
-        StringBuilder summary = new StringBuilder();
-        
-        if (detections.isEmpty() && texts.isEmpty()) {
-            return "No objects or text detected.";
+    private static void requestGeminiUpgrade(Bitmap bitmap, java.util.List<Detection> detections,
+                                             OCRResult ocrResult, SceneSignature signature,
+                                             long resultId, String localNarration) {
+        java.util.concurrent.CompletableFuture<String> geminiFuture;
+        // Set by the first streamed phrase: speak the stream as it arrives, or hold it back
+        java.util.concurrent.atomic.AtomicReference<Boolean> streaming =
+            new java.util.concurrent.atomic.AtomicReference<>();
+        if (streamingNarration) {
+            geminiFuture = GeminiHelper.streamEnhancedNarration(bitmap, detections, ocrResult,
+                geminiUpgradeWindowMs, phrase -> {
+                    if (streaming.get() == null) {
+                        streaming.set(!NarrationUpdates.mostlyRepeats(localNarration, phrase));
+                    }
+                    if (streaming.get()) {
+                        NarrationUpdates.publishPhrase(resultId, phrase);
+                    }
+                });
+        } else {
+            geminiFuture = GeminiHelper.generateEnhancedNarration(bitmap, detections, ocrResult,
+                geminiUpgradeWindowMs);
         }
-        
-        if (!detections.isEmpty()) {
-            summary.append("Objects: ");
-            for (int i = 0; i < Math.min(detections.size(), 5); i++) {
-                Detection d = detections.get(i);
-                summary.append(d.getLabel())
-                       .append(" (").append(d.getSide())
-                       .append(", ").append(d.getDistance()).append(")");
-                if (i < Math.min(detections.size(), 5) - 1) {
-                    summary.append(" • ");
-                }
+        geminiFuture.thenAccept(geminiNarration -> {
+            if (geminiNarration == null || geminiNarration.trim().isEmpty()) {
+                return; // timed out or failed - the local narration (and any phrases spoken) stand
             }
-            if (detections.size() > 5) {
-                summary.append(" and ").append(detections.size() - 5).append(" more");
+            NARRATION_CACHE.put(signature, geminiNarration, NarrationCache.SOURCE_GEMINI,
+                GEMINI_NARRATION_TTL_MS);
+            if (Boolean.TRUE.equals(streaming.get())
+                    || NarrationUpdates.isMateriallyDifferent(localNarration, geminiNarration)) {
+                android.util.Log.d("ImageProcessor", "Publishing Gemini narration update");
+                NarrationUpdates.publish(resultId, geminiNarration);
+            } else {
+                android.util.Log.d("ImageProcessor", "Gemini narration matches local narration, not repeating it");
             }
-        }
-        
-        if (!texts.isEmpty()) {
-            if (summary.length() > 0) {
-                summary.append("\n");
+        });
+    }
+    
+    /**
+     * Runs the stages the scene-change gate asks for, reusing the previous capture's results
+     * for the rest.
+     */
+    private static VisionPipeline.Output runPipeline(Context context, Bitmap original, Bitmap bitmap) {
+        int gridWidth = SceneChangeGate.GRID_WIDTH * SceneChangeGate.SAMPLES_PER_SIDE;
+        int gridHeight = SceneChangeGate.GRID_HEIGHT * SceneChangeGate.SAMPLES_PER_SIDE;
+        Bitmap thumbnail = BitmapPool.getInstance().scaled(bitmap, null, gridWidth, gridHeight);
+        int[] pixels = new int[gridWidth * gridHeight];
+        thumbnail.getPixels(pixels, 0, gridWidth, 0, 0, gridWidth, gridHeight);
+        BitmapPool.getInstance().release(thumbnail);
+
+        synchronized (CAPTURE_GATE) {
+            VisionPipeline.Output previous = lastOutput;
+            if (bitmap.getWidth() != lastWidth || bitmap.getHeight() != lastHeight) {
+                CAPTURE_GATE.reset(); // previous boxes would not line up with this frame
+                previous = null;
             }
-            summary.append("Text: ");
-            for (int i = 0; i < Math.min(texts.size(), 3); i++) {
-                summary.append(texts.get(i));
-                if (i < Math.min(texts.size(), 3) - 1) {
-                    summary.append(", ");
-                }
+            int stages = CAPTURE_GATE.evaluate(pixels, gridWidth, gridHeight);
+            VisionPipeline.Output output = VisionPipeline.run(context, bitmap, original, stages, previous);
+            if (output.getOcrMs() < 0 || output.getDetectionMs() < 0) {
+                CAPTURE_GATE.reset(); // a stage missed its deadline: don't reuse its empty result
+            } else if ((stages & SceneChangeGate.RUN_OCR) != 0 || previous == null) {
+                CAPTURE_GATE.setTextRegions(output.getOcrResult().getLines(),
+                    bitmap.getWidth(), bitmap.getHeight());
             }
+            lastOutput = output;
+            lastWidth = bitmap.getWidth();
+            lastHeight = bitmap.getHeight();
+            android.util.Log.d("ImageProcessor", "Scene gate: " + CAPTURE_GATE.getMetricsSummary());
+            return output;
         }
-        
-        return summary.toString();
     }
     
-    private static String convertToJson(java.util.List<Detection> detections, 
-                                       java.util.List<OCRProcessor.TextDetection> textDetections) {
-        org.json.JSONArray jsonArray = new org.json.JSONArray();
+    /**
+     * 64-bit difference hash of the frame, from a 9x8 thumbnail.
+     */
+    private static long perceptualHash(Bitmap bitmap) {
+        Bitmap thumbnail = BitmapPool.getInstance().scaled(bitmap, null,
+            SceneSignature.HASH_WIDTH, SceneSignature.HASH_HEIGHT);
+        int[] pixels = new int[SceneSignature.HASH_WIDTH * SceneSignature.HASH_HEIGHT];
+        thumbnail.getPixels(pixels, 0, SceneSignature.HASH_WIDTH, 0, 0,
+            SceneSignature.HASH_WIDTH, SceneSignature.HASH_HEIGHT);
+        BitmapPool.getInstance().release(thumbnail);
+        return SceneSignature.dHash(pixels);
+    }
+    
+    /**
+     * The bitmap itself if it is small enough, otherwise a scaled copy borrowed from BitmapPool.
+     */
+    private static Bitmap resizeBitmap(Bitmap bitmap, int maxDimension) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
         
-        // Add object detections
-        for (Detection detection : detections) {
-            try {
-                org.json.JSONObject obj = new org.json.JSONObject();
-                obj.put("type", "object");
-                obj.put("label", detection.getLabel());
-                obj.put("confidence", detection.getConfidence());
-                obj.put("side", detection.getSide());
-                obj.put("distance", detection.getDistance());
-                
-                org.json.JSONObject bbox = new org.json.JSONObject();
-                bbox.put("left", detection.getLeft());
-                bbox.put("top", detection.getTop());
-                bbox.put("right", detection.getRight());
-                bbox.put("bottom", detection.getBottom());
-                obj.put("bbox", bbox);
-                
-                jsonArray.put(obj);
-            } catch (org.json.JSONException e) {
-                e.printStackTrace();
-            }
+        if (width <= maxDimension && height <= maxDimension) {
+            return bitmap;
         }
         
-        // Add text detections with bounding boxes
-        for (OCRProcessor.TextDetection textDetection : textDetections) {
-            try {
-                org.json.JSONObject obj = new org.json.JSONObject();
-                obj.put("type", "text");
-                obj.put("label", textDetection.getText());
-                obj.put("confidence", 1.0); // OCR doesn't provide confidence
-                obj.put("side", "center"); // Default for text
-                obj.put("distance", "mid"); // Default for text
-                
-                org.json.JSONObject bbox = new org.json.JSONObject();
-                bbox.put("left", textDetection.getLeft());
-                bbox.put("top", textDetection.getTop());
-                bbox.put("right", textDetection.getRight());
-                bbox.put("bottom", textDetection.getBottom());
-                obj.put("bbox", bbox);
-                
-                jsonArray.put(obj);
-            } catch (org.json.JSONException e) {
-                e.printStackTrace();
-            }
-        }
+        float scale = Math.min((float) maxDimension / width, (float) maxDimension / height);
+        int newWidth = Math.round(width * scale);
+        int newHeight = Math.round(height * scale);
         
-        return jsonArray.toString();
+        return BitmapPool.getInstance().scaled(bitmap, null, newWidth, newHeight);
     }
 }
-
-
-
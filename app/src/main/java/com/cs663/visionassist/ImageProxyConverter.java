@@ -0,0 +1,138 @@
+package com.cs663.visionassist;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ImageFormat;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+import androidx.camera.core.ImageProxy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts CameraX frames to upright ARGB Bitmaps.
+ *
+ * YUV_420_888 frames (ImageAnalysis) are converted straight from the planes with
+ * YuvConverter, so there is no NV21 packing and no JPEG encode/decode. JPEG frames
+ * (ImageCapture) are decoded once. Both paths apply the frame's rotation.
+ *
+ * With reuseBitmap the converter writes into the same Bitmap and pixel array every call,
+ * which suits the streaming analyzer that consumes each frame before the next arrives.
+ * Otherwise the returned Bitmap is borrowed from BitmapPool, and the caller gives it back
+ * with BitmapPool.release() when done. Not thread-safe; use one instance per thread.
+ */
+public class ImageProxyConverter {
+    private int[] pixels;
+    private Bitmap reusableBitmap;
+
+    public Bitmap convert(ImageProxy imageProxy, boolean reuseBitmap) {
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        if (planes == null || planes.length == 0) {
+            return null;
+        }
+        int rotation = imageProxy.getImageInfo().getRotationDegrees();
+
+        if (imageProxy.getFormat() == ImageFormat.YUV_420_888 && planes.length >= 3) {
+            return convertYuv(imageProxy, planes, rotation, reuseBitmap);
+        }
+
+        // ImageCapture delivers JPEG in a single plane
+        if (imageProxy.getFormat() == ImageFormat.JPEG || planes.length == 1) {
+            ByteBuffer buffer = planes[0].getBuffer();
+            buffer.rewind();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            Bitmap bitmap = decodeJpeg(bytes);
+            return bitmap != null ? rotate(bitmap, rotation) : null;
+        }
+        return null;
+    }
+
+    private Bitmap convertYuv(ImageProxy imageProxy, ImageProxy.PlaneProxy[] planes,
+                              int rotation, boolean reuseBitmap) {
+        int width = imageProxy.getWidth();
+        int height = imageProxy.getHeight();
+        int outWidth = YuvConverter.rotatedWidth(width, height, rotation);
+        int outHeight = YuvConverter.rotatedHeight(width, height, rotation);
+
+        if (pixels == null || pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+        YuvConverter.yuvToArgb(
+            planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+            planes[1].getBuffer(), planes[2].getBuffer(),
+            planes[1].getRowStride(), planes[1].getPixelStride(),
+            width, height, rotation, pixels);
+
+        Bitmap bitmap;
+        if (reuseBitmap) {
+            if (reusableBitmap == null || reusableBitmap.getWidth() != outWidth
+                    || reusableBitmap.getHeight() != outHeight) {
+                reusableBitmap = Bitmap.createBitmap(outWidth, outHeight, Bitmap.Config.ARGB_8888);
+            }
+            bitmap = reusableBitmap;
+        } else {
+            bitmap = BitmapPool.getInstance().acquireDirty(outWidth, outHeight, Bitmap.Config.ARGB_8888);
+        }
+        bitmap.setPixels(pixels, 0, outWidth, 0, 0, outWidth, outHeight);
+        return bitmap;
+    }
+
+    /**
+     * Decodes into a pooled bitmap when one of the right size is available.
+     */
+    private static Bitmap decodeJpeg(byte[] bytes) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inBitmap = BitmapPool.getInstance().acquireDirty(options.outWidth, options.outHeight,
+            Bitmap.Config.ARGB_8888);
+        try {
+            Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+            if (bitmap == null) {
+                BitmapPool.getInstance().release(options.inBitmap);
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            // inBitmap not usable for this image; decode into a new bitmap
+            BitmapPool.getInstance().release(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        }
+    }
+
+    /**
+     * Rotates into a pooled bitmap and returns the unrotated one to the pool.
+     */
+    private static Bitmap rotate(Bitmap bitmap, int rotation) {
+        if (rotation == 0) {
+            return bitmap;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        boolean swap = rotation == 90 || rotation == 270;
+        Bitmap rotated = BitmapPool.getInstance().acquireDirty(swap ? height : width, swap ? width : height,
+            Bitmap.Config.ARGB_8888);
+        Matrix matrix = new Matrix();
+        matrix.postRotate(rotation);
+        // Move the rotated image back to the origin
+        if (rotation == 90) {
+            matrix.postTranslate(height, 0);
+        } else if (rotation == 180) {
+            matrix.postTranslate(width, height);
+        } else if (rotation == 270) {
+            matrix.postTranslate(0, width);
+        }
+        new Canvas(rotated).drawBitmap(bitmap, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        BitmapPool.getInstance().release(bitmap);
+        return rotated;
+    }
+}
@@ -0,0 +1,29 @@
+package com.cs663.visionassist;
+
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+
+/**
+ * A way of executing the TFLite model (CPU/XNNPACK, GPU, NNAPI).
+ *
+ * DelegateSelector benchmarks the available options and picks one; keeping this an
+ * interface lets the selection logic run against fake delegates.
+ */
+public interface InferenceDelegate {
+
+    /**
+     * Stable name, used as the cached selection key.
+     */
+    String getName();
+
+    /**
+     * Whether this delegate can run on the current device at all.
+     */
+    boolean isSupported();
+
+    /**
+     * Configures options for a new interpreter. Returns the native delegate that must be
+     * closed after the interpreter, or null if there is nothing to close.
+     */
+    Delegate configure(Interpreter.Options options);
+}
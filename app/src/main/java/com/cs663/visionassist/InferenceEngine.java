@@ -0,0 +1,510 @@
+package com.cs663.visionassist;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide owner of the warmed-up ObjectDetector and OCRProcessor instances.
+ *
+ * Loading the TFLite model, creating the interpreter and reading labels is far more
+ * expensive than a single inference, so instances are created once (on app start)
+ * and handed out from a small bounded pool. Callers borrow an instance with
+ * acquireDetector()/acquireOcr() and must give it back with the matching release call.
+ *
+ * The detector model comes from a ModelRegistry and can be switched at runtime: every
+ * MODEL_CHECK_INTERVAL_MS the registry is asked which model fits the device conditions and
+ * the latency budget. A standby detector for the most likely next model is kept loaded and
+ * warmed up, so a switch only swaps pools; detectors of the old model still in use are
+ * closed when they are released.
+ *
+ * close() releases all native resources (called from onTrimMemory); the engine
+ * re-initializes lazily on the next request.
+ */
+public class InferenceEngine {
+    private static final String TAG = "InferenceEngine";
+    static final int POOL_SIZE = 2;
+    private static final long ACQUIRE_POLL_MS = 100;
+    private static final long MODEL_CHECK_INTERVAL_MS = 10_000;
+    private static final long DEFAULT_LATENCY_BUDGET_MS = 200;
+
+    private static InferenceEngine instance;
+
+    // Loads detectors for model switches and the standby off the inference threads
+    private static final ExecutorService MODEL_EXECUTOR = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "ModelSwap"));
+
+    private static volatile boolean adaptiveModelSelection = true;
+    private static volatile long latencyBudgetMs = DEFAULT_LATENCY_BUDGET_MS;
+
+    private Context appContext;
+    private BlockingQueue<ObjectDetector> detectorPool;
+    private BlockingQueue<OCRProcessor> ocrPool;
+    private final List<ObjectDetector> allDetectors = new ArrayList<>();
+    private final List<OCRProcessor> allOcrProcessors = new ArrayList<>();
+    private boolean initialized;
+    private ModelRegistry registry;
+    private ModelSpec activeModel;
+    private ObjectDetector standby; // warmed-up detector for registry.standbyFor(activeModel)
+    private long lastModelCheckNanos;
+    private long modelSwitches;
+
+    // Metrics
+    private final AtomicLong initTimeNanos = new AtomicLong();
+    private final AtomicLong initCount = new AtomicLong();
+    private final AtomicLong detectCount = new AtomicLong();
+    private final AtomicLong detectTimeNanos = new AtomicLong();
+    private final AtomicLong ocrCount = new AtomicLong();
+    private final AtomicLong ocrTimeNanos = new AtomicLong();
+
+    private InferenceEngine() {
+    }
+
+    public static synchronized InferenceEngine getInstance() {
+        if (instance == null) {
+            instance = new InferenceEngine();
+        }
+        return instance;
+    }
+
+    /**
+     * Whether the engine may switch detector models on its own.
+     */
+    public static void setAdaptiveModelSelection(boolean enabled) {
+        adaptiveModelSelection = enabled;
+    }
+
+    /**
+     * Detection latency the adaptive model selection aims to stay within.
+     */
+    public static void setLatencyBudgetMs(long budgetMs) {
+        latencyBudgetMs = budgetMs;
+    }
+
+    /**
+     * Creates and warms up the detector and OCR pools. Safe to call more than once.
+     */
+    public synchronized void init(Context context) {
+        if (initialized) {
+            return;
+        }
+        appContext = context.getApplicationContext();
+        long start = System.nanoTime();
+
+        if (registry == null) {
+            registry = ModelRegistry.fromAssets(appContext);
+            activeModel = registry.getAvailable().contains(ModelRegistry.DEFAULT_MODEL)
+                ? ModelRegistry.DEFAULT_MODEL : registry.getAvailable().get(0);
+        }
+        detectorPool = new ArrayBlockingQueue<>(POOL_SIZE);
+        ocrPool = new ArrayBlockingQueue<>(POOL_SIZE);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            ObjectDetector detector = createDetector(activeModel);
+            if (!detector.isLoaded() && i == 0 && registry.getAvailable().size() > 1) {
+                // Fall back to another installed model
+                detector.close();
+                activeModel = registry.getAvailable().get(0);
+                detector = createDetector(activeModel);
+            }
+            allDetectors.add(detector);
+            detectorPool.add(detector);
+
+            OCRProcessor ocrProcessor = new OCRProcessor(appContext);
+            allOcrProcessors.add(ocrProcessor);
+            ocrPool.add(ocrProcessor);
+        }
+        ModelSpec model = activeModel;
+        MODEL_EXECUTOR.execute(() -> prepareStandby(model));
+
+        long elapsed = System.nanoTime() - start;
+        initTimeNanos.addAndGet(elapsed);
+        initCount.incrementAndGet();
+        initialized = true;
+        Log.d(TAG, "Initialized " + POOL_SIZE + " detector/OCR instances (" + activeModel + ") in "
+            + (elapsed / 1_000_000) + " ms");
+    }
+
+    /**
+     * Loads and warms up a detector; a model that cannot be loaded is dropped from the registry.
+     */
+    private ObjectDetector createDetector(ModelSpec spec) {
+        ObjectDetector detector = new ObjectDetector(appContext, spec);
+        if (detector.isLoaded()) {
+            detector.warmUp();
+        } else {
+            registry.markUnavailable(spec);
+        }
+        return detector;
+    }
+
+    public synchronized ModelSpec getActiveModel() {
+        return activeModel;
+    }
+
+    /**
+     * Makes spec the active model. Instant when the standby detector is for spec; otherwise
+     * the first detector is loaded on the calling thread. The pool is refilled and a new
+     * standby prepared in the background.
+     */
+    public void switchModel(ModelSpec spec) {
+        ObjectDetector first;
+        synchronized (this) {
+            if (!initialized || spec == activeModel) {
+                return;
+            }
+            first = standby != null && standby.getSpec() == spec ? standby : null;
+            if (first != null) {
+                standby = null;
+            }
+        }
+        if (first == null) {
+            first = new ObjectDetector(appContext, spec);
+            if (!first.isLoaded()) {
+                first.close();
+                registry.markUnavailable(spec);
+                return;
+            }
+            first.warmUp();
+        }
+        synchronized (this) {
+            if (!initialized) {
+                first.close();
+                return;
+            }
+            ModelSpec previous = activeModel;
+            ModelSpec nextStandby = registry.standbyFor(spec);
+            // Idle detectors of the old model are closed now (one may become the standby),
+            // borrowed ones when they are released
+            ObjectDetector old;
+            while ((old = detectorPool.poll()) != null) {
+                if (standby == null && old.getSpec() == nextStandby) {
+                    standby = old;
+                } else {
+                    old.close();
+                }
+            }
+            allDetectors.clear();
+            detectorPool = new ArrayBlockingQueue<>(POOL_SIZE);
+            allDetectors.add(first);
+            detectorPool.add(first);
+            activeModel = spec;
+            modelSwitches++;
+            Log.d(TAG, "Switched detector model " + previous + " -> " + spec);
+        }
+        MODEL_EXECUTOR.execute(() -> {
+            fillDetectorPool(spec);
+            prepareStandby(spec);
+        });
+    }
+
+    private void fillDetectorPool(ModelSpec spec) {
+        while (true) {
+            synchronized (this) {
+                if (!initialized || activeModel != spec || allDetectors.size() >= POOL_SIZE) {
+                    return;
+                }
+            }
+            ObjectDetector detector = createDetector(spec);
+            synchronized (this) {
+                if (!initialized || activeModel != spec || allDetectors.size() >= POOL_SIZE) {
+                    detector.close();
+                    return;
+                }
+                allDetectors.add(detector);
+                detectorPool.offer(detector);
+            }
+        }
+    }
+
+    /**
+     * Keeps a warmed-up detector for the model most likely to be switched to next.
+     */
+    private void prepareStandby(ModelSpec active) {
+        ModelSpec target;
+        synchronized (this) {
+            if (!initialized || activeModel != active) {
+                return;
+            }
+            target = registry.standbyFor(active);
+            if (target == null || (standby != null && standby.getSpec() == target)) {
+                return;
+            }
+        }
+        ObjectDetector detector = createDetector(target);
+        synchronized (this) {
+            if (!initialized || activeModel != active || !detector.isLoaded()) {
+                detector.close();
+                return;
+            }
+            if (standby != null) {
+                standby.close();
+            }
+            standby = detector;
+            Log.d(TAG, "Standby detector ready: " + target);
+        }
+    }
+
+    /**
+     * Asks the registry, at most every MODEL_CHECK_INTERVAL_MS, whether another model fits
+     * the device conditions and latency budget better, and switches in the background.
+     */
+    private void maybeSwitchModel() {
+        if (!adaptiveModelSelection) {
+            return;
+        }
+        ModelSpec current;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (!initialized || now - lastModelCheckNanos < TimeUnit.MILLISECONDS.toNanos(MODEL_CHECK_INTERVAL_MS)) {
+                return;
+            }
+            lastModelCheckNanos = now;
+            current = activeModel;
+        }
+        ModelRegistry.DeviceConditions conditions = ModelRegistry.DeviceConditions.read(appContext);
+        ModelSpec next = registry.choose(current, conditions, latencyBudgetMs);
+        if (next != current) {
+            Log.d(TAG, "Switching to " + next + " (" + conditions + ", " + registry.getMetricsSummary() + ")");
+            MODEL_EXECUTOR.execute(() -> switchModel(next));
+        }
+    }
+
+    public synchronized boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * Borrows a detector, blocking until one is free. Must be returned with releaseDetector().
+     */
+    public ObjectDetector acquireDetector(Context context) throws InterruptedException {
+        while (true) {
+            BlockingQueue<ObjectDetector> pool;
+            synchronized (this) {
+                init(context);
+                pool = detectorPool;
+            }
+            // Poll rather than take so a waiter notices when close() replaces the pool
+            ObjectDetector detector = pool.poll(ACQUIRE_POLL_MS, TimeUnit.MILLISECONDS);
+            if (detector != null) {
+                return detector;
+            }
+        }
+    }
+
+    public void releaseDetector(ObjectDetector detector) {
+        synchronized (this) {
+            // Engine was closed while the detector was borrowed - close it now that it is idle
+            if (!allDetectors.contains(detector)) {
+                detector.close();
+                return;
+            }
+            detectorPool.offer(detector);
+        }
+    }
+
+    /**
+     * Borrows an OCR processor, blocking until one is free. Must be returned with releaseOcr().
+     */
+    public OCRProcessor acquireOcr(Context context) throws InterruptedException {
+        while (true) {
+            BlockingQueue<OCRProcessor> pool;
+            synchronized (this) {
+                init(context);
+                pool = ocrPool;
+            }
+            OCRProcessor ocrProcessor = pool.poll(ACQUIRE_POLL_MS, TimeUnit.MILLISECONDS);
+            if (ocrProcessor != null) {
+                return ocrProcessor;
+            }
+        }
+    }
+
+    public void releaseOcr(OCRProcessor ocrProcessor) {
+        synchronized (this) {
+            if (!allOcrProcessors.contains(ocrProcessor)) {
+                ocrProcessor.close();
+                return;
+            }
+            ocrPool.offer(ocrProcessor);
+        }
+    }
+
+    /**
+     * Runs object detection on a pooled detector and records the inference time.
+     */
+    public List<Detection> detect(Context context, Bitmap bitmap) {
+        ObjectDetector detector;
+        try {
+            detector = acquireDetector(context);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        }
+        try {
+            long start = System.nanoTime();
+            List<Detection> detections = detector.detect(bitmap);
+            recordDetectTime(detector, System.nanoTime() - start);
+            return detections;
+        } finally {
+            releaseDetector(detector);
+            maybeSwitchModel();
+        }
+    }
+
+    /**
+     * Primitive variant of detect(): writes into the caller's reused batch.
+     */
+    public void detect(Context context, Bitmap bitmap, DetectionBatch detections) {
+        ObjectDetector detector;
+        try {
+            detector = acquireDetector(context);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            detections.reset(detections.getLabels());
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            detector.detect(bitmap, detections);
+            recordDetectTime(detector, System.nanoTime() - start);
+        } finally {
+            releaseDetector(detector);
+            maybeSwitchModel();
+        }
+    }
+
+    /**
+     * Runs detection on a region of the bitmap (see ObjectDetector) on a pooled detector.
+     */
+    public void detect(Context context, Bitmap bitmap, Rect region, DetectionBatch detections) {
+        ObjectDetector detector;
+        try {
+            detector = acquireDetector(context);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            detections.reset(detections.getLabels());
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            detector.detect(bitmap, region, detections);
+            recordDetectTime(detector, System.nanoTime() - start);
+        } finally {
+            releaseDetector(detector);
+        }
+    }
+
+    /**
+     * Expected time of one detection pass with the active model, or -1 if not measured yet.
+     */
+    public float estimateDetectLatencyMs() {
+        ModelSpec model;
+        synchronized (this) {
+            if (registry == null) {
+                return -1;
+            }
+            model = activeModel;
+        }
+        return registry.estimateLatencyMs(model);
+    }
+
+    /**
+     * Larger side of the active model's input in pixels, or 0 before the engine is initialized.
+     */
+    public synchronized int getDetectorInputSize() {
+        for (ObjectDetector detector : allDetectors) {
+            if (detector.isLoaded()) {
+                return Math.max(detector.getInputWidth(), detector.getInputHeight());
+            }
+        }
+        return 0;
+    }
+
+    private void recordDetectTime(ObjectDetector detector, long elapsedNanos) {
+        detectTimeNanos.addAndGet(elapsedNanos);
+        detectCount.incrementAndGet();
+        registry.recordLatency(detector.getSpec(), elapsedNanos / 1_000_000);
+    }
+
+    /**
+     * Runs a single text recognition pass on a pooled OCR processor and records the inference time.
+     */
+    public OCRResult recognizeText(Context context, Bitmap bitmap, long timeoutMs) {
+        OCRProcessor ocrProcessor;
+        try {
+            ocrProcessor = acquireOcr(context);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return OCRResult.EMPTY;
+        }
+        try {
+            long start = System.nanoTime();
+            OCRResult ocrResult = ocrProcessor.recognize(bitmap, timeoutMs);
+            ocrTimeNanos.addAndGet(System.nanoTime() - start);
+            ocrCount.incrementAndGet();
+            return ocrResult;
+        } finally {
+            releaseOcr(ocrProcessor);
+        }
+    }
+
+    /**
+     * Closes every idle detector and OCR instance. Instances currently borrowed are
+     * closed when they are released, so an in-flight inference is never torn down.
+     */
+    public synchronized void close() {
+        if (!initialized) {
+            return;
+        }
+        ObjectDetector detector;
+        while ((detector = detectorPool.poll()) != null) {
+            detector.close();
+        }
+        OCRProcessor ocrProcessor;
+        while ((ocrProcessor = ocrPool.poll()) != null) {
+            ocrProcessor.close();
+        }
+        if (standby != null) {
+            standby.close();
+            standby = null;
+        }
+        allDetectors.clear();
+        allOcrProcessors.clear();
+        initialized = false;
+        Log.d(TAG, "Closed inference engine");
+    }
+
+    public long getAverageInitTimeMs() {
+        long count = initCount.get();
+        return count == 0 ? 0 : initTimeNanos.get() / count / 1_000_000;
+    }
+
+    public long getAverageDetectTimeMs() {
+        long count = detectCount.get();
+        return count == 0 ? 0 : detectTimeNanos.get() / count / 1_000_000;
+    }
+
+    public long getAverageOcrTimeMs() {
+        long count = ocrCount.get();
+        return count == 0 ? 0 : ocrTimeNanos.get() / count / 1_000_000;
+    }
+
+    public synchronized String getMetricsSummary() {
+        return String.format(java.util.Locale.US,
+            "init: %d x %d ms, detect: %d x %d ms, ocr: %d x %d ms, model: %s (%d switches, standby %s)",
+            initCount.get(), getAverageInitTimeMs(),
+            detectCount.get(), getAverageDetectTimeMs(),
+            ocrCount.get(), getAverageOcrTimeMs(),
+            activeModel, modelSwitches, standby != null ? standby.getSpec() : "none");
+    }
+}
@@ -0,0 +1,80 @@
+package com.cs663.visionassist;
+
+/**
+ * Mapping from a source image to a detector's fixed-size input, and back.
+ *
+ * LETTERBOX scales the whole image to fit and pads the rest, CENTER_CROP scales it to fill
+ * the input and cuts off what does not fit, and STRETCH scales each axis independently (the
+ * old behaviour, which distorts the aspect ratio). The forward mapping is
+ * input = source * scale + offset per axis; boxes predicted in input coordinates are mapped
+ * back with the exact inverse, so letterbox padding and crop offsets do not shift them.
+ *
+ * Mutable so a detector can keep one instance and update it per frame. Pure Java.
+ */
+public final class InputTransform {
+    public enum Mode { LETTERBOX, CENTER_CROP, STRETCH }
+
+    private Mode mode = Mode.STRETCH;
+    private int sourceWidth;
+    private int sourceHeight;
+    private int inputWidth;
+    private int inputHeight;
+    private float scaleX = 1f;
+    private float scaleY = 1f;
+    private float offsetX;
+    private float offsetY;
+
+    public InputTransform set(Mode mode, int sourceWidth, int sourceHeight, int inputWidth, int inputHeight) {
+        this.mode = mode;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+
+        float fitX = (float) inputWidth / sourceWidth;
+        float fitY = (float) inputHeight / sourceHeight;
+        if (mode == Mode.STRETCH) {
+            scaleX = fitX;
+            scaleY = fitY;
+        } else {
+            float scale = mode == Mode.LETTERBOX ? Math.min(fitX, fitY) : Math.max(fitX, fitY);
+            scaleX = scale;
+            scaleY = scale;
+        }
+        // Centered: padding (letterbox) or the cut-off part (crop) is split evenly
+        offsetX = (inputWidth - sourceWidth * scaleX) / 2f;
+        offsetY = (inputHeight - sourceHeight * scaleY) / 2f;
+        return this;
+    }
+
+    public Mode getMode() { return mode; }
+    public int getSourceWidth() { return sourceWidth; }
+    public int getSourceHeight() { return sourceHeight; }
+    public float getScaleX() { return scaleX; }
+    public float getScaleY() { return scaleY; }
+    public float getOffsetX() { return offsetX; }
+    public float getOffsetY() { return offsetY; }
+
+    /**
+     * Source x of a model output x normalized to the input width (0-1).
+     */
+    public float toSourceX(float normalizedX) {
+        return (normalizedX * inputWidth - offsetX) / scaleX;
+    }
+
+    /**
+     * Source y of a model output y normalized to the input height (0-1).
+     */
+    public float toSourceY(float normalizedY) {
+        return (normalizedY * inputHeight - offsetY) / scaleY;
+    }
+
+    /**
+     * Fraction of the input that holds image content (less than 1 only for LETTERBOX).
+     */
+    public float getContentFraction() {
+        float contentWidth = Math.min(inputWidth, sourceWidth * scaleX);
+        float contentHeight = Math.min(inputHeight, sourceHeight * scaleY);
+        return contentWidth * contentHeight / ((float) inputWidth * inputHeight);
+    }
+}
@@ -8,6 +8,7 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.speech.tts.TextToSpeech;
 import android.view.View;
@@ -22,6 +23,7 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.camera.core.Camera;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageCapture;
 import androidx.camera.core.ImageCaptureException;
 import androidx.camera.core.ImageProxy;
@@ -34,20 +36,23 @@ import androidx.core.content.ContextCompat;
 import com.google.android.material.button.MaterialButton;
 import com.google.common.util.concurrent.ListenableFuture;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.util.Locale;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 100;
     private static final int GALLERY_REQUEST_CODE = 200;
+    private static final float LIVE_TARGET_FPS = 5f;
+    private static final long QUALITY_RETRY_WINDOW_MS = 10_000; // a retake this soon is accepted as is
+    // adb shell am start -n com.cs663.visionassist/.MainActivity --ez compareModels true
+    private static final String EXTRA_COMPARE_MODELS = "compareModels";
     
     private PreviewView cameraPreview;
     private MaterialButton captureButton;
     private MaterialButton galleryButton;
+    private MaterialButton liveButton;
     private ProgressBar progressBar;
     private TextView statusText;
     
@@ -55,6 +60,17 @@ public class MainActivity extends AppCompatActivity {
     private TextToSpeech textToSpeech;
     private ProcessCameraProvider cameraProvider;
     
+    // Live (continuous) analysis
+    private ImageAnalysis imageAnalysis;
+    private ExecutorService analysisExecutor;
+    private boolean isStreaming;
+    private String lastSpokenNarration;
+    
+    // Frame converters: captures get their own Bitmap, live frames reuse one on the analysis thread
+    private final ImageProxyConverter captureConverter = new ImageProxyConverter();
+    private final ImageProxyConverter liveConverter = new ImageProxyConverter();
+    private long lastRejectedCaptureMs;
+    
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -63,6 +79,22 @@ public class MainActivity extends AppCompatActivity {
         initializeViews();
         initializeTextToSpeech();
         checkCameraPermission();
+        if (getIntent() != null && getIntent().getBooleanExtra(EXTRA_COMPARE_MODELS, false)) {
+            compareModels();
+        }
+    }
+    
+    /**
+     * Runs the model variant comparison in the background; the report goes to the log and
+     * to model_comparison.txt in the app's external files directory.
+     */
+    private void compareModels() {
+        Toast.makeText(this, "Comparing model variants...", Toast.LENGTH_SHORT).show();
+        new Thread(() -> {
+            ModelComparison.runFromAssets(getApplicationContext());
+            runOnUiThread(() -> Toast.makeText(MainActivity.this,
+                "Model comparison written to model_comparison.txt", Toast.LENGTH_LONG).show());
+        }, "ModelComparison").start();
     }
     
     private void initializeViews() {
@@ -76,6 +108,7 @@ public class MainActivity extends AppCompatActivity {
         cameraPreview = findViewById(R.id.cameraPreview);
         captureButton = findViewById(R.id.captureButton);
         galleryButton = findViewById(R.id.galleryButton);
+        liveButton = findViewById(R.id.liveButton);
         progressBar = findViewById(R.id.progressBar);
         statusText = findViewById(R.id.statusText);
         
@@ -83,6 +116,9 @@ public class MainActivity extends AppCompatActivity {
         if (galleryButton != null) {
             galleryButton.setOnClickListener(v -> selectFromGallery());
         }
+        if (liveButton != null) {
+            liveButton.setOnClickListener(v -> toggleStreaming());
+        }
     }
     
     private void initializeTextToSpeech() {
@@ -137,10 +173,17 @@ public class MainActivity extends AppCompatActivity {
                       .setTargetRotation(cameraPreview.getDisplay().getRotation())
                       .build();
                 
+                // Keep only the latest frame: frames arriving while one is analyzed are dropped
+                imageAnalysis = new ImageAnalysis.Builder()
+                    .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                    .setTargetResolution(new android.util.Size(640, 480))
+                    .setTargetRotation(cameraPreview.getDisplay().getRotation())
+                    .build();
+                
                 CameraSelector cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA;
                 
                 Camera camera = cameraProvider.bindToLifecycle(
-                    this, cameraSelector, preview, imageCapture);
+                    this, cameraSelector, preview, imageCapture, imageAnalysis);
                 
                 // Speak initial guidance
                 if (textToSpeech != null) {
@@ -169,9 +212,12 @@ public class MainActivity extends AppCompatActivity {
             new ImageCapture.OnImageCapturedCallback() {
                 @Override
                 public void onCaptureSuccess(@NonNull ImageProxy imageProxy) {
-                    Bitmap bitmap = imageProxyToBitmap(imageProxy);
+                    Bitmap bitmap = captureConverter.convert(imageProxy, false);
                     imageProxy.close(); // Important: close the ImageProxy
-                    if (bitmap != null) {
+                    if (bitmap != null && rejectLowQuality(bitmap)) {
+                        BitmapPool.getInstance().release(bitmap);
+                        setProcessingState(false);
+                    } else if (bitmap != null) {
                         processImage(bitmap);
                     } else {
                         runOnUiThread(() -> {
@@ -195,106 +241,98 @@ public class MainActivity extends AppCompatActivity {
         );
     }
     
-    private Bitmap imageProxyToBitmap(ImageProxy imageProxy) {
-        // Convert ImageProxy to Bitmap
-        android.media.Image image = imageProxy.getImage();
-        if (image == null) {
-            return null;
+    /**
+     * Asks for a retake instead of narrating a blurred, dark or over-exposed capture. A
+     * retake within QUALITY_RETRY_WINDOW_MS goes through regardless, since some scenes
+     * (a blank wall, a dark room) never pass.
+     */
+    private boolean rejectLowQuality(Bitmap bitmap) {
+        int verdict = ImageProcessor.checkCaptureQuality(bitmap);
+        long now = SystemClock.elapsedRealtime();
+        if (verdict == FrameQualityGate.OK
+                || (lastRejectedCaptureMs != 0 && now - lastRejectedCaptureMs < QUALITY_RETRY_WINDOW_MS)) {
+            lastRejectedCaptureMs = 0;
+            return false;
         }
-        
-        int format = image.getFormat();
-        int width = image.getWidth();
-        int height = image.getHeight();
-        android.media.Image.Plane[] planes = image.getPlanes();
-        
-        // Safety check: ensure we have at least one plane
-        if (planes == null || planes.length == 0) {
-            return null;
+        lastRejectedCaptureMs = now;
+        int message;
+        if (verdict == FrameQualityGate.TOO_DARK) {
+            message = R.string.capture_too_dark;
+        } else if (verdict == FrameQualityGate.OVEREXPOSED) {
+            message = R.string.capture_overexposed;
+        } else {
+            message = R.string.capture_blurred;
         }
-        
-        // Handle YUV_420_888 format (most common for CameraX ImageCapture)
-        // But only if we have 3 planes (Y, U, V)
-        if (format == android.graphics.ImageFormat.YUV_420_888 && planes.length >= 3) {
-            try {
-                java.nio.ByteBuffer yBuffer = planes[0].getBuffer();
-                java.nio.ByteBuffer uBuffer = planes[1].getBuffer();
-                java.nio.ByteBuffer vBuffer = planes[2].getBuffer();
-                
-                int ySize = yBuffer.remaining();
-                int uSize = uBuffer.remaining();
-                int vSize = vBuffer.remaining();
-                
-                byte[] nv21 = new byte[ySize + uSize + vSize];
-                
-                yBuffer.get(nv21, 0, ySize);
-                vBuffer.get(nv21, ySize, vSize);
-                uBuffer.get(nv21, ySize + vSize, uSize);
-                
-                android.graphics.YuvImage yuvImage = new android.graphics.YuvImage(
-                    nv21, android.graphics.ImageFormat.NV21, 
-                    width, height, null);
-                
-                java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
-                yuvImage.compressToJpeg(
-                    new android.graphics.Rect(0, 0, width, height), 
-                    100, out);
-                byte[] imageBytes = out.toByteArray();
-                
-                return BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
-            } catch (Exception e) {
-                e.printStackTrace();
-                // Fall through to alternative method
-            }
+        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+        if (textToSpeech != null) {
+            textToSpeech.speak(getString(message), TextToSpeech.QUEUE_FLUSH, null, null);
         }
-        
-        // Alternative method: Handle JPEG format or single plane images
-        // For ImageCapture, the image might be in JPEG format already
-        if (format == android.graphics.ImageFormat.JPEG || planes.length == 1) {
-            try {
-                java.nio.ByteBuffer buffer = planes[0].getBuffer();
-                byte[] bytes = new byte[buffer.remaining()];
-                buffer.rewind();
-                buffer.get(bytes);
-                
-                Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                if (bitmap != null) {
-                    return bitmap;
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        return true;
+    }
+    
+    private void toggleStreaming() {
+        if (isStreaming) {
+            stopStreaming();
+        } else {
+            startStreaming();
         }
-        
-        // Last resort: Create a bitmap and manually convert
-        // This is a fallback - may not produce perfect results
-        return createBitmapFromPlanes(image, planes, width, height);
     }
     
-    private Bitmap createBitmapFromPlanes(android.media.Image image, 
-                                         android.media.Image.Plane[] planes,
-                                         int width, int height) {
-        if (planes.length == 0) {
-            return null;
+    private void startStreaming() {
+        if (imageAnalysis == null) {
+            Toast.makeText(this, "Camera not ready", Toast.LENGTH_SHORT).show();
+            return;
         }
-        
-        // Try to create bitmap from available data
-        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        
-        // For single plane formats, try to decode
-        if (planes.length == 1) {
-            java.nio.ByteBuffer buffer = planes[0].getBuffer();
-            int pixelStride = planes[0].getPixelStride();
-            
-            if (pixelStride == 4) { // ARGB_8888
-                buffer.rewind();
-                bitmap.copyPixelsFromBuffer(buffer);
-                return bitmap;
-            }
+        if (analysisExecutor == null) {
+            analysisExecutor = Executors.newSingleThreadExecutor();
+        }
+        lastSpokenNarration = null;
+        imageAnalysis.setAnalyzer(analysisExecutor, new StreamingAnalyzer(
+            this, LIVE_TARGET_FPS, imageProxy -> liveConverter.convert(imageProxy, true), 
+            this::onLiveFrameAnalyzed));
+        isStreaming = true;
+        liveButton.setText(R.string.live_mode_stop);
+        captureButton.setEnabled(false);
+        if (galleryButton != null) {
+            galleryButton.setEnabled(false);
+        }
+        statusText.setText(R.string.live_mode_started);
+        if (textToSpeech != null) {
+            textToSpeech.speak(getString(R.string.live_mode_started), 
+                TextToSpeech.QUEUE_FLUSH, null, null);
         }
-        
-        // If we can't convert properly, return a placeholder
-        // In production, you'd want proper YUV to RGB conversion
-        return bitmap;
+    }
+    
+    private void stopStreaming() {
+        if (!isStreaming) {
+            return;
+        }
+        if (imageAnalysis != null) {
+            imageAnalysis.clearAnalyzer();
+        }
+        isStreaming = false;
+        liveButton.setText(R.string.live_mode_start);
+        captureButton.setEnabled(true);
+        if (galleryButton != null) {
+            galleryButton.setEnabled(true);
+        }
+        statusText.setText(R.string.live_mode_stopped);
+    }
+    
+    private void onLiveFrameAnalyzed(String narration, DetectionBatch detections, 
+                                     StreamingAnalyzer.Stats stats) {
+        runOnUiThread(() -> {
+            if (!isStreaming) {
+                return;
+            }
+            statusText.setText(stats.toString());
+            // Only announce changes, and never talk over the current announcement
+            if (textToSpeech != null && !textToSpeech.isSpeaking() 
+                    && !narration.equals(lastSpokenNarration)) {
+                textToSpeech.speak(narration, TextToSpeech.QUEUE_FLUSH, null, null);
+                lastSpokenNarration = narration;
+            }
+        });
     }
     
     private void processImage(Bitmap bitmap) {
@@ -309,24 +347,22 @@ public class MainActivity extends AppCompatActivity {
             try {
                 ProcessingResult result = ImageProcessor.processImage(
                     MainActivity.this, bitmap);
+                // Only the resized copy is used from here on
+                if (result.getProcessedBitmap() != bitmap) {
+                    BitmapPool.getInstance().release(bitmap);
+                }
                 
                 runOnUiThread(() -> {
                     setProcessingState(false);
                     
-                    // Save processed bitmap to temporary file (has correct bounding box coordinates)
-                    Bitmap processedBitmap = result.getProcessedBitmap();
-                    Uri imageUri = saveBitmapToFile(processedBitmap);
-                    if (imageUri != null) {
-                        Intent intent = new Intent(MainActivity.this, ResultsActivity.class);
-                        intent.putExtra("imageUri", imageUri.toString());
-                        intent.putExtra("narration", result.getNarration());
-                        intent.putExtra("detections", result.getDetectionsSummary());
-                        intent.putExtra("detectedObjects", result.getDetectedObjectsJson());
-                        startActivity(intent);
-                    } else {
-                        Toast.makeText(MainActivity.this, 
-                            "Failed to save image", Toast.LENGTH_SHORT).show();
-                    }
+                    // Hand the result over in memory; ResultsActivity writes it to disk only
+                    // if it has to survive process death
+                    ResultStore.getInstance().put(result);
+                    Intent intent = new Intent(MainActivity.this, ResultsActivity.class);
+                    intent.putExtra("resultId", result.getResultId());
+                    intent.putExtra("narration", result.getNarration());
+                    intent.putExtra("detections", result.getDetectionsSummary());
+                    startActivity(intent);
                 });
             } catch (Exception e) {
                 e.printStackTrace();
@@ -346,6 +382,9 @@ public class MainActivity extends AppCompatActivity {
         if (galleryButton != null) {
             galleryButton.setEnabled(!isProcessing);
         }
+        if (liveButton != null) {
+            liveButton.setEnabled(!isProcessing);
+        }
         statusText.setText(isProcessing ? R.string.processing : R.string.camera_ready);
         statusText.setVisibility(View.VISIBLE);
     }
@@ -384,29 +423,18 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
-    private Uri saveBitmapToFile(Bitmap bitmap) {
-        try {
-            // Create a temporary file in the app's cache directory
-            File cacheDir = getCacheDir();
-            File imageFile = new File(cacheDir, "captured_image_" + System.currentTimeMillis() + ".jpg");
-            
-            FileOutputStream fos = new FileOutputStream(imageFile);
-            // Compress bitmap to reduce size
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 85, fos);
-            fos.flush();
-            fos.close();
-            
-            // Return file URI
-            return Uri.fromFile(imageFile);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        }
+    @Override
+    protected void onPause() {
+        super.onPause();
+        stopStreaming();
     }
     
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (analysisExecutor != null) {
+            analysisExecutor.shutdown();
+        }
         if (textToSpeech != null) {
             textToSpeech.stop();
             textToSpeech.shutdown();
@@ -0,0 +1,256 @@
+package com.cs663.visionassist;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Debug;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares precision variants of a detector (see ModelRegistry.LITE0_VARIANTS) on a fixed
+ * image set: load time, memory, median detection latency, and how well each variant's
+ * detections agree with the reference (the first variant that loads, normally float32).
+ *
+ * Memory is reported as the native heap the loaded, warmed-up interpreter added, and the
+ * size of the model file, which is memory-mapped and not counted in the heap. Agreement
+ * matches each reference box to the unmatched same-label box with the highest IoU (at
+ * least MATCH_IOU) and is reported as F1 with the mean IoU of the matches.
+ *
+ * The variants run one at a time on the calling thread, next to the engine's own
+ * detectors; a development tool, started from MainActivity with the compareModels extra.
+ */
+public class ModelComparison {
+    private static final String TAG = "ModelComparison";
+    private static final String IMAGE_DIR = "comparison"; // assets folder with the image set
+    private static final String REPORT_FILE = "model_comparison.txt";
+    private static final int RUNS_PER_IMAGE = 5;
+    private static final float MATCH_IOU = 0.5f;
+
+    /**
+     * Measurements of one variant.
+     */
+    public static class VariantResult {
+        final ModelSpec spec;
+        String inputType;
+        long loadMs;
+        long nativeHeapBytes;
+        long modelFileBytes = -1;
+        float medianLatencyMs;
+        int detections;
+        List<List<Detection>> perImage = new ArrayList<>();
+        // Agreement with the reference
+        int matched;
+        float iouSum;
+        int referenceDetections;
+
+        VariantResult(ModelSpec spec) {
+            this.spec = spec;
+        }
+
+        public float getF1() {
+            int total = detections + referenceDetections;
+            return total == 0 ? 1f : 2f * matched / total;
+        }
+
+        public float getMeanIou() {
+            return matched == 0 ? 0f : iouSum / matched;
+        }
+    }
+
+    private ModelComparison() {
+    }
+
+    /**
+     * Compares the Lite0 variants installed in the assets on the images in assets/comparison,
+     * writes the report to the app's external files directory and returns it.
+     */
+    public static String runFromAssets(Context context) {
+        List<Bitmap> images = loadImages(context);
+        List<String> assets = listAssets(context, "");
+        List<ModelSpec> variants = new ArrayList<>();
+        for (ModelSpec spec : ModelRegistry.LITE0_VARIANTS) {
+            if (assets.contains(spec.getModelFile())) {
+                variants.add(spec);
+            }
+        }
+        String report = run(context, variants, images);
+        for (Bitmap image : images) {
+            image.recycle();
+        }
+
+        File directory = context.getExternalFilesDir(null);
+        if (directory != null) {
+            try (FileWriter writer = new FileWriter(new File(directory, REPORT_FILE))) {
+                writer.write(report);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        Log.d(TAG, report);
+        return report;
+    }
+
+    /**
+     * Runs every variant on every image and formats the comparison.
+     */
+    public static String run(Context context, List<ModelSpec> variants, List<Bitmap> images) {
+        List<VariantResult> results = new ArrayList<>();
+        for (ModelSpec spec : variants) {
+            VariantResult result = measure(context, spec, images);
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        if (!results.isEmpty()) {
+            VariantResult reference = results.get(0);
+            for (VariantResult result : results) {
+                compare(reference, result);
+            }
+        }
+        return format(results, images.size());
+    }
+
+    private static VariantResult measure(Context context, ModelSpec spec, List<Bitmap> images) {
+        VariantResult result = new VariantResult(spec);
+        result.modelFileBytes = modelFileSize(context, spec.getModelFile());
+
+        long heapBefore = Debug.getNativeHeapAllocatedSize();
+        long start = System.nanoTime();
+        ObjectDetector detector = new ObjectDetector(context, spec);
+        if (!detector.isLoaded()) {
+            Log.w(TAG, spec + " did not load, skipped");
+            detector.close();
+            return null;
+        }
+        detector.warmUp();
+        result.loadMs = (System.nanoTime() - start) / 1_000_000;
+        result.nativeHeapBytes = Debug.getNativeHeapAllocatedSize() - heapBefore;
+        result.inputType = String.valueOf(detector.getInputType());
+
+        try {
+            long[] latencies = new long[images.size() * RUNS_PER_IMAGE];
+            int run = 0;
+            DetectionBatch batch = new DetectionBatch(16);
+            for (Bitmap image : images) {
+                for (int r = 0; r < RUNS_PER_IMAGE; r++) {
+                    long runStart = System.nanoTime();
+                    detector.detect(image, batch);
+                    latencies[run++] = System.nanoTime() - runStart;
+                }
+                List<Detection> detections = batch.toDetections();
+                result.perImage.add(detections);
+                result.detections += detections.size();
+            }
+            Arrays.sort(latencies);
+            result.medianLatencyMs = latencies.length == 0 ? 0f : latencies[latencies.length / 2] / 1_000_000f;
+        } finally {
+            detector.close();
+        }
+        return result;
+    }
+
+    // Greedy matching, reference boxes in their output order (highest score first)
+    private static void compare(VariantResult reference, VariantResult result) {
+        for (int image = 0; image < reference.perImage.size(); image++) {
+            List<Detection> expected = reference.perImage.get(image);
+            List<Detection> actual = result.perImage.get(image);
+            boolean[] used = new boolean[actual.size()];
+            result.referenceDetections += expected.size();
+            for (Detection wanted : expected) {
+                int best = -1;
+                float bestIou = MATCH_IOU;
+                for (int i = 0; i < actual.size(); i++) {
+                    Detection candidate = actual.get(i);
+                    if (used[i] || !candidate.getLabel().equals(wanted.getLabel())) {
+                        continue;
+                    }
+                    float iou = iou(wanted, candidate);
+                    if (iou >= bestIou) {
+                        best = i;
+                        bestIou = iou;
+                    }
+                }
+                if (best >= 0) {
+                    used[best] = true;
+                    result.matched++;
+                    result.iouSum += bestIou;
+                }
+            }
+        }
+    }
+
+    private static float iou(Detection a, Detection b) {
+        float intersection = Math.max(0, Math.min(a.getRight(), b.getRight()) - Math.max(a.getLeft(), b.getLeft()))
+            * (float) Math.max(0, Math.min(a.getBottom(), b.getBottom()) - Math.max(a.getTop(), b.getTop()));
+        float union = (float) a.getWidth() * a.getHeight() + (float) b.getWidth() * b.getHeight() - intersection;
+        return union <= 0f ? 0f : intersection / union;
+    }
+
+    private static String format(List<VariantResult> results, int imageCount) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "Model comparison: %d images, %d runs each, reference %s%n",
+            imageCount, RUNS_PER_IMAGE, results.isEmpty() ? "none" : results.get(0).spec));
+        report.append(String.format(Locale.US, "%-24s %-8s %8s %10s %10s %10s %6s %6s %8s%n",
+            "model", "input", "load ms", "heap MB", "file MB", "median ms", "boxes", "F1", "mean IoU"));
+        for (VariantResult result : results) {
+            report.append(String.format(Locale.US, "%-24s %-8s %8d %10.1f %10.1f %10.1f %6d %6.2f %8.2f%n",
+                result.spec.getName(), result.inputType, result.loadMs,
+                result.nativeHeapBytes / (1024f * 1024f),
+                result.modelFileBytes < 0 ? -1f : result.modelFileBytes / (1024f * 1024f),
+                result.medianLatencyMs, result.detections, result.getF1(), result.getMeanIou()));
+        }
+        if (results.isEmpty()) {
+            report.append("No variants installed: add efficientdet_lite0_fp32/_fp16/_int8.tflite to the assets\n");
+        }
+        return report.toString();
+    }
+
+    // -1 if the file is compressed in the APK and has no descriptor
+    private static long modelFileSize(Context context, String modelFile) {
+        try (AssetFileDescriptor descriptor = context.getAssets().openFd(modelFile)) {
+            return descriptor.getLength();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static List<Bitmap> loadImages(Context context) {
+        List<Bitmap> images = new ArrayList<>();
+        for (String name : listAssets(context, IMAGE_DIR)) {
+            try (InputStream stream = context.getAssets().open(IMAGE_DIR + "/" + name)) {
+                Bitmap image = BitmapFactory.decodeStream(stream);
+                if (image != null) {
+                    images.add(image);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return images;
+    }
+
+    private static List<String> listAssets(Context context, String path) {
+        List<String> names = new ArrayList<>();
+        try {
+            String[] files = context.getAssets().list(path);
+            if (files != null) {
+                names.addAll(Arrays.asList(files));
+                Collections.sort(names); // a fixed order for a fixed image set
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return names;
+    }
+}
@@ -0,0 +1,256 @@
+package com.cs663.visionassist;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The detector models known to the app, which of them are installed, and which one to run.
+ *
+ * EfficientDet-Lite0..Lite4 and an SSD MobileNet model are registered side by side; a model
+ * is available when its file is in the assets (and ObjectDetector could load it). choose()
+ * picks the most accurate available model whose latency fits the budget, and drops to the
+ * cheapest one while the device is constrained (power saver, low battery, thermal
+ * throttling). Latency is measured per model as detection runs; models that have not run
+ * yet are estimated from a measured one scaled by relative cost.
+ */
+public class ModelRegistry {
+    private static final String TAG = "ModelRegistry";
+    private static final String COCO_LABELS = "labels.txt";
+
+    public static final ModelSpec EFFICIENTDET_LITE0 =
+        new ModelSpec("EfficientDet-Lite0", "efficientdet_lite0.tflite", COCO_LABELS, 0, 1.0f);
+    public static final ModelSpec EFFICIENTDET_LITE1 =
+        new ModelSpec("EfficientDet-Lite1", "efficientdet_lite1.tflite", COCO_LABELS, 0, 1.3f);
+    public static final ModelSpec EFFICIENTDET_LITE2 =
+        new ModelSpec("EfficientDet-Lite2", "efficientdet_lite2.tflite", COCO_LABELS, 0, 1.9f);
+    public static final ModelSpec EFFICIENTDET_LITE3 =
+        new ModelSpec("EfficientDet-Lite3", "efficientdet_lite3.tflite", COCO_LABELS, 0, 3.1f);
+    public static final ModelSpec EFFICIENTDET_LITE4 =
+        new ModelSpec("EfficientDet-Lite4", "efficientdet_lite4.tflite", COCO_LABELS, 0, 7.0f);
+    // Its quantized input (scale 1/128, zero point 128) is the plain pixel levels with this
+    public static final ModelSpec SSD_MOBILENET_V1 =
+        new ModelSpec("SSD-MobileNetV1", "ssd_mobilenet_v1.tflite", "ssd_labelmap.txt", 1, 0.7f, 128f, 128f);
+
+    // Precision variants of Lite0 (the default one is uint8-quantized) for ModelComparison;
+    // not part of KNOWN_MODELS, so never picked by choose(). Float16 models keep float32
+    // inputs and outputs and only store the weights in half precision.
+    public static final ModelSpec EFFICIENTDET_LITE0_FP32 =
+        new ModelSpec("EfficientDet-Lite0-fp32", "efficientdet_lite0_fp32.tflite", COCO_LABELS, 0, 2.0f);
+    public static final ModelSpec EFFICIENTDET_LITE0_FP16 =
+        new ModelSpec("EfficientDet-Lite0-fp16", "efficientdet_lite0_fp16.tflite", COCO_LABELS, 0, 2.0f);
+    public static final ModelSpec EFFICIENTDET_LITE0_INT8 =
+        new ModelSpec("EfficientDet-Lite0-int8", "efficientdet_lite0_int8.tflite", COCO_LABELS, 0, 1.0f);
+
+    /** Ordered by cost (and so by accuracy). */
+    public static final List<ModelSpec> KNOWN_MODELS = Collections.unmodifiableList(Arrays.asList(
+        SSD_MOBILENET_V1, EFFICIENTDET_LITE0, EFFICIENTDET_LITE1, EFFICIENTDET_LITE2,
+        EFFICIENTDET_LITE3, EFFICIENTDET_LITE4));
+    public static final ModelSpec DEFAULT_MODEL = EFFICIENTDET_LITE0;
+
+    /** Lite0 at every precision, the float32 reference first. */
+    public static final List<ModelSpec> LITE0_VARIANTS = Collections.unmodifiableList(Arrays.asList(
+        EFFICIENTDET_LITE0_FP32, EFFICIENTDET_LITE0_FP16, EFFICIENTDET_LITE0, EFFICIENTDET_LITE0_INT8));
+
+    private static final int LOW_BATTERY_PERCENT = 20;
+    private static final float UPGRADE_HEADROOM = 0.8f; // a costlier model must fit well within budget
+    private static final float LATENCY_SMOOTHING = 0.2f;
+    private static final int MIN_LATENCY_SAMPLES = 3;
+
+    /**
+     * Snapshot of what constrains model choice on the device.
+     */
+    public static class DeviceConditions {
+        final int batteryPercent; // -1 if unknown
+        final boolean charging;
+        final boolean powerSave;
+        final int thermalStatus;  // PowerManager.THERMAL_STATUS_*, 0 if unknown
+
+        public DeviceConditions(int batteryPercent, boolean charging, boolean powerSave, int thermalStatus) {
+            this.batteryPercent = batteryPercent;
+            this.charging = charging;
+            this.powerSave = powerSave;
+            this.thermalStatus = thermalStatus;
+        }
+
+        boolean isConstrained() {
+            return powerSave
+                || (!charging && batteryPercent >= 0 && batteryPercent <= LOW_BATTERY_PERCENT)
+                || thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE;
+        }
+
+        public static DeviceConditions read(Context context) {
+            int batteryPercent = -1;
+            boolean charging = false;
+            // Sticky broadcast: returns the last battery state without registering a receiver
+            Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            if (battery != null) {
+                int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+                int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+                if (level >= 0 && scale > 0) {
+                    batteryPercent = level * 100 / scale;
+                }
+                int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+                charging = status == BatteryManager.BATTERY_STATUS_CHARGING
+                    || status == BatteryManager.BATTERY_STATUS_FULL;
+            }
+            boolean powerSave = false;
+            int thermalStatus = 0;
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null) {
+                powerSave = powerManager.isPowerSaveMode();
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    thermalStatus = powerManager.getCurrentThermalStatus();
+                }
+            }
+            return new DeviceConditions(batteryPercent, charging, powerSave, thermalStatus);
+        }
+
+        @Override
+        public String toString() {
+            return "battery " + batteryPercent + "%" + (charging ? " charging" : "")
+                + (powerSave ? ", power save" : "") + ", thermal " + thermalStatus;
+        }
+    }
+
+    private final List<ModelSpec> available = new ArrayList<>();
+    private final Map<String, Float> latencyMs = new HashMap<>();
+    private final Map<String, Integer> latencySamples = new HashMap<>();
+
+    public ModelRegistry(List<ModelSpec> available) {
+        this.available.addAll(available);
+    }
+
+    /**
+     * Registry of the known models whose files are present in the assets.
+     */
+    public static ModelRegistry fromAssets(Context context) {
+        List<String> assets = new ArrayList<>();
+        try {
+            String[] files = context.getAssets().list("");
+            if (files != null) {
+                assets.addAll(Arrays.asList(files));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        List<ModelSpec> installed = new ArrayList<>();
+        for (ModelSpec spec : KNOWN_MODELS) {
+            if (assets.contains(spec.getModelFile())) {
+                installed.add(spec);
+            }
+        }
+        if (installed.isEmpty()) {
+            installed.add(DEFAULT_MODEL); // ObjectDetector reports the missing file
+        }
+        Log.d(TAG, "Available models: " + installed);
+        return new ModelRegistry(installed);
+    }
+
+    public synchronized List<ModelSpec> getAvailable() {
+        return new ArrayList<>(available);
+    }
+
+    /**
+     * Removes a model that turned out not to load (unsupported input or outputs).
+     */
+    public synchronized void markUnavailable(ModelSpec spec) {
+        if (available.size() > 1) {
+            available.remove(spec);
+        }
+    }
+
+    public synchronized void recordLatency(ModelSpec spec, long elapsedMs) {
+        Float current = latencyMs.get(spec.getName());
+        latencyMs.put(spec.getName(), current == null ? elapsedMs
+            : current + LATENCY_SMOOTHING * (elapsedMs - current));
+        Integer samples = latencySamples.get(spec.getName());
+        latencySamples.put(spec.getName(), samples == null ? 1 : samples + 1);
+    }
+
+    /**
+     * Measured latency of the model, else an estimate from a measured model scaled by
+     * relative cost, else -1.
+     */
+    public synchronized float estimateLatencyMs(ModelSpec spec) {
+        Integer samples = latencySamples.get(spec.getName());
+        if (samples != null && samples >= MIN_LATENCY_SAMPLES) {
+            return latencyMs.get(spec.getName());
+        }
+        for (ModelSpec measured : available) {
+            Integer measuredSamples = latencySamples.get(measured.getName());
+            if (measuredSamples != null && measuredSamples >= MIN_LATENCY_SAMPLES) {
+                return latencyMs.get(measured.getName()) * spec.getRelativeCost() / measured.getRelativeCost();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The model to run next: the cheapest one while the device is constrained, otherwise
+     * the most accurate one whose (estimated) latency fits the budget. Stays on the current
+     * model when nothing is known yet.
+     */
+    public synchronized ModelSpec choose(ModelSpec current, DeviceConditions conditions, long budgetMs) {
+        if (available.isEmpty()) {
+            return current;
+        }
+        if (conditions.isConstrained()) {
+            return available.get(0);
+        }
+        ModelSpec best = null;
+        for (ModelSpec spec : available) {
+            float estimate = estimateLatencyMs(spec);
+            if (estimate < 0) {
+                continue;
+            }
+            float limit = spec.getRelativeCost() > current.getRelativeCost()
+                ? budgetMs * UPGRADE_HEADROOM : budgetMs;
+            if (estimate <= limit) {
+                best = spec;
+            }
+        }
+        if (best == null) {
+            // Nothing measured fits: go to the cheapest once anything has been measured
+            return estimateLatencyMs(current) < 0 ? current : available.get(0);
+        }
+        return best;
+    }
+
+    /**
+     * The model to keep warm next to the active one: the next cheaper model (the likely
+     * switch under load or heat), or the next costlier one if the active model is cheapest.
+     */
+    public synchronized ModelSpec standbyFor(ModelSpec active) {
+        int index = available.indexOf(active);
+        if (index > 0) {
+            return available.get(index - 1);
+        }
+        return index + 1 < available.size() ? available.get(index + 1) : null;
+    }
+
+    public synchronized String getMetricsSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (ModelSpec spec : available) {
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+            Float latency = latencyMs.get(spec.getName());
+            summary.append(spec.getName()).append(": ")
+                .append(latency != null ? Math.round(latency) + " ms" : "not run");
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,162 @@
+package com.cs663.visionassist;
+
+/**
+ * A detector model the app can run: its asset files and how expensive it is.
+ *
+ * The input shape, input type and output layout are not declared here; ObjectDetector
+ * reads them from the model's tensors when it loads the model (see OutputLayout).
+ * relativeCost is the model's CPU latency relative to EfficientDet-Lite0 (published
+ * benchmarks); the registry uses it to estimate the latency of models it has not run yet.
+ * Specs are ordered by cost, and a costlier model is assumed to be more accurate.
+ *
+ * inputMean and inputStd are the normalization the model was trained with, pixel levels
+ * mapping to (level - mean) / std; ObjectDetector applies it to float inputs and folds it
+ * into the quantization of integer ones. The default is EfficientDet-Lite's, for which the
+ * quantized uint8 input is the plain pixel levels.
+ */
+public final class ModelSpec {
+    public static final float DEFAULT_INPUT_MEAN = 127f;
+    public static final float DEFAULT_INPUT_STD = 128f;
+
+    private final String name;
+    private final String modelFile;
+    private final String labelsFile;
+    private final int labelOffset;
+    private final float relativeCost;
+    private final float inputMean;
+    private final float inputStd;
+
+    /**
+     * @param labelOffset index of class 0 in the labels file (1 for SSD label maps, which
+     *                    start with a "???" background entry)
+     */
+    public ModelSpec(String name, String modelFile, String labelsFile, int labelOffset, float relativeCost) {
+        this(name, modelFile, labelsFile, labelOffset, relativeCost, DEFAULT_INPUT_MEAN, DEFAULT_INPUT_STD);
+    }
+
+    public ModelSpec(String name, String modelFile, String labelsFile, int labelOffset, float relativeCost,
+                     float inputMean, float inputStd) {
+        this.name = name;
+        this.modelFile = modelFile;
+        this.labelsFile = labelsFile;
+        this.labelOffset = labelOffset;
+        this.relativeCost = relativeCost;
+        this.inputMean = inputMean;
+        this.inputStd = inputStd;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getModelFile() {
+        return modelFile;
+    }
+
+    public String getLabelsFile() {
+        return labelsFile;
+    }
+
+    public int getLabelOffset() {
+        return labelOffset;
+    }
+
+    public float getRelativeCost() {
+        return relativeCost;
+    }
+
+    public float getInputMean() {
+        return inputMean;
+    }
+
+    public float getInputStd() {
+        return inputStd;
+    }
+
+    /**
+     * Which output tensor holds what, for the TFLite_Detection_PostProcess style outputs
+     * shared by EfficientDet-Lite and SSD models. Exporters do not agree on the tensor order,
+     * so it is resolved per model: boxes and count by shape, classes and scores by name, and
+     * unnamed [1, N] outputs in the order of the post-processing op (classes, then scores).
+     *
+     * Models exported without the post-processing op have decoded boxes [1, N, 4] and raw
+     * per-class scores [1, N, C] instead (isRaw(); no classes or count output), and are
+     * decoded by DetectionDecoder.
+     */
+    public static final class OutputLayout {
+        public final int boxes;
+        public final int classes; // -1 for raw outputs
+        public final int scores;
+        public final int count; // -1 if the model has no count output
+        public final int maxDetections; // boxes per frame (anchors, for raw outputs)
+        public final int numClasses;    // score columns of raw outputs, 0 otherwise
+
+        OutputLayout(int boxes, int classes, int scores, int count, int maxDetections, int numClasses) {
+            this.boxes = boxes;
+            this.classes = classes;
+            this.scores = scores;
+            this.count = count;
+            this.maxDetections = maxDetections;
+            this.numClasses = numClasses;
+        }
+
+        public boolean isRaw() {
+            return numClasses > 0;
+        }
+
+        /**
+         * Resolves the layout from each output's shape and name, or returns null if the
+         * outputs do not look like a detection post-processing op.
+         */
+        public static OutputLayout resolve(int[][] shapes, String[] names) {
+            int boxes = -1;
+            int count = -1;
+            int first = -1;
+            int second = -1;
+            int classes = -1;
+            int scores = -1;
+            int rawScores = -1;
+            for (int i = 0; i < shapes.length; i++) {
+                int[] shape = shapes[i];
+                String name = names[i] != null ? names[i].toLowerCase(java.util.Locale.ROOT) : "";
+                if (shape.length == 3 && shape[2] == 4) {
+                    boxes = i;
+                } else if (shape.length == 3) {
+                    rawScores = i;
+                } else if (shape.length <= 1) {
+                    count = i;
+                } else if (shape.length == 2) {
+                    if (name.contains("class")) {
+                        classes = i;
+                    } else if (name.contains("score")) {
+                        scores = i;
+                    } else if (first < 0) {
+                        first = i;
+                    } else {
+                        second = i;
+                    }
+                }
+            }
+            if (boxes >= 0 && rawScores >= 0 && shapes[rawScores][1] == shapes[boxes][1]) {
+                return new OutputLayout(boxes, -1, rawScores, -1, shapes[boxes][1], shapes[rawScores][2]);
+            }
+            // Unnamed [1, N] outputs: classes come before scores in the post-processing op
+            if (classes < 0) {
+                classes = first;
+                first = second;
+            }
+            if (scores < 0) {
+                scores = first;
+            }
+            if (boxes < 0 || classes < 0 || scores < 0) {
+                return null;
+            }
+            return new OutputLayout(boxes, classes, scores, count, shapes[boxes][1], 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
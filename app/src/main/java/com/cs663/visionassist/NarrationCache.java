@@ -0,0 +1,131 @@
+package com.cs663.visionassist;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU + TTL cache of narrations keyed by SceneSignature.
+ *
+ * An entry is reused only while the scene has not changed. The policy:
+ * - a different set of (label, side, distance) tuples or different OCR text is a different
+ *   key, so it simply misses;
+ * - same key, but the image hash moved more than maxImageDistance bits: the view changed in a
+ *   way the detector did not capture, so the entry is invalidated;
+ * - every entry expires after its TTL, so a user standing still still gets a fresh narration
+ *   now and then. Local fallback narrations are stored with a shorter TTL than Gemini ones so
+ *   Gemini is retried soon after a failure.
+ */
+public class NarrationCache {
+    public static final String SOURCE_GEMINI = "gemini";
+    public static final String SOURCE_LOCAL = "local";
+
+    /**
+     * Time source in ms; replaceable so expiry can be exercised without waiting.
+     */
+    public interface Clock {
+        long nowMs();
+    }
+
+    public static class CachedNarration {
+        private final String narration;
+        private final String source;
+        private final long imageHash;
+        private final long expiresAtMs;
+
+        CachedNarration(String narration, String source, long imageHash, long expiresAtMs) {
+            this.narration = narration;
+            this.source = source;
+            this.imageHash = imageHash;
+            this.expiresAtMs = expiresAtMs;
+        }
+
+        public String getNarration() {
+            return narration;
+        }
+
+        public String getSource() {
+            return source;
+        }
+    }
+
+    private final int maxEntries;
+    private final int maxImageDistance;
+    private final Clock clock;
+    private final LinkedHashMap<String, CachedNarration> entries;
+    private long hits;
+    private long misses;
+    private long expirations;
+    private long invalidations;
+    private long evictions;
+
+    public NarrationCache(int maxEntries, int maxImageDistance) {
+        this(maxEntries, maxImageDistance, () -> System.nanoTime() / 1_000_000);
+    }
+
+    public NarrationCache(int maxEntries, int maxImageDistance, Clock clock) {
+        this.maxEntries = maxEntries;
+        this.maxImageDistance = maxImageDistance;
+        this.clock = clock;
+        // Access order: get() moves an entry to the tail, the head is least recently used
+        this.entries = new LinkedHashMap<String, CachedNarration>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedNarration> eldest) {
+                if (size() > NarrationCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached narration for this scene, or null on a miss. Expired and invalidated
+     * entries are removed and count as misses.
+     */
+    public synchronized CachedNarration get(SceneSignature signature) {
+        CachedNarration entry = entries.get(signature.getKey());
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (clock.nowMs() >= entry.expiresAtMs) {
+            entries.remove(signature.getKey());
+            expirations++;
+            misses++;
+            return null;
+        }
+        if (SceneSignature.imageDistance(signature.getImageHash(), entry.imageHash) > maxImageDistance) {
+            entries.remove(signature.getKey());
+            invalidations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry;
+    }
+
+    public synchronized void put(SceneSignature signature, String narration, String source, long ttlMs) {
+        entries.put(signature.getKey(), new CachedNarration(narration, source, signature.getImageHash(),
+            clock.nowMs() + ttlMs));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized float getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (float) hits / lookups;
+    }
+
+    public synchronized String getMetricsSummary() {
+        return String.format(java.util.Locale.US,
+            "entries: %d, hits: %d, misses: %d (hit rate %.0f%%), expired: %d, invalidated: %d, evicted: %d",
+            entries.size(), hits, misses, getHitRate() * 100, expirations, invalidations, evictions);
+    }
+}
@@ -5,7 +5,12 @@ import java.util.List;
 public class NarrationGenerator {
     private static final int MAX_NARRATION_WORDS = 12;
     
-    public static String generate(List<Detection> detections, List<String> textDetections) {
+    /**
+     * Works on side/distance codes and precomputed hazard flags, without per-detection
+     * objects or string comparisons.
+     */
+    public static String generate(DetectionBatch detections, OCRResult ocrResult) {
+        List<String> textDetections = ocrResult.getTexts();
         if (detections.isEmpty() && textDetections.isEmpty()) {
             return "No objects or text detected in this scene.";
         }
@@ -13,18 +18,14 @@ public class NarrationGenerator {
         StringBuilder narration = new StringBuilder();
         
         // Prioritize near objects and hazards
-        List<Detection> sortedDetections = prioritizeDetections(detections);
+        int[] order = prioritize(detections);
         
         // Add critical near objects first
-        boolean hasNearHazard = false;
-        for (Detection det : sortedDetections) {
-            if (det.getDistance().equals("near") && isHazard(det.getLabel())) {
-                if (!hasNearHazard) {
-                    narration.append("Caution: ").append(det.getLabel())
-                            .append(" ahead ").append(det.getSide()).append(".");
-                    hasNearHazard = true;
-                    break;
-                }
+        for (int i : order) {
+            if (detections.getDistance(i) == DetectionBatch.DISTANCE_NEAR && detections.isHazard(i)) {
+                narration.append("Caution: ").append(detections.getLabel(i))
+                        .append(" ahead ").append(DetectionBatch.sideName(detections.getSide(i))).append(".");
+                break;
             }
         }
         
@@ -34,19 +35,19 @@ public class NarrationGenerator {
         }
         
         // Add other significant detections
-        if (narration.length() == 0 && !sortedDetections.isEmpty()) {
-            Detection first = sortedDetections.get(0);
-            narration.append(first.getLabel())
-                    .append(" detected ").append(first.getSide())
-                    .append(", ").append(first.getDistance()).append(".");
+        if (narration.length() == 0 && order.length > 0) {
+            int first = order[0];
+            narration.append(detections.getLabel(first))
+                    .append(" detected ").append(DetectionBatch.sideName(detections.getSide(first)))
+                    .append(", ").append(DetectionBatch.distanceName(detections.getDistance(first))).append(".");
         }
         
         // Add additional context if space allows
-        if (narration.length() < 50 && sortedDetections.size() > 1) {
-            Detection second = sortedDetections.get(1);
-            if (second.getDistance().equals("near")) {
-                narration.append(" Also ").append(second.getLabel())
-                        .append(" ").append(second.getSide()).append(".");
+        if (narration.length() < 50 && order.length > 1) {
+            int second = order[1];
+            if (detections.getDistance(second) == DetectionBatch.DISTANCE_NEAR) {
+                narration.append(" Also ").append(detections.getLabel(second))
+                        .append(" ").append(DetectionBatch.sideName(detections.getSide(second))).append(".");
             }
         }
         
@@ -69,12 +70,15 @@ public class NarrationGenerator {
         return result;
     }
     
-    private static List<Detection> prioritizeDetections(List<Detection> detections) {
+    /**
+     * Sorts in place into narration priority order, the order generate() narrates a batch
+     * built from the list in. Lets summaries and results list objects in that order too.
+     */
+    static List<Detection> prioritizeDetections(List<Detection> detections) {
         // Sort by: 1) distance (near first), 2) confidence (high first)
         java.util.Collections.sort(detections, (d1, d2) -> {
-            // Near objects first
-            int distanceCompare = getDistancePriority(d1.getDistance()) 
-                                - getDistancePriority(d2.getDistance());
+            // Near objects first (distance codes are ordered near < mid < far)
+            int distanceCompare = d1.getDistanceCode() - d2.getDistanceCode();
             if (distanceCompare != 0) {
                 return distanceCompare;
             }
@@ -84,16 +88,28 @@ public class NarrationGenerator {
         return detections;
     }
     
-    private static int getDistancePriority(String distance) {
-        switch (distance) {
-            case "near": return 0;
-            case "mid": return 1;
-            case "far": return 2;
-            default: return 1;
+    /**
+     * Batch indices in priority order: near first, then by confidence, ties in batch order.
+     * Sorted as packed long keys - distance code, inverted confidence bits, index - so
+     * large batches cost O(n log n) without comparators or boxing.
+     */
+    private static int[] prioritize(DetectionBatch detections) {
+        int count = detections.size();
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            // Non-negative floats order like their bits; inverted so higher confidence sorts first
+            long confidenceKey = Integer.MAX_VALUE - Float.floatToIntBits(Math.max(0f, detections.getConfidence(i)));
+            keys[i] = ((long) detections.getDistance(i) << 61) | (confidenceKey << 30) | i;
+        }
+        java.util.Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int k = 0; k < count; k++) {
+            order[k] = (int) (keys[k] & ((1 << 30) - 1));
         }
+        return order;
     }
     
-    private static boolean isHazard(String label) {
+    static boolean isHazard(String label) {
         String lowerLabel = label.toLowerCase();
         return lowerLabel.contains("car") ||
                lowerLabel.contains("truck") ||
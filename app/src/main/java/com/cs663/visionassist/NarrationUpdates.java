@@ -0,0 +1,184 @@
+package com.cs663.visionassist;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands follow-up narrations (the Gemini upgrade of a local narration) to whoever shows the
+ * result.
+ *
+ * ImageProcessor registers every result and may publish a better narration for it later,
+ * from a background thread - either streamed phrase by phrase and then as a whole, or only
+ * as a whole. The screen showing the result subscribes by result id. Phrases and updates
+ * that arrive before the subscriber are replayed on subscribe, so nothing is lost while
+ * ResultsActivity starts up. Only the most recent MAX_PENDING results are remembered.
+ */
+public final class NarrationUpdates {
+    public static final long NO_RESULT_ID = -1;
+    private static final int MAX_PENDING = 8;
+    private static final float MAX_SIMILARITY = 0.5f; // word Jaccard at or above this is "the same"
+
+    /**
+     * Both methods are called on the publishing (background) thread.
+     */
+    public interface Listener {
+        /** Next piece of a streamed update, to be spoken right away. */
+        void onNarrationPhrase(long resultId, String phrase);
+
+        /** The complete update; already spoken if it was streamed as phrases before. */
+        void onNarrationUpdated(long resultId, String narration);
+    }
+
+    private static class Pending {
+        final List<String> phrases = new ArrayList<>();
+        String update;
+        Listener listener;
+    }
+
+    private static final AtomicLong nextResultId = new AtomicLong(1);
+    private static final Map<Long, Pending> pending = new LinkedHashMap<Long, Pending>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Pending> eldest) {
+            return size() > MAX_PENDING;
+        }
+    };
+
+    private NarrationUpdates() {
+    }
+
+    /**
+     * Reserves an id for a new result that may receive an update.
+     */
+    public static long register() {
+        long resultId = nextResultId.getAndIncrement();
+        synchronized (pending) {
+            pending.put(resultId, new Pending());
+        }
+        return resultId;
+    }
+
+    /**
+     * Delivers one streamed phrase of an update, now or when someone subscribes.
+     */
+    public static void publishPhrase(long resultId, String phrase) {
+        Listener listener;
+        synchronized (pending) {
+            Pending entry = pending.get(resultId);
+            if (entry == null) {
+                return;
+            }
+            entry.phrases.add(phrase);
+            listener = entry.listener;
+        }
+        if (listener != null) {
+            listener.onNarrationPhrase(resultId, phrase);
+        }
+    }
+
+    /**
+     * Delivers an updated narration for the result, now or when someone subscribes.
+     */
+    public static void publish(long resultId, String narration) {
+        Listener listener;
+        synchronized (pending) {
+            Pending entry = pending.get(resultId);
+            if (entry == null) {
+                return; // result already gone
+            }
+            entry.update = narration;
+            listener = entry.listener;
+        }
+        if (listener != null) {
+            listener.onNarrationUpdated(resultId, narration);
+        }
+    }
+
+    public static void subscribe(long resultId, Listener listener) {
+        List<String> phrases;
+        String update;
+        synchronized (pending) {
+            Pending entry = pending.get(resultId);
+            if (entry == null) {
+                return;
+            }
+            entry.listener = listener;
+            phrases = new ArrayList<>(entry.phrases);
+            update = entry.update;
+        }
+        for (String phrase : phrases) {
+            listener.onNarrationPhrase(resultId, phrase);
+        }
+        if (update != null) {
+            listener.onNarrationUpdated(resultId, update);
+        }
+    }
+
+    /**
+     * Stops delivering updates for the result and forgets it.
+     */
+    public static void unsubscribe(long resultId) {
+        synchronized (pending) {
+            pending.remove(resultId);
+        }
+    }
+
+    /**
+     * Whether an upgraded narration says something the original did not: the Jaccard
+     * similarity of their normalized word sets is below MAX_SIMILARITY. Rephrasings of the
+     * same content are not worth interrupting the user for.
+     */
+    public static boolean isMateriallyDifferent(String original, String update) {
+        Set<String> originalWords = words(original);
+        Set<String> updateWords = words(update);
+        if (updateWords.isEmpty()) {
+            return false;
+        }
+        int union = originalWords.size();
+        int intersection = 0;
+        for (String word : updateWords) {
+            if (originalWords.contains(word)) {
+                intersection++;
+            } else {
+                union++;
+            }
+        }
+        return (float) intersection / union < MAX_SIMILARITY;
+    }
+
+    /**
+     * Whether most words of a phrase already occur in the original narration - used to decide
+     * from the first streamed phrase whether an update is worth speaking as it streams.
+     */
+    public static boolean mostlyRepeats(String original, String phrase) {
+        Set<String> originalWords = words(original);
+        Set<String> phraseWords = words(phrase);
+        if (phraseWords.isEmpty()) {
+            return true;
+        }
+        int repeated = 0;
+        for (String word : phraseWords) {
+            if (originalWords.contains(word)) {
+                repeated++;
+            }
+        }
+        return (float) repeated / phraseWords.size() >= MAX_SIMILARITY;
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> words = new HashSet<>();
+        if (text == null) {
+            return words;
+        }
+        for (String word : SceneSignature.normalizeText(text).split(" ")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,251 @@
+package com.cs663.visionassist;
+
+import java.util.Arrays;
+
+/**
+ * Greedy non-maximum suppression over primitive box arrays.
+ *
+ * Boxes are visited from the highest score down; a box is dropped when it overlaps an
+ * already kept box (of the same class, when class-aware) by more than the IoU threshold, or
+ * when most of it lies inside a kept box. The containment test catches what IoU misses when
+ * results from several passes are merged: a tile sees only part of an object that another
+ * pass saw whole, and the partial box has a low IoU with the full one.
+ *
+ * With a soft sigma set, overlapping boxes are not dropped but have their score decayed by
+ * exp(-iou^2 / sigma) for every kept box they overlap (Gaussian Soft-NMS), and are dropped
+ * once below the minimum score; crowded scenes keep more true neighbours that way. Soft
+ * mode is O(n^2) in the candidates, so only the best maxCandidates take part.
+ *
+ * Scores are sorted as packed long keys (score bits, index), so no boxed values or
+ * comparators are involved, and the work arrays are reused. Not thread-safe.
+ */
+public class NonMaxSuppression {
+    public static final float DEFAULT_IOU_THRESHOLD = 0.5f;
+    public static final float DEFAULT_CONTAINMENT_THRESHOLD = 0.8f; // of the smaller box
+
+    private float iouThreshold = DEFAULT_IOU_THRESHOLD;
+    private float containmentThreshold = DEFAULT_CONTAINMENT_THRESHOLD;
+    private boolean classAware = true;
+    private int maxDetections = Integer.MAX_VALUE;
+    private int maxPerClass = Integer.MAX_VALUE;
+    private float softSigma; // 0 = hard suppression
+    private float minScore;
+    private int maxCandidates = 1000;
+
+    private long[] order = new long[64];
+    private int[] active = new int[64];
+    private int[] classCounts = new int[16];
+
+    // Copies of a DetectionBatch's columns for run(DetectionBatch, DetectionBatch)
+    private int[] kept = new int[0];
+    private float[] left = new float[0];
+    private float[] top = new float[0];
+    private float[] right = new float[0];
+    private float[] bottom = new float[0];
+    private float[] scores = new float[0];
+    private int[] classes = new int[0];
+
+    public NonMaxSuppression setIouThreshold(float iouThreshold) {
+        this.iouThreshold = iouThreshold;
+        return this;
+    }
+
+    /**
+     * Fraction of the smaller box inside the other at which it is suppressed; 1 or more
+     * disables the test.
+     */
+    public NonMaxSuppression setContainmentThreshold(float containmentThreshold) {
+        this.containmentThreshold = containmentThreshold;
+        return this;
+    }
+
+    /**
+     * Whether only boxes of the same class suppress each other.
+     */
+    public NonMaxSuppression setClassAware(boolean classAware) {
+        this.classAware = classAware;
+        return this;
+    }
+
+    /**
+     * Stops after this many boxes are kept (top-K).
+     */
+    public NonMaxSuppression setMaxDetections(int maxDetections) {
+        this.maxDetections = maxDetections;
+        return this;
+    }
+
+    /**
+     * Stops keeping boxes of a class once this many are kept.
+     */
+    public NonMaxSuppression setMaxPerClass(int maxPerClass) {
+        this.maxPerClass = maxPerClass;
+        return this;
+    }
+
+    /**
+     * Switches to Gaussian Soft-NMS with the given sigma (0 for hard suppression). Decayed
+     * scores are written back into the scores array.
+     */
+    public NonMaxSuppression setSoftSigma(float softSigma) {
+        this.softSigma = softSigma;
+        return this;
+    }
+
+    /**
+     * Score below which Soft-NMS drops a decayed box.
+     */
+    public NonMaxSuppression setMinScore(float minScore) {
+        this.minScore = minScore;
+        return this;
+    }
+
+    /**
+     * How many of the best-scoring boxes take part in Soft-NMS.
+     */
+    public NonMaxSuppression setMaxCandidates(int maxCandidates) {
+        this.maxCandidates = maxCandidates;
+        return this;
+    }
+
+    /**
+     * Suppresses the first count boxes and writes the indices of the kept ones, highest
+     * score first, into keep, which must have room for count. Scores must be non-negative.
+     *
+     * @return the number of kept boxes
+     */
+    public int run(float[] left, float[] top, float[] right, float[] bottom, float[] scores,
+                   int[] classes, int count, int[] keep) {
+        if (order.length < count) {
+            order = new long[Math.max(count, order.length * 2)];
+        }
+        // Non-negative floats sort like their IEEE bits; ties keep the lower index first
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) Float.floatToIntBits(scores[i]) << 32) | (Integer.MAX_VALUE - i);
+        }
+        Arrays.sort(order, 0, count);
+        Arrays.fill(classCounts, 0);
+        if (softSigma > 0f) {
+            return runSoft(left, top, right, bottom, scores, classes, count, keep);
+        }
+
+        int keptCount = 0;
+        for (int o = count - 1; o >= 0 && keptCount < maxDetections; o--) {
+            int i = Integer.MAX_VALUE - (int) order[o];
+            if (classFull(classes[i])) {
+                continue;
+            }
+            float area = (right[i] - left[i]) * (bottom[i] - top[i]);
+            boolean suppressed = false;
+            for (int k = 0; k < keptCount && !suppressed; k++) {
+                int j = keep[k];
+                if (classAware && classes[i] != classes[j]) {
+                    continue;
+                }
+                float intersection = Math.max(0f, Math.min(right[i], right[j]) - Math.max(left[i], left[j]))
+                    * Math.max(0f, Math.min(bottom[i], bottom[j]) - Math.max(top[i], top[j]));
+                if (intersection <= 0f) {
+                    continue;
+                }
+                float keptArea = (right[j] - left[j]) * (bottom[j] - top[j]);
+                suppressed = intersection > iouThreshold * (area + keptArea - intersection)
+                    || intersection > containmentThreshold * Math.min(area, keptArea);
+            }
+            if (!suppressed) {
+                keep[keptCount++] = i;
+                classCounts[classes[i]]++;
+            }
+        }
+        return keptCount;
+    }
+
+    // order holds the boxes sorted by ascending score
+    private int runSoft(float[] left, float[] top, float[] right, float[] bottom, float[] scores,
+                        int[] classes, int count, int[] keep) {
+        int activeCount = Math.min(count, maxCandidates);
+        if (active.length < activeCount) {
+            active = new int[Math.max(activeCount, active.length * 2)];
+        }
+        for (int a = 0; a < activeCount; a++) {
+            active[a] = Integer.MAX_VALUE - (int) order[count - 1 - a];
+        }
+
+        int keptCount = 0;
+        while (activeCount > 0 && keptCount < maxDetections) {
+            // Decayed scores are no longer sorted: take the best remaining box
+            int best = 0;
+            for (int a = 1; a < activeCount; a++) {
+                if (scores[active[a]] > scores[active[best]]) {
+                    best = a;
+                }
+            }
+            int i = active[best];
+            active[best] = active[--activeCount];
+            if (classFull(classes[i])) {
+                continue;
+            }
+            keep[keptCount++] = i;
+            classCounts[classes[i]]++;
+
+            float area = (right[i] - left[i]) * (bottom[i] - top[i]);
+            for (int a = activeCount - 1; a >= 0; a--) {
+                int j = active[a];
+                if (classAware && classes[i] != classes[j]) {
+                    continue;
+                }
+                float intersection = Math.max(0f, Math.min(right[i], right[j]) - Math.max(left[i], left[j]))
+                    * Math.max(0f, Math.min(bottom[i], bottom[j]) - Math.max(top[i], top[j]));
+                if (intersection <= 0f) {
+                    continue;
+                }
+                float otherArea = (right[j] - left[j]) * (bottom[j] - top[j]);
+                float iou = intersection / (area + otherArea - intersection);
+                scores[j] *= (float) Math.exp(-iou * iou / softSigma);
+                if (scores[j] < minScore) {
+                    active[a] = active[--activeCount];
+                }
+            }
+        }
+        return keptCount;
+    }
+
+    private boolean classFull(int classId) {
+        if (classId >= classCounts.length) {
+            classCounts = Arrays.copyOf(classCounts, Math.max(classId + 1, classCounts.length * 2));
+        }
+        return classCounts[classId] >= maxPerClass;
+    }
+
+    /**
+     * Writes the boxes of in that survive suppression into out, highest score first.
+     * out is reset with in's labels; side, distance and track id are not carried over.
+     */
+    public DetectionBatch run(DetectionBatch in, DetectionBatch out) {
+        int count = in.size();
+        if (kept.length < count) {
+            int capacity = Math.max(count, kept.length * 2);
+            kept = new int[capacity];
+            left = new float[capacity];
+            top = new float[capacity];
+            right = new float[capacity];
+            bottom = new float[capacity];
+            scores = new float[capacity];
+            classes = new int[capacity];
+        }
+        for (int i = 0; i < count; i++) {
+            left[i] = in.getLeft(i);
+            top[i] = in.getTop(i);
+            right[i] = in.getRight(i);
+            bottom[i] = in.getBottom(i);
+            scores[i] = in.getConfidence(i);
+            classes[i] = in.getClassId(i);
+        }
+        int keptCount = run(left, top, right, bottom, scores, classes, count, kept);
+        out.reset(in.getLabels());
+        for (int k = 0; k < keptCount; k++) {
+            int i = kept[k];
+            out.add(classes[i], scores[i], left[i], top[i], right[i], bottom[i]);
+        }
+        return out;
+    }
+}
@@ -13,8 +13,11 @@ import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class OCRProcessor {
+    private static final long DEFAULT_TIMEOUT_MS = 5000;
+    
     private TextRecognizer textRecognizer;
     private Context context;
     
@@ -47,16 +50,31 @@ public class OCRProcessor {
     }
     
     public List<String> extractText(Bitmap bitmap) {
-        List<TextDetection> detections = extractTextWithBoxes(bitmap);
-        List<String> textResults = new ArrayList<>();
-        for (TextDetection detection : detections) {
-            textResults.add(detection.getText());
-        }
-        return textResults;
+        return recognize(bitmap).getTexts();
     }
     
     public List<TextDetection> extractTextWithBoxes(Bitmap bitmap) {
         List<TextDetection> textResults = new ArrayList<>();
+        for (OCRResult.TextRegion block : recognize(bitmap).getBlocks()) {
+            textResults.add(new TextDetection(block.getText(), 
+                new Rect(block.getLeft(), block.getTop(), block.getRight(), block.getBottom())));
+        }
+        return textResults;
+    }
+    
+    public OCRResult recognize(Bitmap bitmap) {
+        return recognize(bitmap, DEFAULT_TIMEOUT_MS);
+    }
+    
+    /**
+     * Runs ML Kit text recognition once and returns blocks, lines and elements
+     * of the navigation-relevant text together with recognized languages.
+     * Returns OCRResult.EMPTY if recognition does not finish within timeoutMs.
+     */
+    public OCRResult recognize(Bitmap bitmap, long timeoutMs) {
+        final List<OCRResult.TextRegion> blocks = new ArrayList<>();
+        final List<OCRResult.TextRegion> lines = new ArrayList<>();
+        final List<OCRResult.TextRegion> elements = new ArrayList<>();
         final CountDownLatch latch = new CountDownLatch(1);
         
         InputImage image = InputImage.fromBitmap(bitmap, 0);
@@ -65,9 +83,22 @@ public class OCRProcessor {
             .addOnSuccessListener(visionText -> {
                 for (Text.TextBlock block : visionText.getTextBlocks()) {
                     String text = block.getText().trim();
-                    if (!text.isEmpty() && isNavigationText(text)) {
-                        Rect boundingBox = block.getBoundingBox();
-                        textResults.add(new TextDetection(text, boundingBox));
+                    Rect boundingBox = block.getBoundingBox();
+                    if (text.isEmpty() || boundingBox == null || !isNavigationText(text)) {
+                        continue;
+                    }
+                    blocks.add(toRegion(text, boundingBox, block.getRecognizedLanguage()));
+                    for (Text.Line line : block.getLines()) {
+                        if (line.getBoundingBox() != null) {
+                            lines.add(toRegion(line.getText(), line.getBoundingBox(), 
+                                line.getRecognizedLanguage()));
+                        }
+                        for (Text.Element element : line.getElements()) {
+                            if (element.getBoundingBox() != null) {
+                                elements.add(toRegion(element.getText(), element.getBoundingBox(), 
+                                    element.getRecognizedLanguage()));
+                            }
+                        }
                     }
                 }
                 latch.countDown();
@@ -78,12 +109,20 @@ public class OCRProcessor {
             });
         
         try {
-            latch.await();
+            if (!latch.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                // The listener may still fill the lists later, so do not hand them out
+                return OCRResult.EMPTY;
+            }
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
+            return OCRResult.EMPTY;
         }
         
-        return textResults;
+        return new OCRResult(blocks, lines, elements);
+    }
+    
+    private static OCRResult.TextRegion toRegion(String text, Rect box, String language) {
+        return new OCRResult.TextRegion(text, box.left, box.top, box.right, box.bottom, language);
     }
     
     private boolean isNavigationText(String text) {
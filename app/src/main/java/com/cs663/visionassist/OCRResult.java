@@ -0,0 +1,99 @@
+package com.cs663.visionassist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a single OCR pass over a frame.
+ *
+ * Produced once per frame by OCRProcessor.recognize() and shared by every consumer
+ * (summary, narration, Gemini prompt, JSON export), so ML Kit never runs twice on
+ * the same bitmap. Exposes block, line and element granularity plus the languages
+ * ML Kit recognized.
+ */
+public class OCRResult {
+    public static final OCRResult EMPTY = new OCRResult(
+        new ArrayList<TextRegion>(), new ArrayList<TextRegion>(), new ArrayList<TextRegion>());
+
+    public static class TextRegion {
+        private final String text;
+        private final int left, top, right, bottom;
+        private final String language; // BCP-47 code from ML Kit, "und" if unknown
+
+        public TextRegion(String text, int left, int top, int right, int bottom, String language) {
+            this.text = text;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.language = language != null && !language.isEmpty() ? language : "und";
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getLanguage() {
+            return language;
+        }
+
+        public int getLeft() { return left; }
+        public int getTop() { return top; }
+        public int getRight() { return right; }
+        public int getBottom() { return bottom; }
+    }
+
+    private final List<TextRegion> blocks;   // navigation-relevant text blocks
+    private final List<TextRegion> lines;    // lines of those blocks
+    private final List<TextRegion> elements; // words of those lines
+    private final List<String> texts;
+    private final List<String> languages;
+
+    public OCRResult(List<TextRegion> blocks, List<TextRegion> lines, List<TextRegion> elements) {
+        this.blocks = Collections.unmodifiableList(blocks);
+        this.lines = Collections.unmodifiableList(lines);
+        this.elements = Collections.unmodifiableList(elements);
+
+        List<String> textList = new ArrayList<>(blocks.size());
+        List<String> languageList = new ArrayList<>();
+        for (TextRegion block : blocks) {
+            textList.add(block.getText());
+            if (!"und".equals(block.getLanguage()) && !languageList.contains(block.getLanguage())) {
+                languageList.add(block.getLanguage());
+            }
+        }
+        this.texts = Collections.unmodifiableList(textList);
+        this.languages = Collections.unmodifiableList(languageList);
+    }
+
+    /**
+     * Text of each navigation-relevant block, in reading order.
+     */
+    public List<String> getTexts() {
+        return texts;
+    }
+
+    public List<TextRegion> getBlocks() {
+        return blocks;
+    }
+
+    public List<TextRegion> getLines() {
+        return lines;
+    }
+
+    public List<TextRegion> getElements() {
+        return elements;
+    }
+
+    /**
+     * Distinct languages recognized across blocks, in order of first appearance.
+     */
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    public boolean isEmpty() {
+        return blocks.isEmpty();
+    }
+}
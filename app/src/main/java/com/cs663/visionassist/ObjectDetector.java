@@ -2,77 +2,465 @@ package com.cs663.visionassist;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.Log;
 
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Delegate;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
 import org.tensorflow.lite.support.common.FileUtil;
-import org.tensorflow.lite.support.image.ImageProcessor;
-import org.tensorflow.lite.support.image.TensorImage;
-import org.tensorflow.lite.support.image.ops.ResizeOp;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Runs one detector model (see ModelSpec) on bitmaps.
+ *
+ * The input size and type and the output layout are read from the model's tensors when it
+ * is loaded, so EfficientDet-Lite0..Lite4 and SSD models of any input resolution work
+ * without code changes. If the model cannot be used, isLoaded() is false and detect()
+ * returns nothing.
+ *
+ * Float32 (and float16, which keeps float32 inputs and outputs) and integer-quantized
+ * (UINT8/INT8) variants are all accepted: pixels are normalized with the spec's mean and std
+ * and, for integer inputs, quantized with the input tensor's scale and zero point, straight
+ * into the input buffer. Integer outputs are dequantized with their tensor's parameters.
+ *
+ * Outputs go through DetectionDecoder, with or without the model's own post-processing:
+ * score thresholds (per class by label), NMS and top-K are set process-wide with the static
+ * setters and picked up by every detector on its next frame.
+ */
 public class ObjectDetector {
-    private static final String MODEL_FILE = "efficientdet_lite0.tflite";
-    private static final int INPUT_SIZE = 320;
-    private static final float CONFIDENCE_THRESHOLD = 0.5f;
-    private static final int NUM_DETECTIONS = 10;
+    private static final String TAG = "ObjectDetector";
+    private static final String UNUSED_LABEL = "???"; // gaps in SSD label maps
+    private static final int MAX_LIST_CAPACITY = 100;
     
+    // Label tables by labels file and offset (see loadLabels)
+    private static final Map<String, List<String>> LABEL_TABLES = new HashMap<>();
+    
+    // How frames are fitted into the square model input; letterboxing keeps the aspect ratio
+    private static volatile InputTransform.Mode preprocessing = InputTransform.Mode.LETTERBOX;
+    
+    // Decoder settings; detectors reconfigure their decoder when the version changes
+    private static volatile float confidenceThreshold = DetectionDecoder.DEFAULT_SCORE_THRESHOLD;
+    private static volatile Map<String, Float> classThresholds = new HashMap<>();
+    private static volatile int maxResults;        // 0 = as many as the model outputs
+    private static volatile int maxResultsPerClass; // 0 = no per-class limit
+    private static volatile boolean classAwareNms = true;
+    private static volatile float nmsIouThreshold = DetectionDecoder.DEFAULT_IOU_THRESHOLD;
+    private static volatile float softNmsSigma;     // 0 = hard NMS
+    private static volatile int settingsVersion;
+    
+    private final ModelSpec spec;
     private Interpreter interpreter;
+    private Delegate nativeDelegate; // closed after the interpreter, may be null
     private List<String> labels;
     private Context context;
+    private int inputWidth;
+    private int inputHeight;
+    private DataType inputType;
+    private Tensor.QuantizationParams inputQuantization;
+    private ModelSpec.OutputLayout layout;
+    
+    // Input/output buffers are allocated once per interpreter and reused by every detect()
+    // call, so steady-state inference allocates nothing but the result list. A detector is
+    // only ever used by one thread at a time (see InferenceEngine), so no locking is needed.
+    private Bitmap inputBitmap;
+    private Canvas inputCanvas;
+    private final Rect sourceRect = new Rect();
+    private final RectF targetRect = new RectF();
+    private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final InputTransform transform = new InputTransform();
+    private int[] inputPixels;
+    private ByteBuffer inputBuffer;
+    private FloatBuffer inputFloats;  // view of inputBuffer, float inputs only
+    private float[] floatLevels;      // input value per channel level, float inputs
+    private byte[] quantizedLevels;   // input value per channel level, integer inputs
+    private Object[] inputs;
+    private float[][][] outputLocations;
+    private float[][] outputClasses;
+    private float[][] outputScores;
+    private float[][][] outputClassScores; // raw outputs only
+    private float[] numDetections;
+    private Map<Integer, Object> outputs;
+    private final List<QuantizedOutput> quantizedOutputs = new ArrayList<>();
+    private final DetectionDecoder decoder = new DetectionDecoder();
+    private int decoderVersion = -1;
+    private final InferenceRun interpreterRun =
+        (runInputs, runOutputs) -> interpreter.runForMultipleInputsOutputs(runInputs, runOutputs);
+    
+    /**
+     * An integer output tensor: read into its own buffer, then dequantized into the float
+     * array the decoder reads.
+     */
+    static final class QuantizedOutput {
+        final ByteBuffer buffer;
+        final Object target;
+        final float scale;
+        final int zeroPoint;
+        final boolean signed;
+        
+        QuantizedOutput(ByteBuffer buffer, Object target, Tensor.QuantizationParams params, boolean signed) {
+            this.buffer = buffer;
+            this.target = target;
+            this.scale = params.getScale();
+            this.zeroPoint = params.getZeroPoint();
+            this.signed = signed;
+        }
+    }
+    
+    /**
+     * One inference over the bound inputs and outputs; the interpreter, or a fake in tests.
+     */
+    interface InferenceRun {
+        void run(Object[] inputs, Map<Integer, Object> outputs);
+    }
+    
+    public static void setPreprocessing(InputTransform.Mode mode) {
+        preprocessing = mode;
+    }
+    
+    /**
+     * Minimum score for classes without a threshold of their own.
+     */
+    public static synchronized void setConfidenceThreshold(float threshold) {
+        confidenceThreshold = threshold;
+        settingsVersion++;
+    }
+    
+    /**
+     * Minimum score for one class by label, e.g. a lower one for hazards; a threshold
+     * above 1 drops the class. NaN removes the override.
+     */
+    public static synchronized void setClassThreshold(String label, float threshold) {
+        Map<String, Float> thresholds = new HashMap<>(classThresholds);
+        if (Float.isNaN(threshold)) {
+            thresholds.remove(label);
+        } else {
+            thresholds.put(label, threshold);
+        }
+        classThresholds = thresholds;
+        settingsVersion++;
+    }
+    
+    /**
+     * Limits the results per frame in total and per class (0 = no limit).
+     */
+    public static synchronized void setTopK(int maxTotal, int maxPerClass) {
+        maxResults = maxTotal;
+        maxResultsPerClass = maxPerClass;
+        settingsVersion++;
+    }
+    
+    /**
+     * @param softSigma 0 for hard NMS, otherwise the Gaussian Soft-NMS sigma
+     */
+    public static synchronized void setNms(boolean classAware, float iouThreshold, float softSigma) {
+        classAwareNms = classAware;
+        nmsIouThreshold = iouThreshold;
+        softNmsSigma = softSigma;
+        settingsVersion++;
+    }
     
     public ObjectDetector(Context context) {
+        this(context, ModelRegistry.DEFAULT_MODEL);
+    }
+    
+    public ObjectDetector(Context context, ModelSpec spec) {
         this.context = context;
+        this.spec = spec;
         try {
             loadModel();
             loadLabels();
+            readModelMetadata();
+            allocateBuffers();
         } catch (RuntimeException e) {
             e.printStackTrace();
             // Model failed to load - interpreter will be null
             // This will be handled gracefully in detect() method
+            close();
+            if (labels == null) {
+                labels = new ArrayList<>();
+            }
         }
     }
     
+    public ModelSpec getSpec() {
+        return spec;
+    }
+    
+    public boolean isLoaded() {
+        return interpreter != null;
+    }
+    
+    public int getInputWidth() {
+        return inputWidth;
+    }
+    
+    public int getInputHeight() {
+        return inputHeight;
+    }
+    
+    /**
+     * FLOAT32, UINT8 or INT8; null if the model did not load.
+     */
+    public DataType getInputType() {
+        return inputType;
+    }
+    
     private void loadModel() {
+        String modelFile = spec.getModelFile();
         try {
             // Check if file exists in assets
             try {
-                java.io.InputStream inputStream = context.getAssets().open(MODEL_FILE);
+                java.io.InputStream inputStream = context.getAssets().open(modelFile);
                 inputStream.close();
             } catch (IOException e) {
-                throw new IOException("Model file not found in assets: " + MODEL_FILE + ". Make sure efficientdet_lite0.tflite is in app/src/main/assets/", e);
+                throw new IOException("Model file not found in assets: " + modelFile + ". Make sure " + modelFile + " is in app/src/main/assets/", e);
             }
             
-            ByteBuffer modelBuffer = FileUtil.loadMappedFile(context, MODEL_FILE);
-            Interpreter.Options options = new Interpreter.Options();
-            options.setNumThreads(4);
-            interpreter = new Interpreter(modelBuffer, options);
+            ByteBuffer modelBuffer = FileUtil.loadMappedFile(context, modelFile);
+            
+            // Use the fastest delegate that produces correct output on this device
+            DelegateSelector selector = DelegateSelector.getInstance(context);
+            InferenceDelegate delegate = selector.select(spec, modelBuffer);
+            try {
+                interpreter = createInterpreter(modelBuffer, delegate);
+            } catch (RuntimeException e) {
+                interpreter = createInterpreter(modelBuffer, selector.reportFailure(modelFile, delegate));
+            }
         } catch (IOException e) {
             e.printStackTrace();
-            throw new RuntimeException("Failed to load model: " + MODEL_FILE + ". Error: " + e.getMessage(), e);
+            throw new RuntimeException("Failed to load model: " + modelFile + ". Error: " + e.getMessage(), e);
         }
     }
     
+    /**
+     * Reads the input shape and type and resolves the output layout from the tensors.
+     */
+    private void readModelMetadata() {
+        Tensor input = interpreter.getInputTensor(0);
+        int[] inputShape = input.shape(); // [1, height, width, 3]
+        if (inputShape.length != 4 || inputShape[3] != 3) {
+            throw new IllegalStateException(spec + ": unsupported input shape " + java.util.Arrays.toString(inputShape));
+        }
+        inputType = input.dataType();
+        if (inputType != DataType.FLOAT32 && inputType != DataType.UINT8 && inputType != DataType.INT8) {
+            throw new IllegalStateException(spec + ": unsupported input type " + inputType);
+        }
+        inputQuantization = input.quantizationParams();
+        inputHeight = inputShape[1];
+        inputWidth = inputShape[2];
+        
+        int outputCount = interpreter.getOutputTensorCount();
+        int[][] shapes = new int[outputCount][];
+        String[] names = new String[outputCount];
+        for (int i = 0; i < outputCount; i++) {
+            Tensor output = interpreter.getOutputTensor(i);
+            shapes[i] = output.shape();
+            names[i] = output.name();
+        }
+        layout = ModelSpec.OutputLayout.resolve(shapes, names);
+        if (layout == null) {
+            throw new IllegalStateException(spec + ": unsupported output layout");
+        }
+        Log.d(TAG, spec + ": input " + inputWidth + "x" + inputHeight + " " + inputType
+            + (inputType != DataType.FLOAT32 ? " (scale " + inputQuantization.getScale()
+                + ", zero point " + inputQuantization.getZeroPoint() + ")" : "")
+            + (layout.isRaw() ? ", raw outputs: " + layout.maxDetections + " boxes x " + layout.numClasses + " classes"
+                : ", up to " + layout.maxDetections + " detections"));
+    }
+    
+    private Interpreter createInterpreter(ByteBuffer modelBuffer, InferenceDelegate delegate) {
+        Interpreter.Options options = new Interpreter.Options();
+        Delegate configured = delegate.configure(options);
+        try {
+            Interpreter created = new Interpreter(modelBuffer, options);
+            nativeDelegate = configured;
+            return created;
+        } catch (RuntimeException e) {
+            if (configured != null) {
+                configured.close();
+            }
+            throw e;
+        }
+    }
+    
+    private void allocateBuffers() {
+        inputBitmap = Bitmap.createBitmap(inputWidth, inputHeight, Bitmap.Config.ARGB_8888);
+        inputCanvas = new Canvas(inputBitmap);
+        inputPixels = new int[inputWidth * inputHeight];
+        // RGB input, one byte or float per channel
+        int channelBytes = inputType == DataType.FLOAT32 ? 4 : 1;
+        inputBuffer = ByteBuffer.allocateDirect(inputWidth * inputHeight * 3 * channelBytes);
+        inputBuffer.order(ByteOrder.nativeOrder());
+        inputs = new Object[]{inputBuffer};
+        if (inputType == DataType.FLOAT32) {
+            inputFloats = inputBuffer.asFloatBuffer();
+            floatLevels = floatLevels(spec.getInputMean(), spec.getInputStd());
+        } else {
+            quantizedLevels = quantizedLevels(spec.getInputMean(), spec.getInputStd(),
+                inputQuantization.getScale(), inputQuantization.getZeroPoint(), inputType == DataType.INT8);
+        }
+        
+        // Detection post-processing outputs, in the order resolved from the model:
+        // locations [1, N, 4] (ymin, xmin, ymax, xmax), classes [1, N], scores [1, N],
+        // and optionally num_detections [1]
+        // (raw outputs: decoded locations [1, N, 4] and per-class scores [1, N, C])
+        int maxDetections = layout.maxDetections;
+        outputLocations = new float[1][maxDetections][4];
+        outputs = new HashMap<>();
+        outputs.put(layout.boxes, outputLocations);
+        if (layout.isRaw()) {
+            outputClassScores = new float[1][maxDetections][layout.numClasses];
+            outputs.put(layout.scores, outputClassScores);
+        } else {
+            outputClasses = new float[1][maxDetections];
+            outputScores = new float[1][maxDetections];
+            numDetections = new float[1];
+            outputs.put(layout.classes, outputClasses);
+            outputs.put(layout.scores, outputScores);
+            if (layout.count >= 0) {
+                outputs.put(layout.count, numDetections);
+            }
+        }
+        
+        // Integer outputs (raw outputs of full-integer models) are bound to byte buffers
+        for (Map.Entry<Integer, Object> output : outputs.entrySet()) {
+            Tensor tensor = interpreter.getOutputTensor(output.getKey());
+            DataType type = tensor.dataType();
+            if (type == DataType.FLOAT32) {
+                continue;
+            }
+            if (type != DataType.UINT8 && type != DataType.INT8) {
+                throw new IllegalStateException(spec + ": unsupported output type " + type);
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(tensor.numBytes());
+            buffer.order(ByteOrder.nativeOrder());
+            quantizedOutputs.add(new QuantizedOutput(buffer, output.getValue(),
+                tensor.quantizationParams(), type == DataType.INT8));
+            output.setValue(buffer);
+        }
+    }
+    
+    /**
+     * Model input value for each 8-bit channel level: (level - mean) / std.
+     */
+    static float[] floatLevels(float mean, float std) {
+        float[] levels = new float[256];
+        for (int level = 0; level < levels.length; level++) {
+            levels[level] = (level - mean) / std;
+        }
+        return levels;
+    }
+    
+    /**
+     * Quantized model input for each 8-bit channel level: the normalized value divided by
+     * scale plus the zero point, clamped to the type's range. An input without quantization
+     * parameters (scale 0) takes the levels as they are, shifted to -128..127 if signed.
+     */
+    static byte[] quantizedLevels(float mean, float std, float scale, int zeroPoint, boolean signed) {
+        byte[] levels = new byte[256];
+        int min = signed ? -128 : 0;
+        int max = signed ? 127 : 255;
+        for (int level = 0; level < levels.length; level++) {
+            int quantized;
+            if (scale == 0f) {
+                quantized = signed ? level - 128 : level;
+            } else {
+                quantized = Math.round((level - mean) / std / scale) + zeroPoint;
+            }
+            levels[level] = (byte) Math.max(min, Math.min(max, quantized));
+        }
+        return levels;
+    }
+    
+    // Fills the float arrays of target, row by row, from buffer starting at offset
+    private static int dequantize(QuantizedOutput output, Object target, int offset) {
+        if (target instanceof float[]) {
+            float[] values = (float[]) target;
+            ByteBuffer buffer = output.buffer;
+            for (int i = 0; i < values.length; i++) {
+                int quantized = output.signed ? buffer.get(offset + i) : buffer.get(offset + i) & 0xFF;
+                values[i] = (quantized - output.zeroPoint) * output.scale;
+            }
+            return offset + values.length;
+        }
+        for (Object row : (Object[]) target) {
+            offset = dequantize(output, row, offset);
+        }
+        return offset;
+    }
+    
+    /**
+     * Applies the current static decoder settings, with per-class thresholds resolved
+     * against this model's labels.
+     */
+    private void configureDecoder() {
+        int version = settingsVersion;
+        Map<String, Float> overrides = classThresholds;
+        float[] thresholds = new float[labels.size()];
+        for (int i = 0; i < thresholds.length; i++) {
+            Float override = overrides.get(labels.get(i));
+            if (UNUSED_LABEL.equals(labels.get(i))) {
+                thresholds[i] = Float.POSITIVE_INFINITY;
+            } else {
+                thresholds[i] = override != null ? override : Float.NaN;
+            }
+        }
+        decoder.setDefaultThreshold(confidenceThreshold)
+            .setClassThresholds(thresholds, labels.size())
+            .setNms(classAwareNms, nmsIouThreshold, softNmsSigma)
+            .setTopK(maxResults > 0 ? maxResults : Integer.MAX_VALUE,
+                maxResultsPerClass > 0 ? maxResultsPerClass : Integer.MAX_VALUE);
+        decoderVersion = version;
+    }
+    
+    /**
+     * Loads the label table, shared by every detector using the same labels file, so batches
+     * filled by different pooled detectors carry the same list and keep their hazard table.
+     */
     private void loadLabels() {
-        labels = new ArrayList<>();
+        String key = spec.getLabelsFile() + "#" + spec.getLabelOffset();
+        synchronized (LABEL_TABLES) {
+            labels = LABEL_TABLES.get(key);
+            if (labels == null) {
+                labels = Collections.unmodifiableList(readLabels());
+                LABEL_TABLES.put(key, labels);
+            }
+        }
+    }
+    
+    private List<String> readLabels() {
+        List<String> labelTable = new ArrayList<>();
         try {
-            List<String> labelList = FileUtil.loadLabels(context, "labels.txt");
-            for (String label : labelList) {
-                labels.add(label.trim());
+            List<String> labelList = FileUtil.loadLabels(context, spec.getLabelsFile());
+            // Class 0 is at labelOffset in the file
+            for (int i = spec.getLabelOffset(); i < labelList.size(); i++) {
+                labelTable.add(labelList.get(i).trim());
             }
         } catch (IOException e) {
             e.printStackTrace();
             // Use default COCO labels if file not found
-            loadDefaultLabels();
+            return defaultLabels();
         }
+        return labelTable;
     }
     
-    private void loadDefaultLabels() {
-        labels = new ArrayList<>();
+    private static List<String> defaultLabels() {
+        List<String> labels = new ArrayList<>();
         String[] defaultLabels = {
             "person", "bicycle", "car", "motorcycle", "airplane", "bus", "train", "truck",
             "boat", "traffic light", "fire hydrant", "stop sign", "parking meter", "bench",
@@ -90,106 +478,168 @@ public class ObjectDetector {
         for (String label : defaultLabels) {
             labels.add(label);
         }
+        return labels;
     }
     
     public List<Detection> detect(Bitmap bitmap) {
-        List<Detection> detections = new ArrayList<>();
+        DetectionBatch batch = new DetectionBatch(layout != null ? Math.min(layout.maxDetections, MAX_LIST_CAPACITY) : 0);
+        detect(bitmap, batch);
+        return batch.toDetections();
+    }
+    
+    /**
+     * Runs detection and writes the results into the given (reused) batch,
+     * so no per-detection objects are created.
+     */
+    public void detect(Bitmap bitmap, DetectionBatch detections) {
+        detect(bitmap, null, detections);
+    }
+    
+    /**
+     * Runs detection on a region of the bitmap (null for all of it). Boxes are in bitmap
+     * coordinates and clipped to the region.
+     */
+    public void detect(Bitmap bitmap, Rect region, DetectionBatch detections) {
+        detections.reset(labels);
         
         if (interpreter == null) {
-            return detections;
+            return;
         }
         
-        // Preprocess image
-        TensorImage tensorImage = preprocessImage(bitmap);
-        
-        // Get model output tensor info
-        int outputTensorCount = interpreter.getOutputTensorCount();
-        
-        // Prepare output arrays - EfficientDet typically has 4 outputs
-        // Output 0: locations [1, num_detections, 4] (ymin, xmin, ymax, xmax)
-        // Output 1: classes [1, num_detections]
-        // Output 2: scores [1, num_detections]
-        // Output 3: num_detections [1]
-        
-        float[][][] outputLocations = new float[1][NUM_DETECTIONS][4];
-        float[][] outputClasses = new float[1][NUM_DETECTIONS];
-        float[][] outputScores = new float[1][NUM_DETECTIONS];
-        float[] numDetections = new float[1];
-        
         // Run inference
         try {
-            ByteBuffer inputBuffer = tensorImage.getBuffer();
-            java.util.Map<Integer, Object> outputs = new java.util.HashMap<>();
-            
-            // Map outputs based on tensor count
-            if (outputTensorCount >= 4) {
-                outputs.put(0, outputLocations);
-                outputs.put(1, outputClasses);
-                outputs.put(2, outputScores);
-                outputs.put(3, numDetections);
-            } else if (outputTensorCount == 3) {
-                // Some models don't have num_detections output
-                outputs.put(0, outputLocations);
-                outputs.put(1, outputClasses);
-                outputs.put(2, outputScores);
+            if (region != null) {
+                sourceRect.set(region.left, region.top, region.right, region.bottom);
+            } else {
+                sourceRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
             }
+            InputTransform transform = preprocessImage(bitmap, sourceRect);
+            run(interpreterRun, inputs, outputs, quantizedOutputs);
             
-            interpreter.runForMultipleInputsOutputs(new Object[]{inputBuffer}, outputs);
-            
-            // Parse results
-            int numDetected = outputTensorCount >= 4 ? (int) numDetections[0] : NUM_DETECTIONS;
-            int imageWidth = bitmap.getWidth();
-            int imageHeight = bitmap.getHeight();
-            
-            for (int i = 0; i < Math.min(numDetected, NUM_DETECTIONS); i++) {
-                float score = outputScores[0][i];
-                if (score < CONFIDENCE_THRESHOLD) {
-                    continue;
-                }
-                
-                int classId = (int) outputClasses[0][i];
-                if (classId < 0 || classId >= labels.size()) {
-                    continue;
-                }
-                
-                String label = labels.get(classId);
-                
-                // Convert normalized coordinates to pixel coordinates
-                // EfficientDet format: [ymin, xmin, ymax, xmax] normalized 0-1
-                float yMin = outputLocations[0][i][0] * imageHeight;
-                float xMin = outputLocations[0][i][1] * imageWidth;
-                float yMax = outputLocations[0][i][2] * imageHeight;
-                float xMax = outputLocations[0][i][3] * imageWidth;
-                
-                int left = Math.max(0, (int) xMin);
-                int top = Math.max(0, (int) yMin);
-                int right = Math.min(imageWidth - 1, (int) xMax);
-                int bottom = Math.min(imageHeight - 1, (int) yMax);
-                
-                // Only add if valid bounding box
-                if (right > left && bottom > top) {
-                    Detection detection = new Detection(label, score, left, top, right, bottom);
-                    detections.add(detection);
-                }
+            // Thresholds (unknown and "???" classes are dropped there), NMS and top-K
+            if (decoderVersion != settingsVersion) {
+                configureDecoder();
+            }
+            int maxDetections = layout.maxDetections;
+            int found;
+            if (layout.isRaw()) {
+                found = decoder.decode(outputLocations[0], outputClassScores[0], maxDetections);
+            } else {
+                int numDetected = layout.count >= 0 ? (int) numDetections[0] : maxDetections;
+                found = decoder.decode(outputLocations[0], outputClasses[0], outputScores[0],
+                    Math.min(numDetected, maxDetections));
             }
+            addDetections(decoder, found, transform, sourceRect.left, sourceRect.top,
+                sourceRect.width(), sourceRect.height(), detections);
         } catch (Exception e) {
             e.printStackTrace();
-            // Return empty list on error
+            // Leave the batch empty on error
+            detections.reset(labels);
         }
-        
-        return detections;
     }
     
-    private TensorImage preprocessImage(Bitmap bitmap) {
-        ImageProcessor imageProcessor = new ImageProcessor.Builder()
-            .add(new ResizeOp(INPUT_SIZE, INPUT_SIZE, ResizeOp.ResizeMethod.BILINEAR))
-            .build();
-        
-        TensorImage tensorImage = new TensorImage(org.tensorflow.lite.DataType.UINT8);
-        tensorImage.load(bitmap);
-        tensorImage = imageProcessor.process(tensorImage);
+    /**
+     * Runs one inference and dequantizes the integer outputs into the decoder's float arrays.
+     * The output buffers are rewound first: TFLite copies into them with put(), which leaves
+     * them at their limit, so the next run would overflow.
+     */
+    static void run(InferenceRun run, Object[] inputs, Map<Integer, Object> outputs,
+                    List<QuantizedOutput> quantizedOutputs) {
+        for (int i = 0; i < quantizedOutputs.size(); i++) {
+            quantizedOutputs.get(i).buffer.rewind();
+        }
+        run.run(inputs, outputs);
+        for (int i = 0; i < quantizedOutputs.size(); i++) {
+            QuantizedOutput output = quantizedOutputs.get(i);
+            dequantize(output, output.target, 0);
+        }
+    }
+    
+    /**
+     * Maps the decoder's first found boxes from normalized input coordinates back through
+     * the letterbox/crop into the region at (regionLeft, regionTop) and adds them to the batch.
+     */
+    static void addDetections(DetectionDecoder decoder, int found, InputTransform transform,
+                              int regionLeft, int regionTop, int regionWidth, int regionHeight,
+                              DetectionBatch detections) {
+        for (int k = 0; k < found; k++) {
+            float top = Math.max(0f, transform.toSourceY(decoder.getTop(k)));
+            float left = Math.max(0f, transform.toSourceX(decoder.getLeft(k)));
+            float bottom = Math.min(regionHeight, transform.toSourceY(decoder.getBottom(k)));
+            float right = Math.min(regionWidth, transform.toSourceX(decoder.getRight(k)));
+            
+            // Only add if valid bounding box (boxes entirely in the padding are dropped)
+            if (right > left && bottom > top) {
+                detections.add(decoder.getClassId(k), decoder.getScore(k), left + regionLeft,
+                    top + regionTop, right + regionLeft, bottom + regionTop);
+            }
+        }
+    }
+    
+    /**
+     * Runs one inference on a blank frame so the first real capture does not pay
+     * for the interpreter's lazy tensor allocation.
+     */
+    public void warmUp() {
+        if (interpreter == null) {
+            return;
+        }
+        Bitmap blank = Bitmap.createBitmap(inputWidth, inputHeight, Bitmap.Config.ARGB_8888);
+        detect(blank);
+        blank.recycle();
+    }
+    
+    /**
+     * Draws the source region of the bitmap into the reused model-input-sized bitmap in a
+     * single scaling pass (letterboxed, center-cropped or stretched) and packs its pixels as
+     * RGB into the reused input buffer, each channel looked up in the table for the input type.
+     *
+     * @return the transform used, for mapping output boxes back to the region
+     */
+    private InputTransform preprocessImage(Bitmap bitmap, Rect source) {
+        transform.set(preprocessing, source.width(), source.height(), inputWidth, inputHeight);
+        if (transform.getContentFraction() < 1f) {
+            inputBitmap.eraseColor(Color.BLACK); // letterbox padding
+        }
+        // Only the region is drawn, so the padding never shows the rest of the bitmap
+        targetRect.set(transform.getOffsetX(), transform.getOffsetY(),
+            transform.getOffsetX() + source.width() * transform.getScaleX(),
+            transform.getOffsetY() + source.height() * transform.getScaleY());
+        inputCanvas.drawBitmap(bitmap, source, targetRect, scalePaint);
+        inputBitmap.getPixels(inputPixels, 0, inputWidth, 0, 0, inputWidth, inputHeight);
         
-        return tensorImage;
+        if (inputFloats != null) {
+            packPixels(inputPixels, floatLevels, inputFloats);
+        } else {
+            packPixels(inputPixels, quantizedLevels, inputBuffer);
+        }
+        return transform;
+    }
+    
+    /**
+     * Writes the RGB channels of the ARGB pixels into a float input through the level table.
+     */
+    static void packPixels(int[] pixels, float[] levels, FloatBuffer input) {
+        input.rewind();
+        for (int pixel : pixels) {
+            input.put(levels[(pixel >> 16) & 0xFF]);
+            input.put(levels[(pixel >> 8) & 0xFF]);
+            input.put(levels[pixel & 0xFF]);
+        }
+        input.rewind();
+    }
+    
+    /**
+     * Writes the RGB channels of the ARGB pixels into an integer input through the level table.
+     */
+    static void packPixels(int[] pixels, byte[] levels, ByteBuffer input) {
+        input.rewind();
+        for (int pixel : pixels) {
+            input.put(levels[(pixel >> 16) & 0xFF]);
+            input.put(levels[(pixel >> 8) & 0xFF]);
+            input.put(levels[pixel & 0xFF]);
+        }
+        input.rewind();
     }
     
     public void close() {
@@ -197,6 +647,15 @@ public class ObjectDetector {
             interpreter.close();
             interpreter = null;
         }
+        if (nativeDelegate != null) {
+            nativeDelegate.close();
+            nativeDelegate = null;
+        }
+        if (inputBitmap != null) {
+            inputBitmap.recycle();
+            inputBitmap = null;
+        }
+        layout = null;
     }
 }
 
@@ -0,0 +1,234 @@
+package com.cs663.visionassist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lightweight multi-object tracker that keeps detections stable across frames.
+ *
+ * Detections are associated with existing tracks by greedy IoU matching (same class only,
+ * highest IoU first).
+ * Each track smooths its box centre and size with an alpha-beta filter (a constant-velocity
+ * Kalman filter with fixed gains), so boxes stop flickering and every object keeps a stable
+ * track ID together with its last side/distance.
+ *
+ * The detector only needs to run every detectionInterval frames: in between, predict()
+ * moves the tracks along their estimated velocity. Works on DetectionBatch in and out, so
+ * tracking adds no per-detection allocations.
+ */
+public class ObjectTracker {
+    private static final float IOU_MATCH_THRESHOLD = 0.3f;
+    private static final float POSITION_GAIN = 0.6f; // alpha: weight of the new measurement
+    private static final float VELOCITY_GAIN = 0.2f; // beta: weight of the residual in velocity
+    private static final int MAX_MISSED_DETECTIONS = 2; // drop a track after this many misses
+    private static final int MIN_HITS_TO_REPORT = 2;    // tentative tracks are hidden once they miss
+
+    private static class Track {
+        final int id;
+        final int classId;
+        float confidence;
+        float cx, cy, w, h;     // box centre and size
+        float vx, vy, vw, vh;   // per-frame velocity
+        int framesSinceUpdate;  // frames since the last detection update
+        int hits;
+        int missedDetections;
+        byte side;
+        byte distance;
+
+        Track(int id, DetectionBatch detections, int i) {
+            this.id = id;
+            this.classId = detections.getClassId(i);
+            this.confidence = detections.getConfidence(i);
+            this.cx = detections.getCenterX(i);
+            this.cy = detections.getCenterY(i);
+            this.w = detections.getWidth(i);
+            this.h = detections.getHeight(i);
+            this.hits = 1;
+            this.side = detections.getSide(i);
+            this.distance = detections.getDistance(i);
+        }
+
+        void predict() {
+            cx += vx;
+            cy += vy;
+            w = Math.max(1f, w + vw);
+            h = Math.max(1f, h + vh);
+            framesSinceUpdate++;
+        }
+
+        void correct(DetectionBatch detections, int i) {
+            float frames = Math.max(1, framesSinceUpdate);
+            float rx = detections.getCenterX(i) - cx;
+            float ry = detections.getCenterY(i) - cy;
+            float rw = detections.getWidth(i) - w;
+            float rh = detections.getHeight(i) - h;
+
+            cx += POSITION_GAIN * rx;
+            cy += POSITION_GAIN * ry;
+            w += POSITION_GAIN * rw;
+            h += POSITION_GAIN * rh;
+            vx += VELOCITY_GAIN * rx / frames;
+            vy += VELOCITY_GAIN * ry / frames;
+            vw += VELOCITY_GAIN * rw / frames;
+            vh += VELOCITY_GAIN * rh / frames;
+
+            confidence = detections.getConfidence(i);
+            side = detections.getSide(i);
+            distance = detections.getDistance(i);
+            framesSinceUpdate = 0;
+            missedDetections = 0;
+            hits++;
+        }
+
+        void writeTo(DetectionBatch out) {
+            int i = out.add(classId, confidence, cx - w / 2, cy - h / 2, cx + w / 2, cy + h / 2);
+            out.setTrackId(i, id);
+            out.setSide(i, side);
+            out.setDistance(i, distance);
+        }
+    }
+
+    private final int detectionInterval;
+    private final List<Track> tracks = new ArrayList<>();
+    private int nextTrackId = 1;
+    private int frameIndex;
+    private List<String> labels = new ArrayList<>();
+    private boolean[] trackMatched = new boolean[16];
+    private boolean[] detectionMatched = new boolean[16];
+    // Candidate pairs: key = IoU bits << 32 | (MAX_VALUE - pair index), so an ascending sort
+    // orders by IoU and keeps the first-found pair first among equal IoUs
+    private long[] pairKeys = new long[16];
+    private int[] pairTracks = new int[16];
+    private int[] pairDetections = new int[16];
+
+    /**
+     * @param detectionInterval run the detector every N frames (1 = every frame)
+     */
+    public ObjectTracker(int detectionInterval) {
+        this.detectionInterval = Math.max(1, detectionInterval);
+    }
+
+    /**
+     * Whether the detector should run on the current frame. Always true while nothing is tracked.
+     */
+    public boolean shouldDetect() {
+        return tracks.isEmpty() || frameIndex % detectionInterval == 0;
+    }
+
+    /**
+     * Advances one frame using fresh detections and writes the tracked objects into out.
+     */
+    public DetectionBatch update(DetectionBatch detections, DetectionBatch out) {
+        labels = detections.getLabels();
+        for (Track track : tracks) {
+            track.predict();
+        }
+
+        // Greedy association: collect every same-class pair above the IoU threshold once,
+        // then take pairs from the highest IoU down, skipping already matched tracks/detections
+        if (trackMatched.length < tracks.size()) {
+            trackMatched = new boolean[tracks.size() * 2];
+        }
+        if (detectionMatched.length < detections.size()) {
+            detectionMatched = new boolean[detections.size() * 2];
+        }
+        Arrays.fill(trackMatched, false);
+        Arrays.fill(detectionMatched, false);
+        int pairCount = 0;
+        for (int t = 0; t < tracks.size(); t++) {
+            Track track = tracks.get(t);
+            for (int d = 0; d < detections.size(); d++) {
+                if (track.classId != detections.getClassId(d)) {
+                    continue;
+                }
+                float iou = iou(track, detections, d);
+                if (iou > IOU_MATCH_THRESHOLD) {
+                    pairCount = addPair(pairCount, iou, t, d);
+                }
+            }
+        }
+        Arrays.sort(pairKeys, 0, pairCount);
+        for (int p = pairCount - 1; p >= 0; p--) {
+            int pair = Integer.MAX_VALUE - (int) pairKeys[p];
+            int t = pairTracks[pair];
+            int d = pairDetections[pair];
+            if (trackMatched[t] || detectionMatched[d]) {
+                continue;
+            }
+            tracks.get(t).correct(detections, d);
+            trackMatched[t] = true;
+            detectionMatched[d] = true;
+        }
+
+        // Unmatched tracks age out; unmatched detections start new tracks
+        for (int t = tracks.size() - 1; t >= 0; t--) {
+            if (!trackMatched[t] && ++tracks.get(t).missedDetections > MAX_MISSED_DETECTIONS) {
+                tracks.remove(t);
+            }
+        }
+        for (int d = 0; d < detections.size(); d++) {
+            if (!detectionMatched[d]) {
+                tracks.add(new Track(nextTrackId++, detections, d));
+            }
+        }
+
+        frameIndex++;
+        return currentDetections(out);
+    }
+
+    /**
+     * Advances one frame without a detector run, extrapolating every track into out.
+     */
+    public DetectionBatch predict(DetectionBatch out) {
+        for (Track track : tracks) {
+            track.predict();
+        }
+        frameIndex++;
+        return currentDetections(out);
+    }
+
+    public void reset() {
+        tracks.clear();
+        frameIndex = 0;
+    }
+
+    public int getTrackCount() {
+        return tracks.size();
+    }
+
+    private DetectionBatch currentDetections(DetectionBatch out) {
+        out.reset(labels);
+        for (Track track : tracks) {
+            // New tracks are reported right away (no added latency); a one-off false
+            // positive disappears as soon as the next detection run misses it
+            if (track.hits >= MIN_HITS_TO_REPORT || track.missedDetections == 0) {
+                track.writeTo(out);
+            }
+        }
+        return out;
+    }
+
+    private int addPair(int pairCount, float iou, int track, int detection) {
+        if (pairCount == pairKeys.length) {
+            pairKeys = Arrays.copyOf(pairKeys, pairCount * 2);
+            pairTracks = Arrays.copyOf(pairTracks, pairCount * 2);
+            pairDetections = Arrays.copyOf(pairDetections, pairCount * 2);
+        }
+        // IoU is positive, so its IEEE bits sort like the float itself
+        pairKeys[pairCount] = ((long) Float.floatToIntBits(iou) << 32) | (Integer.MAX_VALUE - pairCount);
+        pairTracks[pairCount] = track;
+        pairDetections[pairCount] = detection;
+        return pairCount + 1;
+    }
+
+    private static float iou(Track track, DetectionBatch detections, int i) {
+        float left = Math.max(track.cx - track.w / 2, detections.getLeft(i));
+        float top = Math.max(track.cy - track.h / 2, detections.getTop(i));
+        float right = Math.min(track.cx + track.w / 2, detections.getRight(i));
+        float bottom = Math.min(track.cy + track.h / 2, detections.getBottom(i));
+        float intersection = Math.max(0, right - left) * Math.max(0, bottom - top);
+        float union = track.w * track.h + detections.getWidth(i) * detections.getHeight(i) - intersection;
+        return union <= 0 ? 0 : intersection / union;
+    }
+}
@@ -3,19 +3,45 @@ package com.cs663.visionassist;
 import android.graphics.Bitmap;
 
 public class ProcessingResult {
+    private long resultId;
     private String narration;
     private String detectionsSummary;
     private String detectedObjectsJson;
     private Bitmap processedBitmap;
+    private DetectionBatch detections;
+    private OCRResult ocrResult;
     
     public ProcessingResult(String narration, String detectionsSummary, 
                           String detectedObjectsJson, Bitmap processedBitmap) {
+        this(NarrationUpdates.NO_RESULT_ID, narration, detectionsSummary, detectedObjectsJson, processedBitmap);
+    }
+    
+    /**
+     * @param resultId id under which NarrationUpdates may publish a follow-up narration
+     */
+    public ProcessingResult(long resultId, String narration, String detectionsSummary, 
+                          String detectedObjectsJson, Bitmap processedBitmap) {
+        this.resultId = resultId;
         this.narration = narration;
         this.detectionsSummary = detectionsSummary;
         this.detectedObjectsJson = detectedObjectsJson;
         this.processedBitmap = processedBitmap;
     }
     
+    /**
+     * Result with typed detections; the JSON form is only built if someone asks for it.
+     */
+    public ProcessingResult(long resultId, String narration, String detectionsSummary, 
+                          Bitmap processedBitmap, DetectionBatch detections, OCRResult ocrResult) {
+        this(resultId, narration, detectionsSummary, null, processedBitmap);
+        this.detections = detections;
+        this.ocrResult = ocrResult;
+    }
+    
+    public long getResultId() {
+        return resultId;
+    }
+    
     public String getNarration() {
         return narration;
     }
@@ -24,13 +50,27 @@ public class ProcessingResult {
         return detectionsSummary;
     }
     
-    public String getDetectedObjectsJson() {
+    public synchronized String getDetectedObjectsJson() {
+        if (detectedObjectsJson == null && detections != null) {
+            detectedObjectsJson = ResultFormatter.convertToJson(detections.toDetections(), ocrResult);
+        }
         return detectedObjectsJson;
     }
     
     public Bitmap getProcessedBitmap() {
         return processedBitmap;
     }
+    
+    /**
+     * Typed object detections, or null for results built from JSON only.
+     */
+    public DetectionBatch getDetections() {
+        return detections;
+    }
+    
+    public OCRResult getOcrResult() {
+        return ocrResult;
+    }
 }
 
 
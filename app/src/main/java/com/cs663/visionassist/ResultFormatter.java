@@ -0,0 +1,103 @@
+package com.cs663.visionassist;
+
+/**
+ * Text summary and JSON export of a processed frame, shown and passed on by ResultsActivity.
+ * Kept free of Android types so it can be benchmarked on the JVM.
+ */
+public class ResultFormatter {
+    
+    public static String createSummary(java.util.List<Detection> detections, 
+                                       OCRResult ocrResult) {
+        java.util.List<String> texts = ocrResult.getTexts();
+        StringBuilder summary = new StringBuilder();
+        
+        if (detections.isEmpty() && texts.isEmpty()) {
+            return "No objects or text detected.";
+        }
+        
+        if (!detections.isEmpty()) {
+            summary.append("Objects: ");
+            for (int i = 0; i < Math.min(detections.size(), 5); i++) {
+                Detection d = detections.get(i);
+                summary.append(d.getLabel())
+                       .append(" (").append(d.getSide())
+                       .append(", ").append(d.getDistance()).append(")");
+                if (i < Math.min(detections.size(), 5) - 1) {
+                    summary.append(" • ");
+                }
+            }
+            if (detections.size() > 5) {
+                summary.append(" and ").append(detections.size() - 5).append(" more");
+            }
+        }
+        
+        if (!texts.isEmpty()) {
+            if (summary.length() > 0) {
+                summary.append("\n");
+            }
+            summary.append("Text: ");
+            for (int i = 0; i < Math.min(texts.size(), 3); i++) {
+                summary.append(texts.get(i));
+                if (i < Math.min(texts.size(), 3) - 1) {
+                    summary.append(", ");
+                }
+            }
+        }
+        
+        return summary.toString();
+    }
+    
+    public static String convertToJson(java.util.List<Detection> detections, 
+                                       OCRResult ocrResult) {
+        org.json.JSONArray jsonArray = new org.json.JSONArray();
+        
+        // Add object detections
+        for (Detection detection : detections) {
+            try {
+                org.json.JSONObject obj = new org.json.JSONObject();
+                obj.put("type", "object");
+                obj.put("label", detection.getLabel());
+                obj.put("confidence", detection.getConfidence());
+                obj.put("side", detection.getSide());
+                obj.put("distance", detection.getDistance());
+                
+                org.json.JSONObject bbox = new org.json.JSONObject();
+                bbox.put("left", detection.getLeft());
+                bbox.put("top", detection.getTop());
+                bbox.put("right", detection.getRight());
+                bbox.put("bottom", detection.getBottom());
+                obj.put("bbox", bbox);
+                
+                jsonArray.put(obj);
+            } catch (org.json.JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        
+        // Add text detections with bounding boxes
+        for (OCRResult.TextRegion textDetection : ocrResult.getBlocks()) {
+            try {
+                org.json.JSONObject obj = new org.json.JSONObject();
+                obj.put("type", "text");
+                obj.put("label", textDetection.getText());
+                obj.put("confidence", 1.0); // OCR doesn't provide confidence
+                obj.put("side", "center"); // Default for text
+                obj.put("distance", "mid"); // Default for text
+                obj.put("language", textDetection.getLanguage());
+                
+                org.json.JSONObject bbox = new org.json.JSONObject();
+                bbox.put("left", textDetection.getLeft());
+                bbox.put("top", textDetection.getTop());
+                bbox.put("right", textDetection.getRight());
+                bbox.put("bottom", textDetection.getBottom());
+                obj.put("bbox", bbox);
+                
+                jsonArray.put(obj);
+            } catch (org.json.JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        
+        return jsonArray.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package com.cs663.visionassist;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * In-process handoff of processing results from MainActivity to ResultsActivity.
+ *
+ * Results are kept by result id with their processed bitmap and typed detections, so the
+ * results screen shows them without a JPEG round trip through the cache dir or re-parsing
+ * the detections from JSON. The store is an LRU bounded by bitmap bytes (an eighth of the
+ * heap, at most MAX_BUDGET_BYTES); it is emptied under memory pressure. A result that is
+ * gone - evicted, or lost with the process - is restored by ResultsActivity from the copy
+ * it writes to disk in onSaveInstanceState.
+ */
+public final class ResultStore {
+    private static final String TAG = "ResultStore";
+    private static final int MAX_BUDGET_BYTES = 32 * 1024 * 1024;
+    private static final int ENTRY_OVERHEAD_BYTES = 4 * 1024; // narration, summary, detections
+
+    private static ResultStore instance;
+
+    private final LruCache<Long, ProcessingResult> results;
+    private long hits;
+    private long misses;
+
+    private ResultStore(int budgetBytes) {
+        results = new LruCache<Long, ProcessingResult>(budgetBytes) {
+            @Override
+            protected int sizeOf(Long resultId, ProcessingResult result) {
+                android.graphics.Bitmap bitmap = result.getProcessedBitmap();
+                return ENTRY_OVERHEAD_BYTES + (bitmap != null ? bitmap.getAllocationByteCount() : 0);
+            }
+        };
+    }
+
+    public static synchronized ResultStore getInstance() {
+        if (instance == null) {
+            long heapBudget = Runtime.getRuntime().maxMemory() / 8;
+            instance = new ResultStore((int) Math.min(heapBudget, MAX_BUDGET_BYTES));
+        }
+        return instance;
+    }
+
+    public void put(ProcessingResult result) {
+        results.put(result.getResultId(), result);
+    }
+
+    /**
+     * The stored result, or null if it was evicted or the process was restarted.
+     */
+    public ProcessingResult get(long resultId) {
+        ProcessingResult result = results.get(resultId);
+        synchronized (this) {
+            if (result != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        return result;
+    }
+
+    public void remove(long resultId) {
+        results.remove(resultId);
+    }
+
+    /**
+     * Drops stored results once the UI is hidden; the visible result has its disk copy.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            Log.d(TAG, "Trim memory (level " + level + "), dropping " + (results.size() / 1024) + " KB of results");
+            results.evictAll();
+        }
+    }
+
+    public synchronized String getMetricsSummary() {
+        return "stored: " + (results.size() / 1024) + " KB, hits: " + hits + ", misses: " + misses;
+    }
+}
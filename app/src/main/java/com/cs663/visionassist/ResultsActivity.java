@@ -2,11 +2,9 @@ package com.cs663.visionassist;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Rect;
-import android.net.Uri;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
 import android.os.Bundle;
 import android.speech.tts.TextToSpeech;
 import android.view.View;
@@ -22,9 +20,20 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 public class ResultsActivity extends AppCompatActivity {
+    // Saved state: only written when the activity is stopped, to survive process death
+    private static final String KEY_NARRATION = "narration";
+    private static final String KEY_SUMMARY = "detections";
+    private static final String KEY_IMAGE_PATH = "imagePath";
+    private static final String KEY_DETECTIONS_JSON = "detectedObjects";
+    
     private ImageView capturedImage;
     private TextView narrationText;
     private TextView detectionsSummary;
@@ -32,9 +41,12 @@ public class ResultsActivity extends AppCompatActivity {
     private MaterialButton retakeButton;
     
     private TextToSpeech textToSpeech;
-    private Bitmap originalBitmap;
+    private boolean textToSpeechReady;
+    private long resultId = NarrationUpdates.NO_RESULT_ID;
+    private StringBuilder streamedNarration; // non-null once an update started streaming
+    private ProcessingResult result;
     private String narration;
-    private String detectionsJson;
+    private String imagePath; // disk copy of the result, once written
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -43,7 +55,7 @@ public class ResultsActivity extends AppCompatActivity {
         
         initializeViews();
         initializeTextToSpeech();
-        loadResults();
+        loadResults(savedInstanceState);
     }
     
     private void initializeViews() {
@@ -65,133 +77,172 @@ public class ResultsActivity extends AppCompatActivity {
                     result == TextToSpeech.LANG_NOT_SUPPORTED) {
                     // Language not supported
                 }
+                textToSpeechReady = true;
+                // Speak whatever narration is current by now (local, or its Gemini update)
+                playNarration();
             }
         });
     }
     
-    private void loadResults() {
+    private void loadResults(Bundle savedInstanceState) {
         Bundle extras = getIntent().getExtras();
         if (extras == null) {
             finish();
             return;
         }
+        resultId = extras.getLong("resultId", NarrationUpdates.NO_RESULT_ID);
         
-        // Load bitmap from URI instead of Intent
-        String imageUriString = extras.getString("imageUri");
-        if (imageUriString != null) {
-            try {
-                Uri imageUri = Uri.parse(imageUriString);
-                originalBitmap = BitmapFactory.decodeFile(imageUri.getPath());
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        // Normally still in memory; after process death only the saved disk copy is left
+        result = ResultStore.getInstance().get(resultId);
+        if (result == null && savedInstanceState != null) {
+            result = restoreResult(savedInstanceState);
         }
         
-        narration = extras.getString("narration", "No narration available");
-        String detectionsSummaryText = extras.getString("detections", "");
-        detectionsJson = extras.getString("detectedObjects", "[]");
+        // Saved state has the narration last shown, which may be the Gemini update
+        Bundle source = savedInstanceState != null ? savedInstanceState : extras;
+        narration = source.getString(KEY_NARRATION, "No narration available");
+        String detectionsSummaryText = source.getString(KEY_SUMMARY, "");
         
         // Display narration
         narrationText.setText(narration);
         detectionsSummary.setText(detectionsSummaryText);
         
-        // Draw detections on image
-        if (originalBitmap != null) {
-            Bitmap annotatedBitmap = drawDetections(originalBitmap, detectionsJson);
-            capturedImage.setImageBitmap(annotatedBitmap);
+        // Draw detections over the image, without copying it
+        if (result != null && result.getProcessedBitmap() != null) {
+            Bitmap bitmap = result.getProcessedBitmap();
+            List<OCRResult.TextRegion> textRegions = result.getOcrResult() != null
+                ? result.getOcrResult().getBlocks() : new ArrayList<OCRResult.TextRegion>();
+            Drawable overlay = new DetectionOverlayDrawable(result.getDetections(), textRegions,
+                bitmap.getWidth(), bitmap.getHeight());
+            capturedImage.setImageDrawable(new LayerDrawable(new Drawable[] {
+                new BitmapDrawable(getResources(), bitmap), overlay}));
         }
         
         // Auto-play narration
         playNarration();
+        
+        // A better (Gemini) narration may follow the local one
+        if (resultId != NarrationUpdates.NO_RESULT_ID) {
+            NarrationUpdates.subscribe(resultId, new NarrationUpdates.Listener() {
+                @Override
+                public void onNarrationPhrase(long id, String phrase) {
+                    runOnUiThread(() -> showNarrationPhrase(phrase));
+                }
+                
+                @Override
+                public void onNarrationUpdated(long id, String updated) {
+                    runOnUiThread(() -> showNarrationUpdate(updated));
+                }
+            });
+        }
     }
     
-    private Bitmap drawDetections(Bitmap bitmap, String detectionsJson) {
-        Bitmap mutableBitmap = bitmap.copy(Bitmap.Config.ARGB_8888, true);
-        Canvas canvas = new Canvas(mutableBitmap);
-        
-        Paint objectPaint = new Paint();
-        objectPaint.setStyle(Paint.Style.STROKE);
-        objectPaint.setStrokeWidth(4f);
-        
-        Paint textPaint = new Paint();
-        textPaint.setStyle(Paint.Style.STROKE);
-        textPaint.setStrokeWidth(4f);
-        textPaint.setColor(Color.CYAN); // Cyan for text bounding boxes
-        
-        Paint labelPaint = new Paint();
-        labelPaint.setColor(Color.WHITE);
-        labelPaint.setTextSize(32f);
-        labelPaint.setStyle(Paint.Style.FILL);
-        labelPaint.setFakeBoldText(true);
-        
-        Paint backgroundPaint = new Paint();
-        backgroundPaint.setColor(Color.BLACK);
-        backgroundPaint.setStyle(Paint.Style.FILL);
-        backgroundPaint.setAlpha(128); // Semi-transparent background for labels
-        
+    private void showNarrationPhrase(String phrase) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        if (streamedNarration == null) {
+            streamedNarration = new StringBuilder();
+        }
+        streamedNarration.append(streamedNarration.length() > 0 ? " " : "").append(phrase);
+        narrationText.setText(streamedNarration);
+        // Spoken as it streams in, after the narration being spoken
+        if (textToSpeechReady) {
+            textToSpeech.speak(phrase, TextToSpeech.QUEUE_ADD, null, null);
+        }
+    }
+    
+    private void showNarrationUpdate(String updated) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        narration = updated;
+        narrationText.setText(narration);
+        // Follows the narration being spoken instead of cutting it off (unless already streamed)
+        if (textToSpeechReady && streamedNarration == null) {
+            textToSpeech.speak(narration, TextToSpeech.QUEUE_ADD, null, null);
+        }
+    }
+    
+    /**
+     * Rebuilds a result from the disk copy written by onSaveInstanceState().
+     */
+    private ProcessingResult restoreResult(Bundle savedInstanceState) {
+        imagePath = savedInstanceState.getString(KEY_IMAGE_PATH);
+        if (imagePath == null) {
+            return null;
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(imagePath);
+        if (bitmap == null) {
+            return null;
+        }
+        List<Detection> objects = new ArrayList<>();
+        List<OCRResult.TextRegion> textRegions = new ArrayList<>();
         try {
-            JSONArray detections = new JSONArray(detectionsJson);
+            JSONArray detections = new JSONArray(savedInstanceState.getString(KEY_DETECTIONS_JSON, "[]"));
             for (int i = 0; i < detections.length(); i++) {
                 JSONObject detection = detections.getJSONObject(i);
-                
-                String type = detection.optString("type", "object");
                 String label = detection.getString("label");
                 JSONObject bbox = detection.getJSONObject("bbox");
-                
                 int left = bbox.getInt("left");
                 int top = bbox.getInt("top");
                 int right = bbox.getInt("right");
                 int bottom = bbox.getInt("bottom");
                 
-                Rect rect = new Rect(left, top, right, bottom);
-                
-                if ("text".equals(type)) {
-                    // Draw text bounding box in cyan
-                    canvas.drawRect(rect, textPaint);
-                    
-                    // Draw text label
-                    String labelText = "TEXT: " + label;
-                    float textWidth = labelPaint.measureText(labelText);
-                    Rect labelRect = new Rect(left, Math.max(0, top - 40), 
-                                             left + (int)textWidth + 10, top);
-                    canvas.drawRect(labelRect, backgroundPaint);
-                    canvas.drawText(labelText, left + 5, top - 10, labelPaint);
+                if ("text".equals(detection.optString("type", "object"))) {
+                    textRegions.add(new OCRResult.TextRegion(label, left, top, right, bottom,
+                        detection.optString("language", "und")));
                 } else {
-                    // Object detection
-                    float confidence = (float) detection.getDouble("confidence");
-                    String side = detection.optString("side", "center");
-                    String distance = detection.optString("distance", "mid");
-                    
-                    // Choose color based on distance for objects
-                    if (distance.equals("near")) {
-                        objectPaint.setColor(Color.RED);
-                    } else if (distance.equals("mid")) {
-                        objectPaint.setColor(Color.YELLOW);
-                    } else {
-                        objectPaint.setColor(Color.GREEN);
-                    }
-                    
-                    // Draw object bounding box
-                    canvas.drawRect(rect, objectPaint);
-                    
-                    // Draw object label with confidence
-                    String labelText = String.format("%s (%.0f%%)", label, confidence * 100);
-                    float textWidth = labelPaint.measureText(labelText);
-                    Rect labelRect = new Rect(left, Math.max(0, top - 40), 
-                                             left + (int)textWidth + 10, top);
-                    canvas.drawRect(labelRect, backgroundPaint);
-                    canvas.drawText(labelText, left + 5, top - 10, labelPaint);
+                    Detection object = new Detection(label, (float) detection.getDouble("confidence"),
+                        left, top, right, bottom);
+                    object.setSideCode(DetectionBatch.sideCode(detection.optString("side", "center")));
+                    object.setDistanceCode(DetectionBatch.distanceCode(detection.optString("distance", "mid")));
+                    objects.add(object);
                 }
             }
         } catch (JSONException e) {
             e.printStackTrace();
         }
-        
-        return mutableBitmap;
+        OCRResult ocrResult = new OCRResult(textRegions, new ArrayList<OCRResult.TextRegion>(),
+            new ArrayList<OCRResult.TextRegion>());
+        return new ProcessingResult(resultId, savedInstanceState.getString(KEY_NARRATION),
+            savedInstanceState.getString(KEY_SUMMARY), bitmap, DetectionBatch.fromDetections(objects), ocrResult);
+    }
+    
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(KEY_NARRATION, narration);
+        outState.putString(KEY_SUMMARY, detectionsSummary.getText().toString());
+        if (result == null) {
+            return;
+        }
+        // The in-memory result does not survive process death; write it out once
+        if (imagePath == null) {
+            imagePath = saveBitmapToFile(result.getProcessedBitmap());
+        }
+        if (imagePath != null) {
+            outState.putString(KEY_IMAGE_PATH, imagePath);
+            outState.putString(KEY_DETECTIONS_JSON, result.getDetectedObjectsJson());
+        }
+    }
+    
+    private String saveBitmapToFile(Bitmap bitmap) {
+        if (bitmap == null) {
+            return null;
+        }
+        File imageFile = new File(getCacheDir(), "result_" + resultId + ".jpg");
+        try (FileOutputStream fos = new FileOutputStream(imageFile)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 85, fos);
+            return imageFile.getPath();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
     }
     
     private void playNarration() {
-        if (textToSpeech != null && narration != null && !narration.isEmpty()) {
+        if (textToSpeechReady && narration != null && !narration.isEmpty()) {
             textToSpeech.speak(narration, TextToSpeech.QUEUE_FLUSH, null, null);
         }
     }
@@ -199,6 +250,20 @@ public class ResultsActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (resultId != NarrationUpdates.NO_RESULT_ID) {
+            NarrationUpdates.unsubscribe(resultId);
+        }
+        if (isFinishing()) {
+            // Done with this result: free its memory and its disk copy
+            ResultStore.getInstance().remove(resultId);
+            if (result != null) {
+                capturedImage.setImageDrawable(null);
+                BitmapPool.getInstance().release(result.getProcessedBitmap());
+            }
+            if (imagePath != null && !new File(imagePath).delete()) {
+                android.util.Log.w("ResultsActivity", "Could not delete " + imagePath);
+            }
+        }
         if (textToSpeech != null) {
             textToSpeech.stop();
             textToSpeech.shutdown();
@@ -0,0 +1,222 @@
+package com.cs663.visionassist;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Cheap pre-inference check of whether a frame shows anything new.
+ *
+ * The frame's luma is reduced to a GRID_WIDTH x GRID_HEIGHT grid of block means (sampling a
+ * few pixels per block) and compared with the grid of the frame each stage last ran on. A
+ * block has changed when it differs by more than the block threshold after removing the
+ * global brightness shift, so auto-exposure adjustments do not count as change. Detection
+ * reruns when enough blocks changed; OCR reruns only when changed blocks touch the text
+ * found last time, or when a large part of the frame changed (new text may have appeared).
+ * Comparing against the grid of the last run rather than the previous frame means slow
+ * drift still adds up to a rerun.
+ *
+ * evaluate() returns the stages to run (RUN_DETECTION, RUN_OCR, both or neither) and
+ * assumes the caller runs them. Pure Java; one instance per frame source, not thread-safe.
+ */
+public class SceneChangeGate {
+    public static final int RUN_NONE = 0;
+    public static final int RUN_DETECTION = 1;
+    public static final int RUN_OCR = 2;
+    public static final int RUN_ALL = RUN_DETECTION | RUN_OCR;
+
+    public static final int GRID_WIDTH = 32;
+    public static final int GRID_HEIGHT = 24;
+    public static final int SAMPLES_PER_SIDE = 4; // per block, in each direction
+
+    public static final int DEFAULT_BLOCK_THRESHOLD = 12;          // luma levels
+    public static final float DEFAULT_CHANGED_FRACTION = 0.03f;    // of all blocks
+    private static final float OCR_RESCAN_FRACTION = 0.25f;        // rescan everywhere above this
+
+    private final int[] grid = new int[GRID_WIDTH * GRID_HEIGHT];
+    private final int[] detectionReference = new int[GRID_WIDTH * GRID_HEIGHT];
+    private final int[] ocrReference = new int[GRID_WIDTH * GRID_HEIGHT];
+    private final boolean[] textBlocks = new boolean[GRID_WIDTH * GRID_HEIGHT];
+    private boolean hasDetectionReference;
+    private boolean hasOcrReference;
+    private int blockThreshold;
+    private float changedFraction;
+
+    private long frames;
+    private long detectionSkipped;
+    private long ocrSkipped;
+    private long bothSkipped;
+
+    public SceneChangeGate() {
+        this(DEFAULT_BLOCK_THRESHOLD, DEFAULT_CHANGED_FRACTION);
+    }
+
+    /**
+     * @param blockThreshold  luma difference (0-255) at which a block counts as changed
+     * @param changedFraction fraction of changed blocks at which a stage reruns
+     */
+    public SceneChangeGate(int blockThreshold, float changedFraction) {
+        setSensitivity(blockThreshold, changedFraction);
+    }
+
+    /**
+     * Lower values make the gate rerun inference on smaller changes.
+     */
+    public void setSensitivity(int blockThreshold, float changedFraction) {
+        this.blockThreshold = blockThreshold;
+        this.changedFraction = changedFraction;
+    }
+
+    /**
+     * Gate for a Y plane (e.g. plane 0 of a YUV_420_888 ImageProxy).
+     */
+    public int evaluate(ByteBuffer yPlane, int rowStride, int pixelStride, int width, int height) {
+        for (int gy = 0; gy < GRID_HEIGHT; gy++) {
+            for (int gx = 0; gx < GRID_WIDTH; gx++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_SIDE; sy++) {
+                    int y = sampleCoordinate(gy, sy, height, GRID_HEIGHT);
+                    int rowStart = y * rowStride;
+                    for (int sx = 0; sx < SAMPLES_PER_SIDE; sx++) {
+                        int x = sampleCoordinate(gx, sx, width, GRID_WIDTH);
+                        sum += yPlane.get(rowStart + x * pixelStride) & 0xFF;
+                    }
+                }
+                grid[gy * GRID_WIDTH + gx] = sum / (SAMPLES_PER_SIDE * SAMPLES_PER_SIDE);
+            }
+        }
+        return decide();
+    }
+
+    /**
+     * Gate for ARGB pixels (e.g. from Bitmap.getPixels()), row stride = width.
+     */
+    public int evaluate(int[] argb, int width, int height) {
+        for (int gy = 0; gy < GRID_HEIGHT; gy++) {
+            for (int gx = 0; gx < GRID_WIDTH; gx++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_SIDE; sy++) {
+                    int rowStart = sampleCoordinate(gy, sy, height, GRID_HEIGHT) * width;
+                    for (int sx = 0; sx < SAMPLES_PER_SIDE; sx++) {
+                        int pixel = argb[rowStart + sampleCoordinate(gx, sx, width, GRID_WIDTH)];
+                        sum += (((pixel >> 16) & 0xFF) * 77 + ((pixel >> 8) & 0xFF) * 150 + (pixel & 0xFF) * 29) >> 8;
+                    }
+                }
+                grid[gy * GRID_WIDTH + gx] = sum / (SAMPLES_PER_SIDE * SAMPLES_PER_SIDE);
+            }
+        }
+        return decide();
+    }
+
+    /**
+     * Marks where the last OCR pass found text, in frame pixels; OCR reruns when those
+     * blocks change.
+     */
+    public void setTextRegions(List<OCRResult.TextRegion> regions, int width, int height) {
+        java.util.Arrays.fill(textBlocks, false);
+        for (OCRResult.TextRegion region : regions) {
+            int left = clamp(region.getLeft() * GRID_WIDTH / width, GRID_WIDTH);
+            int right = clamp((region.getRight() - 1) * GRID_WIDTH / width, GRID_WIDTH);
+            int top = clamp(region.getTop() * GRID_HEIGHT / height, GRID_HEIGHT);
+            int bottom = clamp((region.getBottom() - 1) * GRID_HEIGHT / height, GRID_HEIGHT);
+            for (int gy = top; gy <= bottom; gy++) {
+                for (int gx = left; gx <= right; gx++) {
+                    textBlocks[gy * GRID_WIDTH + gx] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the references, so the next frame runs every stage.
+     */
+    public void reset() {
+        hasDetectionReference = false;
+        hasOcrReference = false;
+        java.util.Arrays.fill(textBlocks, false);
+    }
+
+    private int decide() {
+        frames++;
+        int stages = RUN_NONE;
+
+        if (!hasDetectionReference || changedBlocks(detectionReference, null) >= changedFraction * grid.length) {
+            stages |= RUN_DETECTION;
+            System.arraycopy(grid, 0, detectionReference, 0, grid.length);
+            hasDetectionReference = true;
+        }
+
+        boolean rescanOcr = !hasOcrReference;
+        if (!rescanOcr) {
+            int changed = changedBlocks(ocrReference, null);
+            rescanOcr = changed >= OCR_RESCAN_FRACTION * grid.length
+                || (changed >= changedFraction * grid.length && changedBlocks(ocrReference, textBlocks) > 0);
+        }
+        if (rescanOcr) {
+            stages |= RUN_OCR;
+            System.arraycopy(grid, 0, ocrReference, 0, grid.length);
+            hasOcrReference = true;
+        }
+
+        if ((stages & RUN_DETECTION) == 0) {
+            detectionSkipped++;
+        }
+        if ((stages & RUN_OCR) == 0) {
+            ocrSkipped++;
+        }
+        if (stages == RUN_NONE) {
+            bothSkipped++;
+        }
+        return stages;
+    }
+
+    /**
+     * Blocks (optionally only those in mask) that differ from reference by more than the
+     * threshold, after removing the mean difference (global brightness change).
+     */
+    private int changedBlocks(int[] reference, boolean[] mask) {
+        long totalDelta = 0;
+        for (int i = 0; i < grid.length; i++) {
+            totalDelta += grid[i] - reference[i];
+        }
+        int meanDelta = (int) (totalDelta / grid.length);
+        int changed = 0;
+        for (int i = 0; i < grid.length; i++) {
+            if ((mask == null || mask[i]) && Math.abs(grid[i] - reference[i] - meanDelta) > blockThreshold) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    // Samples are spread evenly inside the block, away from its edges
+    private static int sampleCoordinate(int block, int sample, int size, int blocks) {
+        long index = (long) block * SAMPLES_PER_SIDE + sample;
+        return (int) ((index * 2 + 1) * size / (2L * blocks * SAMPLES_PER_SIDE));
+    }
+
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public long getDetectionSkippedCount() {
+        return detectionSkipped;
+    }
+
+    public long getOcrSkippedCount() {
+        return ocrSkipped;
+    }
+
+    public long getBothSkippedCount() {
+        return bothSkipped;
+    }
+
+    public String getMetricsSummary() {
+        return String.format(Locale.US, "frames: %d, detection skipped: %d, ocr skipped: %d, both skipped: %d",
+            frames, detectionSkipped, ocrSkipped, bothSkipped);
+    }
+}
@@ -0,0 +1,130 @@
+package com.cs663.visionassist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Quantized description of a scene, used as the narration cache key.
+ *
+ * Two frames have the same signature when they contain the same multiset of
+ * (label, side, distance) tuples and the same normalized OCR text. Confidence and exact box
+ * coordinates are left out, so detector jitter while the user stands still does not change
+ * the key. An optional 64-bit difference hash (dHash) of the image is carried along but is
+ * not part of the key: NarrationCache compares it by Hamming distance to notice a changed
+ * scene that the detector summarizes the same way.
+ */
+public final class SceneSignature {
+    public static final long NO_IMAGE_HASH = 0;
+    public static final int HASH_WIDTH = 9;  // dHash compares 8 horizontal neighbours per row
+    public static final int HASH_HEIGHT = 8;
+
+    private final String key;
+    private final long imageHash;
+
+    private SceneSignature(String key, long imageHash) {
+        this.key = key;
+        this.imageHash = imageHash;
+    }
+
+    public static SceneSignature of(List<Detection> detections, OCRResult ocrResult, long imageHash) {
+        List<String> tuples = new ArrayList<>(detections.size());
+        for (Detection detection : detections) {
+            tuples.add(detection.getLabel() + "|" + detection.getSide() + "|" + detection.getDistance());
+        }
+        Collections.sort(tuples);
+
+        StringBuilder key = new StringBuilder();
+        for (String tuple : tuples) {
+            key.append(tuple).append(';');
+        }
+        key.append("#text:");
+        for (String text : ocrResult.getTexts()) {
+            String normalized = normalizeText(text);
+            if (!normalized.isEmpty()) {
+                key.append(normalized).append(';');
+            }
+        }
+        return new SceneSignature(key.toString(), imageHash);
+    }
+
+    /**
+     * Lower-cases, drops punctuation and collapses whitespace, so OCR noise such as a stray
+     * period or line break does not produce a new signature.
+     */
+    static String normalizeText(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                normalized.append(c);
+                pendingSpace = false;
+            } else if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Difference hash of a HASH_WIDTH x HASH_HEIGHT ARGB thumbnail: one bit per horizontally
+     * adjacent pixel pair, set when the left pixel is brighter.
+     */
+    public static long dHash(int[] argbThumbnail) {
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                int left = luma(argbThumbnail[y * HASH_WIDTH + x]);
+                int right = luma(argbThumbnail[y * HASH_WIDTH + x + 1]);
+                hash = (hash << 1) | (left > right ? 1 : 0);
+            }
+        }
+        // Keep NO_IMAGE_HASH free to mean "no hash"
+        return hash == NO_IMAGE_HASH ? 1 : hash;
+    }
+
+    private static int luma(int argb) {
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        return (r * 77 + g * 150 + b * 29) >> 8;
+    }
+
+    /**
+     * Number of differing bits between two image hashes, or 0 if either is NO_IMAGE_HASH.
+     */
+    public static int imageDistance(long hash, long otherHash) {
+        if (hash == NO_IMAGE_HASH || otherHash == NO_IMAGE_HASH) {
+            return 0;
+        }
+        return Long.bitCount(hash ^ otherHash);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getImageHash() {
+        return imageHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SceneSignature && key.equals(((SceneSignature) o).key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
@@ -8,35 +8,52 @@ public class SpatialAnalyzer {
     private static final float FAR_THRESHOLD = 0.1f; // Objects taking <10% of image height are far
     
     public List<Detection> analyze(List<Detection> detections, int imageWidth, int imageHeight) {
-        int centerX = imageWidth / 2;
-        
         for (Detection detection : detections) {
-            // Determine side (left, center, right)
-            int detectionCenterX = detection.getCenterX();
-            float relativeX = (float)(detectionCenterX - centerX) / centerX;
-            
-            if (Math.abs(relativeX) <= CENTER_BAND) {
-                detection.setSide("center");
-            } else if (relativeX < 0) {
-                detection.setSide("left");
-            } else {
-                detection.setSide("right");
-            }
-            
-            // Determine distance (near, mid, far)
-            float heightRatio = (float) detection.getHeight() / imageHeight;
-            
-            if (heightRatio >= NEAR_THRESHOLD) {
-                detection.setDistance("near");
-            } else if (heightRatio <= FAR_THRESHOLD) {
-                detection.setDistance("far");
-            } else {
-                detection.setDistance("mid");
-            }
+            detection.setSideCode(sideOf(detection.getCenterX(), imageWidth));
+            detection.setDistanceCode(distanceOf(detection.getHeight(), imageHeight));
+        }
+        
+        return detections;
+    }
+    
+    /**
+     * Primitive variant: writes side/distance codes into the batch in place.
+     */
+    public DetectionBatch analyze(DetectionBatch detections, int imageWidth, int imageHeight) {
+        for (int i = 0; i < detections.size(); i++) {
+            detections.setSide(i, sideOf(detections.getCenterX(i), imageWidth));
+            detections.setDistance(i, distanceOf(detections.getHeight(i), imageHeight));
         }
         
         return detections;
     }
+    
+    private static byte sideOf(float detectionCenterX, int imageWidth) {
+        // Determine side (left, center, right)
+        int centerX = imageWidth / 2;
+        float relativeX = (detectionCenterX - centerX) / centerX;
+        
+        if (Math.abs(relativeX) <= CENTER_BAND) {
+            return DetectionBatch.SIDE_CENTER;
+        } else if (relativeX < 0) {
+            return DetectionBatch.SIDE_LEFT;
+        } else {
+            return DetectionBatch.SIDE_RIGHT;
+        }
+    }
+    
+    private static byte distanceOf(float detectionHeight, int imageHeight) {
+        // Determine distance (near, mid, far)
+        float heightRatio = detectionHeight / imageHeight;
+        
+        if (heightRatio >= NEAR_THRESHOLD) {
+            return DetectionBatch.DISTANCE_NEAR;
+        } else if (heightRatio <= FAR_THRESHOLD) {
+            return DetectionBatch.DISTANCE_FAR;
+        } else {
+            return DetectionBatch.DISTANCE_MID;
+        }
+    }
 }
 
 
@@ -0,0 +1,254 @@
+package com.cs663.visionassist;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+/**
+ * Continuous scene analysis for walking navigation.
+ *
+ * Bound to a CameraX ImageAnalysis use case with STRATEGY_KEEP_ONLY_LATEST, so frames that
+ * arrive while a frame is being analyzed are dropped by CameraX instead of queueing.
+ * Frames arriving faster than the target FPS are dropped here. Each accepted frame runs
+ * through detect -> ObjectTracker -> SpatialAnalyzer -> NarrationGenerator, and the listener
+ * receives the narration together with achieved FPS and per-stage latency. The detector runs
+ * only every DETECTION_INTERVAL frames; the tracker extrapolates boxes in between. Before a
+ * detector run, SceneChangeGate compares the frame's luma with the last detected frame; when
+ * nothing changed the frame is neither converted nor detected, and the previous result is
+ * reported again. FrameQualityGate then scores the frame: a blurred, dark or over-exposed
+ * frame defers the detector run by a frame, up to BURST_SIZE frames, after which the
+ * sharpest frame of the burst is detected. Only frames sharper than the burst's best so far
+ * are converted, so the converter's reused bitmap always holds the best one.
+ */
+public class StreamingAnalyzer implements ImageAnalysis.Analyzer {
+    private static final float SMOOTHING = 0.2f; // weight of the newest sample in moving averages
+    private static final int DETECTION_INTERVAL = 3; // run the detector every 3rd frame, track in between
+    private static final int BURST_SIZE = 3; // frames a detector run may wait for a good frame
+
+    public interface FrameConverter {
+        /** The returned bitmap only has to stay valid until the next call. */
+        Bitmap convert(ImageProxy imageProxy);
+    }
+
+    public interface Listener {
+        /** Called on the analysis thread after every analyzed frame. */
+        void onFrameAnalyzed(String narration, DetectionBatch detections, Stats stats);
+    }
+
+    /**
+     * Snapshot of streaming performance. Latencies are exponential moving averages in ms.
+     */
+    public static class Stats {
+        private final float fps;
+        private final float convertMs;
+        private final float detectMs;
+        private final float analyzeMs;
+        private final float narrateMs;
+        private final long framesAnalyzed;
+        private final long framesDropped;
+        private final long framesUnchanged;
+        private final long framesLowQuality;
+
+        Stats(float fps, float convertMs, float detectMs, float analyzeMs, float narrateMs,
+              long framesAnalyzed, long framesDropped, long framesUnchanged, long framesLowQuality) {
+            this.fps = fps;
+            this.convertMs = convertMs;
+            this.detectMs = detectMs;
+            this.analyzeMs = analyzeMs;
+            this.narrateMs = narrateMs;
+            this.framesAnalyzed = framesAnalyzed;
+            this.framesDropped = framesDropped;
+            this.framesUnchanged = framesUnchanged;
+            this.framesLowQuality = framesLowQuality;
+        }
+
+        public float getFps() { return fps; }
+        public float getConvertMs() { return convertMs; }
+        public float getDetectMs() { return detectMs; }
+        public float getAnalyzeMs() { return analyzeMs; }
+        public float getNarrateMs() { return narrateMs; }
+        public long getFramesAnalyzed() { return framesAnalyzed; }
+        public long getFramesDropped() { return framesDropped; }
+        /** Frames where the detector was skipped because the scene had not changed. */
+        public long getFramesUnchanged() { return framesUnchanged; }
+        /** Frames the quality gate rejected as blurred, dark or over-exposed. */
+        public long getFramesLowQuality() { return framesLowQuality; }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.US,
+                "%.1f fps | convert %.0f ms, detect %.0f ms, analyze %.0f ms, narrate %.0f ms",
+                fps, convertMs, detectMs, analyzeMs, narrateMs);
+        }
+    }
+
+    private final Context context;
+    private final FrameConverter converter;
+    private final Listener listener;
+    private final SpatialAnalyzer spatialAnalyzer = new SpatialAnalyzer();
+    private final ObjectTracker tracker = new ObjectTracker(DETECTION_INTERVAL);
+    // Reused every frame: the whole detect -> track -> analyze -> narrate chain is primitive
+    private final DetectionBatch rawDetections = new DetectionBatch(16);
+    private final DetectionBatch trackedDetections = new DetectionBatch(16);
+    private final SceneChangeGate sceneGate = new SceneChangeGate();
+    private final FrameQualityGate qualityGate = new FrameQualityGate();
+    private final long minFrameIntervalNanos;
+
+    // Only touched from the single analysis thread
+    private long lastAcceptedNanos;
+    private long lastCompletedNanos;
+    private long framesAnalyzed;
+    private long framesDropped;
+    private long framesUnchanged;
+    private long framesLowQuality;
+    private int burstLength;          // frames the pending detector run has waited so far
+    private Bitmap burstBest;         // sharpest frame of the burst, converted
+    private float burstBestSharpness;
+    private String lastNarration;
+    private int frameWidth;
+    private int frameHeight;
+    private float fps;
+    private float convertMs;
+    private float detectMs;
+    private float analyzeMs;
+    private float narrateMs;
+
+    public StreamingAnalyzer(Context context, float targetFps, FrameConverter converter,
+                             Listener listener) {
+        this.context = context.getApplicationContext();
+        this.converter = converter;
+        this.listener = listener;
+        this.minFrameIntervalNanos = (long) (1_000_000_000L / targetFps);
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy imageProxy) {
+        long frameStart = System.nanoTime();
+        boolean runDetector;
+        boolean unchanged = false;
+        Bitmap bitmap = null;
+        try {
+            // Drop frames that arrive faster than the target FPS
+            if (lastAcceptedNanos != 0 && frameStart - lastAcceptedNanos < minFrameIntervalNanos) {
+                framesDropped++;
+                return;
+            }
+            lastAcceptedNanos = frameStart;
+            // Between detector runs the tracker extrapolates, so the frame is not even converted
+            runDetector = tracker.shouldDetect() || burstLength > 0;
+            if (runDetector && burstLength == 0 && !sceneChanged(imageProxy) && lastNarration != null) {
+                runDetector = false;
+                unchanged = true;
+            }
+            if (runDetector) {
+                bitmap = selectFrame(imageProxy);
+                runDetector = bitmap != null || burstLength == 0;
+            }
+        } finally {
+            imageProxy.close(); // Release the frame to CameraX as early as possible
+        }
+        if (runDetector && bitmap == null) {
+            framesDropped++;
+            return;
+        }
+        if (unchanged) {
+            // Same scene as the last detector run: its tracked objects and narration still hold.
+            // The tracker is not advanced, so the next frame checks the gate again.
+            framesUnchanged++;
+            framesAnalyzed++;
+            lastCompletedNanos = System.nanoTime();
+            listener.onFrameAnalyzed(lastNarration, trackedDetections, new Stats(fps, convertMs,
+                detectMs, analyzeMs, narrateMs, framesAnalyzed, framesDropped, framesUnchanged,
+                framesLowQuality));
+            return;
+        }
+
+        long converted = System.nanoTime();
+        DetectionBatch detections;
+        if (runDetector) {
+            frameWidth = bitmap.getWidth();
+            frameHeight = bitmap.getHeight();
+            InferenceEngine.getInstance().detect(context, bitmap, rawDetections);
+            detections = tracker.update(rawDetections, trackedDetections);
+        } else {
+            detections = tracker.predict(trackedDetections);
+        }
+        long detected = System.nanoTime();
+        spatialAnalyzer.analyze(detections, frameWidth, frameHeight);
+        long analyzed = System.nanoTime();
+        String narration = NarrationGenerator.generate(detections, OCRResult.EMPTY);
+        long narrated = System.nanoTime();
+        lastNarration = narration;
+
+        if (runDetector) {
+            convertMs = smooth(convertMs, converted - frameStart);
+            detectMs = smooth(detectMs, detected - converted);
+        }
+        analyzeMs = smooth(analyzeMs, analyzed - detected);
+        narrateMs = smooth(narrateMs, narrated - analyzed);
+        if (lastCompletedNanos != 0) {
+            float instantFps = 1_000_000_000f / (narrated - lastCompletedNanos);
+            fps = fps == 0 ? instantFps : fps + SMOOTHING * (instantFps - fps);
+        }
+        lastCompletedNanos = narrated;
+        framesAnalyzed++;
+
+        listener.onFrameAnalyzed(narration, detections, new Stats(fps, convertMs, detectMs,
+            analyzeMs, narrateMs, framesAnalyzed, framesDropped, framesUnchanged, framesLowQuality));
+    }
+
+    /**
+     * The frame to run the detector on, or null to defer the run to the next frame. A good
+     * frame is taken right away; otherwise the burst goes on until BURST_SIZE frames, keeping
+     * the sharpest one. Formats without a Y plane are not scored.
+     */
+    private Bitmap selectFrame(ImageProxy imageProxy) {
+        if (imageProxy.getFormat() != ImageFormat.YUV_420_888) {
+            burstLength = 0;
+            return converter.convert(imageProxy);
+        }
+        ImageProxy.PlaneProxy luma = imageProxy.getPlanes()[0];
+        int verdict = qualityGate.evaluate(luma.getBuffer(), luma.getRowStride(), luma.getPixelStride(),
+            imageProxy.getWidth(), imageProxy.getHeight());
+        Bitmap selected;
+        if (verdict == FrameQualityGate.OK) {
+            selected = converter.convert(imageProxy);
+        } else {
+            framesLowQuality++;
+            if (burstLength == 0 || qualityGate.getSharpness() > burstBestSharpness) {
+                burstBest = converter.convert(imageProxy);
+                burstBestSharpness = qualityGate.getSharpness();
+            }
+            if (++burstLength < BURST_SIZE) {
+                return null;
+            }
+            selected = burstBest;
+        }
+        burstLength = 0;
+        burstBest = null;
+        return selected;
+    }
+
+    /**
+     * Runs the scene-change gate on the Y plane. Streaming has no OCR stage, so only the
+     * detection decision matters. Formats without a Y plane always count as changed.
+     */
+    private boolean sceneChanged(ImageProxy imageProxy) {
+        if (imageProxy.getFormat() != ImageFormat.YUV_420_888) {
+            return true;
+        }
+        ImageProxy.PlaneProxy luma = imageProxy.getPlanes()[0];
+        int stages = sceneGate.evaluate(luma.getBuffer(), luma.getRowStride(), luma.getPixelStride(),
+            imageProxy.getWidth(), imageProxy.getHeight());
+        return (stages & SceneChangeGate.RUN_DETECTION) != 0;
+    }
+
+    private static float smooth(float average, long sampleNanos) {
+        float sampleMs = sampleNanos / 1_000_000f;
+        return average == 0 ? sampleMs : average + SMOOTHING * (sampleMs - average);
+    }
+}
@@ -0,0 +1,88 @@
+package com.cs663.visionassist;
+
+/**
+ * Splits a frame into overlapping tiles for tiled detection.
+ *
+ * The detector shrinks the whole frame to its small input, so far-away objects end up a
+ * few pixels tall. Running it on tiles as well gives every tile the full input resolution.
+ * Grids go from 2x1 up to 4x3 (columns along the longer side); plan() picks the largest
+ * grid the tile budget allows whose tiles are still at least minTileSize on each side -
+ * smaller tiles would be upscaled into the input and add no detail. Adjacent tiles overlap
+ * by a fraction of the tile size, so an object on a seam is whole in at least one tile.
+ * Pure Java.
+ */
+public final class TilePlanner {
+    public static final float DEFAULT_OVERLAP = 0.2f;
+
+    // columns x rows for a landscape frame, by tile count
+    private static final int[][] GRIDS = {{2, 1}, {2, 2}, {3, 2}, {3, 3}, {4, 3}};
+
+    private TilePlanner() {
+    }
+
+    /**
+     * Tiles that fit in the latency budget next to the global pass, when passes run
+     * parallelism at a time and each takes passMs.
+     */
+    public static int affordableTiles(long budgetMs, float passMs, int parallelism) {
+        if (passMs <= 0) {
+            return 0;
+        }
+        int rounds = (int) (budgetMs / passMs);
+        return Math.max(0, rounds * parallelism - 1);
+    }
+
+    /**
+     * Tile rectangles for a width x height frame, packed as left, top, right, bottom per
+     * tile; empty when no grid fits maxTiles and minTileSize.
+     */
+    public static int[] plan(int width, int height, int maxTiles, int minTileSize, float overlap) {
+        boolean landscape = width >= height;
+        int columns = 0;
+        int rows = 0;
+        for (int[] grid : GRIDS) {
+            int c = landscape ? grid[0] : grid[1];
+            int r = landscape ? grid[1] : grid[0];
+            if (c * r > maxTiles || tileSize(width, c, overlap) < minTileSize
+                    || tileSize(height, r, overlap) < minTileSize) {
+                break;
+            }
+            columns = c;
+            rows = r;
+        }
+        if (columns == 0) {
+            return new int[0];
+        }
+        int tileWidth = tileSize(width, columns, overlap);
+        int tileHeight = tileSize(height, rows, overlap);
+        int[] tiles = new int[columns * rows * 4];
+        int t = 0;
+        for (int row = 0; row < rows; row++) {
+            int top = tileStart(row, rows, height, tileHeight);
+            for (int column = 0; column < columns; column++) {
+                int left = tileStart(column, columns, width, tileWidth);
+                tiles[t++] = left;
+                tiles[t++] = top;
+                tiles[t++] = left + tileWidth;
+                tiles[t++] = top + tileHeight;
+            }
+        }
+        return tiles;
+    }
+
+    // n tiles overlapping by a fraction of their size cover size: n * tile - (n - 1) * overlap * tile
+    private static int tileSize(int size, int count, float overlap) {
+        if (count == 1) {
+            return size;
+        }
+        return (int) Math.ceil(size / (count - (count - 1) * overlap));
+    }
+
+    // Evenly spaced, the last tile flush with the far edge
+    private static int tileStart(int index, int count, int size, int tileSize) {
+        if (count == 1) {
+            return 0;
+        }
+        return (int) ((long) index * (size - tileSize) / (count - 1));
+    }
+}
@@ -0,0 +1,164 @@
+package com.cs663.visionassist;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional tiled detection for captures, to find small, far-away objects.
+ *
+ * Besides the usual global pass over the whole frame, the detector runs on overlapping
+ * tiles of the full-resolution source (see TilePlanner), each scaled to the model input on
+ * its own. The passes run in parallel on the pooled detectors, so the number of tiles comes
+ * from the latency budget and the measured time of one pass. Tiles only contribute objects
+ * smaller than half a tile - larger ones are the global pass's job, and a tile sees only
+ * part of them. The results are merged with class-aware NMS, whose containment test also
+ * drops partial boxes from tile seams.
+ *
+ * Off by default: a capture costs (1 + tiles) detector passes.
+ */
+public class TiledDetector {
+    private static final String TAG = "TiledDetector";
+    private static final long DEFAULT_LATENCY_BUDGET_MS = 600;
+    private static final float MAX_TILE_OBJECT_FRACTION = 0.5f;
+
+    private static final ExecutorService TILE_EXECUTOR = createExecutor();
+
+    private static volatile boolean enabled = false;
+    private static volatile long latencyBudgetMs = DEFAULT_LATENCY_BUDGET_MS;
+
+    private static final AtomicLong tiledFrames = new AtomicLong();
+    private static final AtomicLong tilesRun = new AtomicLong();
+    private static final AtomicLong tileDetections = new AtomicLong(); // net objects added to the global pass
+
+    private static ExecutorService createExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(InferenceEngine.POOL_SIZE,
+            runnable -> new Thread(runnable, "TileDetector-" + threadCount.incrementAndGet()));
+    }
+
+    public static void setEnabled(boolean enabled) {
+        TiledDetector.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Time a tiled capture may spend on detection; decides how many tiles run.
+     */
+    public static void setLatencyBudgetMs(long budgetMs) {
+        latencyBudgetMs = budgetMs;
+    }
+
+    /**
+     * Detects on the whole source plus as many tiles as the budget allows. Boxes are
+     * scaled by outputScale, e.g. into the coordinates of a resized copy of the source.
+     */
+    public static List<Detection> detect(Context context, Bitmap source, float outputScale) {
+        InferenceEngine engine = InferenceEngine.getInstance();
+        long start = System.nanoTime();
+        long budgetMs = latencyBudgetMs;
+
+        // Before the first pass is measured only the global pass runs
+        int maxTiles = TilePlanner.affordableTiles(budgetMs, engine.estimateDetectLatencyMs(),
+            InferenceEngine.POOL_SIZE);
+        int[] tiles = TilePlanner.plan(source.getWidth(), source.getHeight(), maxTiles,
+            engine.getDetectorInputSize(), TilePlanner.DEFAULT_OVERLAP);
+        int tileCount = tiles.length / 4;
+
+        // A tile that misses the deadline still reads the source, so each keeps it retained
+        BitmapPool pool = BitmapPool.getInstance();
+        List<Future<DetectionBatch>> tileFutures = new ArrayList<>(tileCount);
+        for (int t = 0; t < tileCount; t++) {
+            Rect region = new Rect(tiles[4 * t], tiles[4 * t + 1], tiles[4 * t + 2], tiles[4 * t + 3]);
+            pool.retain(source);
+            tileFutures.add(TILE_EXECUTOR.submit(() -> {
+                try {
+                    DetectionBatch batch = new DetectionBatch(16);
+                    engine.detect(context, source, region, batch);
+                    return batch;
+                } finally {
+                    pool.release(source);
+                }
+            }));
+        }
+        DetectionBatch global = new DetectionBatch(16);
+        engine.detect(context, source, null, global);
+
+        DetectionBatch merged = new DetectionBatch(16);
+        merged.reset(global.getLabels());
+        addScaled(global, merged, outputScale, Float.MAX_VALUE, Float.MAX_VALUE);
+        int globalCount = merged.size();
+        // Tiles still running when the budget is spent are dropped rather than holding up the capture
+        long deadlineNanos = start + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        int completed = 0;
+        for (int t = 0; t < tileCount; t++) {
+            DetectionBatch batch = await(tileFutures.get(t), deadlineNanos);
+            // Pooled detectors of one model share its label table; different labels mean the
+            // model was switched in between
+            if (batch == null || !batch.getLabels().equals(merged.getLabels())) {
+                continue;
+            }
+            completed++;
+            addScaled(batch, merged, outputScale,
+                (tiles[4 * t + 2] - tiles[4 * t]) * MAX_TILE_OBJECT_FRACTION,
+                (tiles[4 * t + 3] - tiles[4 * t + 1]) * MAX_TILE_OBJECT_FRACTION);
+        }
+
+        DetectionBatch result = new NonMaxSuppression().run(merged, new DetectionBatch(merged.size()));
+        tiledFrames.incrementAndGet();
+        tilesRun.addAndGet(completed);
+        tileDetections.addAndGet(Math.max(0, result.size() - globalCount));
+        Log.d(TAG, completed + "/" + tileCount + " tiles, " + global.size() + " global + "
+            + (merged.size() - globalCount) + " tile boxes -> " + result.size() + " in "
+            + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return result.toDetections();
+    }
+
+    // Adds the boxes of batch no larger than maxWidth x maxHeight source pixels, scaled
+    private static void addScaled(DetectionBatch batch, DetectionBatch out, float scale,
+                                  float maxWidth, float maxHeight) {
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getWidth(i) > maxWidth || batch.getHeight(i) > maxHeight) {
+                continue;
+            }
+            out.add(batch.getClassId(i), batch.getConfidence(i),
+                batch.getLeft(i) * scale, batch.getTop(i) * scale,
+                batch.getRight(i) * scale, batch.getBottom(i) * scale);
+        }
+    }
+
+    private static DetectionBatch await(Future<DetectionBatch> future, long deadlineNanos) {
+        try {
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Not cancelled: the task still has to release the source
+            Log.w(TAG, "Tile missed the deadline");
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Tile failed: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    public static String getMetricsSummary() {
+        long frames = tiledFrames.get();
+        return String.format(java.util.Locale.US, "tiled frames: %d, tiles/frame: %.1f, objects added by tiles: %d",
+            frames, frames == 0 ? 0f : (float) tilesRun.get() / frames, tileDetections.get());
+    }
+}
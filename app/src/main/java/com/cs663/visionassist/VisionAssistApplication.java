@@ -0,0 +1,36 @@
+package com.cs663.visionassist;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+/**
+ * Application entry point. Warms up the shared InferenceEngine in the background so the
+ * first capture does not pay for model loading, and releases it (along with stored results
+ * and pooled bitmaps) under memory pressure.
+ */
+public class VisionAssistApplication extends Application {
+    private static final String TAG = "VisionAssistApp";
+    
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        new Thread(() -> {
+            InferenceEngine.getInstance().init(this);
+            Log.d(TAG, "Inference engine ready: " + InferenceEngine.getInstance().getMetricsSummary());
+        }, "InferenceEngineInit").start();
+    }
+    
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Release native interpreters once the UI is hidden or the system is running low;
+        // the engine re-initializes lazily on the next capture.
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            Log.d(TAG, "Trim memory (level " + level + "), closing inference engine");
+            InferenceEngine.getInstance().close();
+        }
+        ResultStore.getInstance().onTrimMemory(level);
+        BitmapPool.getInstance().onTrimMemory(level);
+    }
+}
@@ -0,0 +1,180 @@
+package com.cs663.visionassist;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs object detection and OCR for one frame in parallel.
+ *
+ * Detection and OCR are independent, so they are forked onto a small bounded executor
+ * and joined with a per-stage deadline. Spatial analysis is chained directly onto the
+ * detection stage and starts as soon as detection finishes, without waiting for OCR.
+ * End-to-end latency is roughly max(detect, ocr) instead of their sum. A stage the
+ * SceneChangeGate found unnecessary is not run at all; its result is carried over from the
+ * previous output.
+ */
+public class VisionPipeline {
+    private static final String TAG = "VisionPipeline";
+    private static final long DETECTION_DEADLINE_MS = 3000;
+    private static final long OCR_DEADLINE_MS = 3000;
+    private static final int THREAD_COUNT = 2; // one detection + one OCR stage in flight
+    private static final int QUEUE_CAPACITY = 4;
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    public static class Output {
+        private final List<Detection> detections;
+        private final OCRResult ocrResult;
+        private final long detectionMs;
+        private final long ocrMs;
+        private final long totalMs;
+
+        Output(List<Detection> detections, OCRResult ocrResult,
+               long detectionMs, long ocrMs, long totalMs) {
+            this.detections = detections;
+            this.ocrResult = ocrResult;
+            this.detectionMs = detectionMs;
+            this.ocrMs = ocrMs;
+            this.totalMs = totalMs;
+        }
+
+        /**
+         * Detections with side and distance already assigned by SpatialAnalyzer.
+         */
+        public List<Detection> getDetections() {
+            return detections;
+        }
+
+        public OCRResult getOcrResult() {
+            return ocrResult;
+        }
+
+        /** Detection + spatial analysis time, 0 if skipped, or -1 if the stage missed its deadline. */
+        public long getDetectionMs() {
+            return detectionMs;
+        }
+
+        /** OCR time, 0 if skipped, or -1 if the stage missed its deadline. */
+        public long getOcrMs() {
+            return ocrMs;
+        }
+
+        public long getTotalMs() {
+            return totalMs;
+        }
+    }
+
+    private static ExecutorService createExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        // Bounded queue; when saturated the caller runs the stage itself rather than queueing more
+        return new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+            runnable -> new Thread(runnable, "VisionPipeline-" + threadCount.incrementAndGet()),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static Output run(Context context, Bitmap bitmap) {
+        return run(context, bitmap, SceneChangeGate.RUN_ALL, null);
+    }
+
+    /**
+     * Runs only the given stages (SceneChangeGate.RUN_* flags); the others reuse the result
+     * in previous, which must be non-null if any stage is skipped.
+     */
+    public static Output run(Context context, Bitmap bitmap, int stages, Output previous) {
+        return run(context, bitmap, bitmap, stages, previous);
+    }
+
+    /**
+     * As above, with a higher-resolution original of bitmap that tiled detection (when
+     * enabled) reads its tiles from; boxes are still in bitmap coordinates.
+     */
+    public static Output run(Context context, Bitmap bitmap, Bitmap original, int stages, Output previous) {
+        if (previous == null) {
+            stages = SceneChangeGate.RUN_ALL;
+        }
+        if ((stages & SceneChangeGate.RUN_DETECTION) == 0 && (stages & SceneChangeGate.RUN_OCR) == 0) {
+            Log.d(TAG, "Scene unchanged, reusing previous detections and text");
+            return new Output(new ArrayList<>(previous.getDetections()), previous.getOcrResult(), 0, 0, 0);
+        }
+        final InferenceEngine engine = InferenceEngine.getInstance();
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final long start = System.nanoTime();
+        final long[] stageEnd = new long[2];
+
+        // Fork: detection (+ spatial analysis as soon as it completes) and OCR
+        boolean runDetection = (stages & SceneChangeGate.RUN_DETECTION) != 0;
+        boolean runOcr = (stages & SceneChangeGate.RUN_OCR) != 0;
+        CompletableFuture<List<Detection>> detectionFuture;
+        if (runDetection) {
+            detectionFuture = CompletableFuture
+                .supplyAsync(() -> TiledDetector.isEnabled()
+                    ? TiledDetector.detect(context, original, (float) width / original.getWidth())
+                    : engine.detect(context, bitmap), EXECUTOR)
+                .thenApply(detections -> {
+                    List<Detection> analyzed = new SpatialAnalyzer().analyze(detections, width, height);
+                    stageEnd[0] = System.nanoTime();
+                    return analyzed;
+                });
+        } else {
+            stageEnd[0] = start;
+            detectionFuture = CompletableFuture.completedFuture(
+                (List<Detection>) new ArrayList<>(previous.getDetections()));
+        }
+        CompletableFuture<OCRResult> ocrFuture;
+        if (runOcr) {
+            ocrFuture = CompletableFuture
+                .supplyAsync(() -> {
+                    OCRResult result = engine.recognizeText(context, bitmap, OCR_DEADLINE_MS);
+                    stageEnd[1] = System.nanoTime();
+                    return result;
+                }, EXECUTOR);
+        } else {
+            stageEnd[1] = start;
+            ocrFuture = CompletableFuture.completedFuture(previous.getOcrResult());
+        }
+
+        // Join with per-stage deadlines measured from the fork
+        List<Detection> detections = join(detectionFuture, start, DETECTION_DEADLINE_MS,
+            new ArrayList<Detection>(), "detection");
+        OCRResult ocrResult = join(ocrFuture, start, OCR_DEADLINE_MS, OCRResult.EMPTY, "ocr");
+
+        long end = System.nanoTime();
+        long detectionMs = detectionFuture.isDone() && !detectionFuture.isCompletedExceptionally()
+            ? (stageEnd[0] - start) / 1_000_000 : -1;
+        long ocrMs = ocrFuture.isDone() && !ocrFuture.isCompletedExceptionally()
+            ? (stageEnd[1] - start) / 1_000_000 : -1;
+        long totalMs = (end - start) / 1_000_000;
+        Log.d(TAG, "detection " + detectionMs + " ms, ocr " + ocrMs + " ms, total " + totalMs + " ms");
+
+        return new Output(detections, ocrResult, detectionMs, ocrMs, totalMs);
+    }
+
+    private static <T> T join(CompletableFuture<T> future, long startNanos, long deadlineMs,
+                              T fallback, String stage) {
+        long remainingMs = deadlineMs - (System.nanoTime() - startNanos) / 1_000_000;
+        try {
+            return future.get(Math.max(0, remainingMs), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Stage '" + stage + "' missed its " + deadlineMs + " ms deadline");
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Stage '" + stage + "' failed: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,90 @@
+package com.cs663.visionassist;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pure-Java YUV_420_888 to ARGB conversion.
+ *
+ * Reads the Y, U and V planes directly, honouring each plane's row and pixel stride
+ * (so it works for both semi-planar NV21/NV12 layouts and fully planar I420), and
+ * writes rotated ARGB pixels in a single pass. No JPEG round-trip and no intermediate
+ * frame copies. Has no Android dependencies so it can run and be benchmarked on the JVM.
+ */
+public final class YuvConverter {
+
+    private YuvConverter() {
+    }
+
+    /**
+     * Width of the converted image after applying the rotation.
+     */
+    public static int rotatedWidth(int width, int height, int rotationDegrees) {
+        return rotationDegrees == 90 || rotationDegrees == 270 ? height : width;
+    }
+
+    /**
+     * Height of the converted image after applying the rotation.
+     */
+    public static int rotatedHeight(int width, int height, int rotationDegrees) {
+        return rotationDegrees == 90 || rotationDegrees == 270 ? width : height;
+    }
+
+    /**
+     * Converts a YUV_420_888 frame to ARGB_8888 pixels, rotated clockwise by rotationDegrees
+     * (0, 90, 180 or 270). Buffers are read with absolute gets, so their positions are untouched.
+     *
+     * @param out destination of at least width * height pixels, laid out with a row length of
+     *            rotatedWidth(width, height, rotationDegrees)
+     */
+    public static void yuvToArgb(ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                                 ByteBuffer uPlane, ByteBuffer vPlane,
+                                 int uvRowStride, int uvPixelStride,
+                                 int width, int height, int rotationDegrees, int[] out) {
+        if (out.length < width * height) {
+            throw new IllegalArgumentException("Output buffer too small: " + out.length
+                + " < " + (width * height));
+        }
+        for (int sy = 0; sy < height; sy++) {
+            int yRow = sy * yRowStride;
+            int uvRow = (sy >> 1) * uvRowStride;
+            for (int sx = 0; sx < width; sx++) {
+                int y = yPlane.get(yRow + sx * yPixelStride) & 0xFF;
+                int uvIndex = uvRow + (sx >> 1) * uvPixelStride;
+                int u = uPlane.get(uvIndex) & 0xFF;
+                int v = vPlane.get(uvIndex) & 0xFF;
+                out[destinationIndex(sx, sy, width, height, rotationDegrees)] = yuvToArgbPixel(y, u, v);
+            }
+        }
+    }
+
+    /**
+     * Index in the rotated output of source pixel (sx, sy).
+     */
+    static int destinationIndex(int sx, int sy, int width, int height, int rotationDegrees) {
+        switch (rotationDegrees) {
+            case 90:
+                return sx * height + (height - 1 - sy);
+            case 180:
+                return (height - 1 - sy) * width + (width - 1 - sx);
+            case 270:
+                return (width - 1 - sx) * height + sy;
+            default:
+                return sy * width + sx;
+        }
+    }
+
+    /**
+     * BT.601 full-range YUV to opaque ARGB, in 10-bit fixed point.
+     */
+    static int yuvToArgbPixel(int y, int u, int v) {
+        int d = u - 128;
+        int e = v - 128;
+        int r = y + ((1436 * e) >> 10);            // 1.402
+        int g = y - ((352 * d + 731 * e) >> 10);   // 0.344, 0.714
+        int b = y + ((1815 * d) >> 10);            // 1.772
+        r = r < 0 ? 0 : (r > 255 ? 255 : r);
+        g = g < 0 ? 0 : (g > 255 ? 255 : g);
+        b = b < 0 ? 0 : (b > 255 ? 255 : b);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+}
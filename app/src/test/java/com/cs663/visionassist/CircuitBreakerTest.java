@@ -0,0 +1,141 @@
+package com.cs663.visionassist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * CircuitBreaker state machine on a manual clock.
+ */
+public class CircuitBreakerTest {
+    private static final long LATENCY_THRESHOLD_MS = 1_000;
+    private static final long BASE_OPEN_MS = 10_000;
+    private static final long MAX_OPEN_MS = 35_000;
+
+    private long nowMs = 0;
+    private final CircuitBreaker breaker = new CircuitBreaker(0.5f, LATENCY_THRESHOLD_MS,
+        BASE_OPEN_MS, MAX_OPEN_MS, () -> nowMs);
+
+    private void call(boolean failure) {
+        assertTrue(breaker.allowRequest());
+        if (failure) {
+            breaker.recordFailure(100);
+        } else {
+            breaker.recordSuccess(100);
+        }
+    }
+
+    private void trip() {
+        for (int i = 0; i < 5; i++) {
+            call(true);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void failProbe() {
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure(100);
+    }
+
+    // Advances the clock to the end of the open period, checking it is exactly openMs long
+    private void assertOpenFor(long openMs) {
+        nowMs += openMs - 1;
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        nowMs += 1;
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void staysClosedBelowTheErrorRate() {
+        for (int i = 0; i < 10; i++) {
+            call(i % 3 == 0); // 4 of 10
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getTripCount());
+    }
+
+    @Test
+    public void tripsOnErrorRateAfterMinimumCalls() {
+        // Four failures are not enough calls to judge
+        for (int i = 0; i < 4; i++) {
+            call(true);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        call(true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertEquals(1, breaker.getShortCircuitedCount());
+    }
+
+    @Test
+    public void tripsOnP95LatencyOverAFullWindow() {
+        for (int i = 0; i < 19; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordSuccess(i < 2 ? 5_000 : 100);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess(100);
+        assertEquals(5_000, breaker.getP95LatencyMs());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenLetsOneProbeThrough() {
+        trip();
+        nowMs += BASE_OPEN_MS - 1;
+        assertFalse(breaker.allowRequest());
+
+        nowMs += 1;
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest()); // the probe is still in flight
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess(100);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0f, breaker.getErrorRate(), 0f);
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void slowProbeReopens() {
+        trip();
+        nowMs += BASE_OPEN_MS;
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess(LATENCY_THRESHOLD_MS + 1);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void failedProbesDoubleTheOpenPeriodUpToTheMaximum() {
+        trip();
+        assertOpenFor(BASE_OPEN_MS);
+        failProbe();
+        assertOpenFor(2 * BASE_OPEN_MS);
+        failProbe();
+        assertOpenFor(MAX_OPEN_MS); // 4x would be 40 s
+        failProbe();
+        assertOpenFor(MAX_OPEN_MS);
+        assertEquals(4, breaker.getTripCount());
+    }
+
+    @Test
+    public void successfulProbeResetsTheOpenPeriod() {
+        trip();
+        assertOpenFor(BASE_OPEN_MS);
+        failProbe();
+        assertOpenFor(2 * BASE_OPEN_MS);
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess(100);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        trip();
+        assertOpenFor(BASE_OPEN_MS);
+    }
+}
@@ -0,0 +1,164 @@
+package com.cs663.visionassist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delegate selection against fake delegates and canned probe results; no interpreter runs.
+ */
+public class DelegateSelectorTest {
+    private static final float[] REFERENCE_OUTPUT = {0.1f, 0.9f, 0.5f, 0.25f};
+
+    private static class FakeDelegate implements InferenceDelegate {
+        private final String name;
+        private final boolean supported;
+
+        FakeDelegate(String name, boolean supported) {
+            this.name = name;
+            this.supported = supported;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isSupported() {
+            return supported;
+        }
+
+        @Override
+        public Delegate configure(Interpreter.Options options) {
+            return null;
+        }
+    }
+
+    /** Canned results by delegate name; a missing name makes the probe throw. */
+    private static class FakeProbe implements DelegateSelector.Probe {
+        final Map<String, DelegateSelector.ProbeResult> results = new HashMap<>();
+        final List<String> probed = new ArrayList<>();
+
+        FakeProbe put(String name, float averageMs, float[] output) {
+            results.put(name, new DelegateSelector.ProbeResult(averageMs, output));
+            return this;
+        }
+
+        @Override
+        public DelegateSelector.ProbeResult run(InferenceDelegate delegate) throws Exception {
+            probed.add(delegate.getName());
+            DelegateSelector.ProbeResult result = results.get(delegate.getName());
+            if (result == null) {
+                throw new IllegalStateException("failed to create interpreter");
+            }
+            return result;
+        }
+    }
+
+    private final InferenceDelegate cpu = new FakeDelegate("cpu", true);
+    private final InferenceDelegate xnnpack = new FakeDelegate("xnnpack", true);
+    private final InferenceDelegate gpu = new FakeDelegate("gpu", true);
+    private final List<InferenceDelegate> candidates = Arrays.asList(cpu, xnnpack, gpu);
+
+    @Test
+    public void picksFastestCorrectDelegate() {
+        FakeProbe probe = new FakeProbe()
+            .put("cpu", 120f, REFERENCE_OUTPUT)
+            .put("xnnpack", 60f, REFERENCE_OUTPUT)
+            .put("gpu", 30f, new float[]{0.1f, 0.9f, 0.5f, 0.26f});
+        List<String> log = new ArrayList<>();
+
+        assertSame(gpu, DelegateSelector.selectFastest(candidates, probe, log));
+        assertEquals(3, log.size());
+    }
+
+    @Test
+    public void rejectsFasterDelegateWithWrongOutput() {
+        FakeProbe probe = new FakeProbe()
+            .put("cpu", 120f, REFERENCE_OUTPUT)
+            .put("xnnpack", 60f, REFERENCE_OUTPUT)
+            .put("gpu", 10f, new float[]{0.9f, 0.1f, 0f, 1f});
+
+        assertSame(xnnpack, DelegateSelector.selectFastest(candidates, probe));
+    }
+
+    @Test
+    public void rejectsNanOutput() {
+        FakeProbe probe = new FakeProbe()
+            .put("cpu", 120f, REFERENCE_OUTPUT)
+            .put("xnnpack", 60f, new float[]{0.1f, Float.NaN, 0.5f, 0.25f})
+            .put("gpu", 200f, REFERENCE_OUTPUT);
+
+        assertSame(cpu, DelegateSelector.selectFastest(candidates, probe));
+    }
+
+    @Test
+    public void skipsUnsupportedAndFailingDelegates() {
+        InferenceDelegate nnapi = new FakeDelegate("nnapi", false);
+        FakeProbe probe = new FakeProbe()
+            .put("cpu", 120f, REFERENCE_OUTPUT)
+            .put("nnapi", 1f, REFERENCE_OUTPUT); // gpu and xnnpack throw
+        List<String> log = new ArrayList<>();
+
+        InferenceDelegate selected = DelegateSelector.selectFastest(
+            Arrays.asList(cpu, xnnpack, gpu, nnapi), probe, log);
+
+        assertSame(cpu, selected);
+        assertEquals(Arrays.asList("cpu", "xnnpack", "gpu"), probe.probed);
+        assertTrue(log.get(1).contains("probe failed"));
+    }
+
+    @Test
+    public void fallsBackToReferenceWhenItsProbeFails() {
+        FakeProbe probe = new FakeProbe().put("xnnpack", 10f, REFERENCE_OUTPUT);
+
+        assertSame(cpu, DelegateSelector.selectFastest(candidates, probe));
+        assertEquals(Arrays.asList("cpu"), probe.probed);
+    }
+
+    @Test
+    public void outputsMatchWithinTolerance() {
+        assertTrue(DelegateSelector.outputsMatch(REFERENCE_OUTPUT, REFERENCE_OUTPUT));
+        assertFalse(DelegateSelector.outputsMatch(REFERENCE_OUTPUT, new float[3]));
+        assertFalse(DelegateSelector.outputsMatch(REFERENCE_OUTPUT, null));
+        assertTrue(DelegateSelector.outputsMatch(new float[2], new float[2]));
+    }
+
+    @Test
+    public void floatProbeInputIsNormalized() {
+        ByteBuffer input = ByteBuffer.allocateDirect(300 * 4).order(ByteOrder.nativeOrder());
+        DelegateSelector.fillProbeInput(input, DataType.FLOAT32, 127f, 128f);
+
+        FloatBuffer floats = input.asFloatBuffer();
+        for (int i = 0; i < floats.capacity(); i++) {
+            float value = floats.get(i);
+            assertTrue("value " + value + " at " + i, value >= -1f && value <= 1f);
+        }
+        assertEquals(-127f / 128f, floats.get(0), 1e-6f);
+    }
+
+    @Test
+    public void int8ProbeInputIsSignedLevels() {
+        ByteBuffer input = ByteBuffer.allocateDirect(16);
+        DelegateSelector.fillProbeInput(input, DataType.INT8, 127f, 128f);
+
+        assertEquals(-128, input.get(0));
+        assertEquals(31 - 128, input.get(1));
+    }
+}
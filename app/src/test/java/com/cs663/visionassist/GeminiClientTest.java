@@ -0,0 +1,266 @@
+package com.cs663.visionassist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * GeminiClient against a local MockWebServer: coalescing of identical requests, per-caller
+ * deadlines, cancellation of the HTTP call once nobody waits for it, and SSE streams that
+ * arrive a few bytes at a time.
+ *
+ * The client is a process-wide singleton, so every test uses its own coalescing key and
+ * compares counters before and after.
+ */
+public class GeminiClientTest {
+    private static final String METHOD = "gemini-2.0-flash:generateContent";
+    private static final String STREAM_METHOD = "gemini-2.0-flash:streamGenerateContent";
+    private static final String RESPONSE = "{\"candidates\":[]}";
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private final GeminiClient client = GeminiClient.getInstance();
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client.setBaseUrl(server.url("/v1beta/models/").toString());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.setBaseUrl(GeminiClient.DEFAULT_BASE_URL);
+        server.shutdown();
+    }
+
+    @Test
+    public void identicalOverlappingRequestsShareOneCall() throws Exception {
+        // The delay keeps the first call in flight while the second caller arrives
+        server.enqueue(new MockResponse().setBody(RESPONSE).setHeadersDelay(500, TimeUnit.MILLISECONDS));
+        long coalescedBefore = client.getCoalescedRequests();
+
+        CompletableFuture<String> first = client.post(METHOD, "key", "{}", "coalesce", 5_000);
+        CompletableFuture<String> second = client.post(METHOD, "key", "{}", "coalesce", 5_000);
+
+        assertEquals(RESPONSE, first.get(5, TimeUnit.SECONDS));
+        assertEquals(RESPONSE, second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, server.getRequestCount());
+        assertEquals(coalescedBefore + 1, client.getCoalescedRequests());
+    }
+
+    @Test
+    public void differentRequestsAreNotCoalesced() throws Exception {
+        server.enqueue(new MockResponse().setBody(RESPONSE));
+        server.enqueue(new MockResponse().setBody(RESPONSE));
+
+        CompletableFuture<String> first = client.post(METHOD, "key", "{}", "scene-a", 5_000);
+        CompletableFuture<String> second = client.post(METHOD, "key", "{}", "scene-b", 5_000);
+
+        assertEquals(RESPONSE, first.get(5, TimeUnit.SECONDS));
+        assertEquals(RESPONSE, second.get(5, TimeUnit.SECONDS));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void expiredDeadlineFailsWithTimeout() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        CompletableFuture<String> result = client.post(METHOD, "key", "{}", "deadline", 200);
+
+        try {
+            result.get(2, TimeUnit.SECONDS);
+            fail("Expected the deadline to expire");
+        } catch (ExecutionException e) {
+            assertTrue("Unexpected failure " + e.getCause(), e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void callIsCancelledWhenLastWaiterGivesUp() throws Exception {
+        // The server never answers, so only the cancel can end the call
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        long cancelledBefore = client.getCancelledRequests();
+
+        CompletableFuture<String> early = client.post(METHOD, "key", "{}", "cancel", 200);
+        CompletableFuture<String> late = client.post(METHOD, "key", "{}", "cancel", 1_000);
+        server.takeRequest(2, TimeUnit.SECONDS);
+
+        // One caller gave up, the other still waits: the call keeps running
+        awaitTimeout(early);
+        assertFalse(late.isDone());
+        assertEquals(cancelledBefore, client.getCancelledRequests());
+        assertEquals(1, client.getRunningCalls());
+
+        // The last caller gives up: the call is cancelled
+        awaitTimeout(late);
+        assertEquals(cancelledBefore + 1, client.getCancelledRequests());
+        awaitNoRunningCalls();
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void cancellingTheFutureCountsAsGivingUp() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        long cancelledBefore = client.getCancelledRequests();
+
+        CompletableFuture<String> result = client.post(METHOD, "key", "{}", "cancel-future", 5_000);
+        server.takeRequest(2, TimeUnit.SECONDS);
+        result.cancel(true);
+
+        assertEquals(cancelledBefore + 1, client.getCancelledRequests());
+        awaitNoRunningCalls();
+    }
+
+    @Test
+    public void requestsBeyondTheDispatcherLimitQueue() throws Exception {
+        // Three times the dispatcher limit: the rest must wait for a slot, not be rejected
+        int count = 12;
+        for (int i = 0; i < count; i++) {
+            server.enqueue(new MockResponse().setBody(RESPONSE).setHeadersDelay(100, TimeUnit.MILLISECONDS));
+        }
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(client.post(METHOD, "key", "{}", "queued-" + i, 10_000));
+        }
+
+        for (CompletableFuture<String> result : results) {
+            assertEquals(RESPONSE, result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(count, server.getRequestCount());
+    }
+
+    private MockResponse sseResponse(String body) {
+        // 7-byte pieces: events, lines and multi-byte characters all end up split across reads
+        return new MockResponse()
+            .setHeader("Content-Type", "text/event-stream")
+            .setBody(body)
+            .throttleBody(7, 5, TimeUnit.MILLISECONDS);
+    }
+
+    private CompletableFuture<String> stream(GeminiStreamParser parser) {
+        return client.stream(STREAM_METHOD, "key", RequestBody.create("{}", JSON), parser, 10_000);
+    }
+
+    private void assertStreamFails(String body, String expectedMessage) throws Exception {
+        server.enqueue(sseResponse(body));
+        CompletableFuture<String> result = stream(new GeminiStreamParser(delta -> { }));
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail("Expected the stream to fail with " + expectedMessage);
+        } catch (ExecutionException e) {
+            assertTrue("Unexpected failure " + e.getCause(), e.getCause() instanceof IOException);
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains(expectedMessage));
+        }
+    }
+
+    @Test
+    public void streamReassemblesEventsSplitAcrossReads() throws Exception {
+        server.enqueue(sseResponse(GeminiStreamParserTest.SCENE));
+        List<String> deltas = new ArrayList<>();
+        GeminiStreamParser parser = new GeminiStreamParser(deltas::add);
+
+        String text = stream(parser).get(10, TimeUnit.SECONDS);
+
+        assertEquals(GeminiStreamParserTest.SCENE_TEXT, text);
+        assertEquals(3, deltas.size());
+        assertEquals("STOP", parser.getFinishReason());
+        RecordedRequest request = server.takeRequest(1, TimeUnit.SECONDS);
+        assertTrue(request.getPath(), request.getPath().startsWith("/v1beta/models/" + STREAM_METHOD + "?alt=sse"));
+    }
+
+    @Test
+    public void streamStoppedAtMaxTokensKeepsPartialText() throws Exception {
+        server.enqueue(sseResponse(GeminiStreamParserTest.sse(
+            GeminiStreamParserTest.textChunk("A long hallway ", null),
+            GeminiStreamParserTest.textChunk("with doors", "MAX_TOKENS"))));
+        GeminiStreamParser parser = new GeminiStreamParser(delta -> { });
+
+        assertEquals("A long hallway with doors", stream(parser).get(10, TimeUnit.SECONDS));
+        assertEquals("MAX_TOKENS", parser.getFinishReason());
+    }
+
+    @Test
+    public void streamFailsOnSafetyBlock() throws Exception {
+        assertStreamFails(GeminiStreamParserTest.sse(
+            GeminiStreamParserTest.textChunk("A person ", null),
+            GeminiStreamParserTest.textChunk("", "SAFETY")), "SAFETY");
+    }
+
+    @Test
+    public void streamFailsOnBlockedPrompt() throws Exception {
+        assertStreamFails(GeminiStreamParserTest.sse("{\"promptFeedback\":{\"blockReason\":\"SAFETY\"}}"),
+            "Prompt blocked");
+    }
+
+    @Test
+    public void streamFailsOnErrorEvent() throws Exception {
+        assertStreamFails(GeminiStreamParserTest.sse(
+            GeminiStreamParserTest.textChunk("A car ", null),
+            "{\"error\":{\"code\":503,\"message\":\"The model is overloaded.\"}}"),
+            "Gemini API error: The model is overloaded.");
+    }
+
+    @Test
+    public void cancellingAStreamCancelsTheCall() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        long cancelledBefore = client.getCancelledRequests();
+
+        CompletableFuture<String> result = stream(new GeminiStreamParser(delta -> { }));
+        server.takeRequest(2, TimeUnit.SECONDS);
+        assertEquals(1, client.getRunningCalls());
+        result.cancel(true);
+
+        assertEquals(cancelledBefore + 1, client.getCancelledRequests());
+        awaitNoRunningCalls();
+    }
+
+    @Test
+    public void streamFailsOnErrorStatus() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setBody("{\"error\":{\"message\":\"quota\"}}"));
+        CompletableFuture<String> result = stream(new GeminiStreamParser(delta -> { }));
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail("Expected an HTTP error");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().startsWith("Gemini API error: 429"));
+        }
+    }
+
+    private void awaitNoRunningCalls() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (client.getRunningCalls() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, client.getRunningCalls());
+    }
+
+    private static void awaitTimeout(CompletableFuture<String> result) throws Exception {
+        try {
+            result.get(3, TimeUnit.SECONDS);
+            fail("Expected the deadline to expire");
+        } catch (ExecutionException e) {
+            assertTrue("Unexpected failure " + e.getCause(), e.getCause() instanceof TimeoutException);
+        }
+    }
+}
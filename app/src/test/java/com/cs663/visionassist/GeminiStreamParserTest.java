@@ -0,0 +1,217 @@
+package com.cs663.visionassist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * GeminiStreamParser fed with SSE bytes split at controlled points, the way they come off
+ * the network: inside events, inside lines and inside multi-byte UTF-8 characters.
+ */
+public class GeminiStreamParserTest {
+    private final List<String> deltas = new ArrayList<>();
+    private final GeminiStreamParser parser = new GeminiStreamParser(deltas::add);
+
+    static String textChunk(String text, String finishReason) {
+        return "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"" + text + "\"}],\"role\":\"model\"}"
+            + (finishReason == null ? "" : ",\"finishReason\":\"" + finishReason + "\"") + "}]}";
+    }
+
+    static String sse(String... events) {
+        StringBuilder stream = new StringBuilder();
+        for (String event : events) {
+            stream.append("data: ").append(event).append("\r\n\r\n");
+        }
+        return stream.toString();
+    }
+
+    // Scene text with 2-, 3- and 4-byte UTF-8 characters
+    static final String SCENE = sse(
+        textChunk("Une chaise à gauche, ", null),
+        textChunk("椅子が右に、", null),
+        textChunk("door ahead 🚪", "STOP"));
+    static final String SCENE_TEXT = "Une chaise à gauche, 椅子が右に、door ahead 🚪";
+
+    private void feed(byte[] bytes, int from, int to) throws IOException {
+        parser.feed(bytes, from, to - from);
+    }
+
+    private static String join(List<String> parts) {
+        StringBuilder joined = new StringBuilder();
+        for (String part : parts) {
+            joined.append(part);
+        }
+        return joined.toString();
+    }
+
+    @Test
+    public void eventsSplitAtEveryByteGiveTheSameText() throws IOException {
+        byte[] bytes = SCENE.getBytes(StandardCharsets.UTF_8);
+        for (int cut = 0; cut <= bytes.length; cut++) {
+            List<String> received = new ArrayList<>();
+            GeminiStreamParser split = new GeminiStreamParser(received::add);
+            split.feed(bytes, 0, cut);
+            split.feed(bytes, cut, bytes.length - cut);
+            split.finish();
+
+            assertEquals("cut at " + cut, SCENE_TEXT, split.getText());
+            assertEquals("cut at " + cut, SCENE_TEXT, join(received));
+            assertEquals(3, split.getEventCount());
+        }
+    }
+
+    @Test
+    public void byteAtATime() throws IOException {
+        byte[] bytes = SCENE.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            feed(bytes, i, i + 1);
+        }
+        parser.finish();
+
+        assertEquals(SCENE_TEXT, parser.getText());
+        assertEquals(3, deltas.size());
+        assertEquals("STOP", parser.getFinishReason());
+    }
+
+    @Test
+    public void utf8CharacterSplitAcrossChunks() throws IOException {
+        byte[] bytes = sse(textChunk("🚪", "STOP")).getBytes(StandardCharsets.UTF_8);
+        int door = 0;
+        while ((bytes[door] & 0xFF) != 0xF0) { // lead byte of the 4-byte sequence
+            door++;
+        }
+        // The four bytes of the emoji arrive in three chunks
+        feed(bytes, 0, door + 1);
+        assertTrue(deltas.isEmpty());
+        feed(bytes, door + 1, door + 3);
+        feed(bytes, door + 3, bytes.length);
+        parser.finish();
+
+        assertEquals("🚪", parser.getText());
+        assertEquals(1, deltas.size());
+    }
+
+    @Test
+    public void textIsDeliveredAsEachEventCompletes() throws IOException {
+        byte[] bytes = SCENE.getBytes(StandardCharsets.UTF_8);
+        int firstEventEnd = sse(textChunk("Une chaise à gauche, ", null)).getBytes(StandardCharsets.UTF_8).length;
+
+        feed(bytes, 0, firstEventEnd - 1);
+        assertTrue(deltas.isEmpty()); // the blank line that ends the event is still missing
+        feed(bytes, firstEventEnd - 1, firstEventEnd);
+        assertEquals(1, deltas.size());
+        assertEquals("Une chaise à gauche, ", deltas.get(0));
+        assertNull(parser.getFinishReason());
+    }
+
+    @Test
+    public void lastEventWithoutBlankLineIsHandledOnFinish() throws IOException {
+        byte[] bytes = ("data: " + textChunk("A bench.", "STOP")).getBytes(StandardCharsets.UTF_8);
+        feed(bytes, 0, bytes.length);
+        assertTrue(deltas.isEmpty());
+        parser.finish();
+
+        assertEquals("A bench.", parser.getText());
+    }
+
+    @Test
+    public void commentsAndOtherFieldsAreIgnored() throws IOException {
+        byte[] bytes = (": keep-alive\n\nevent: message\nid: 1\n" + sse(textChunk("Stairs.", "STOP")))
+            .getBytes(StandardCharsets.UTF_8);
+        feed(bytes, 0, bytes.length);
+        parser.finish();
+
+        assertEquals("Stairs.", parser.getText());
+        assertEquals(1, parser.getEventCount());
+    }
+
+    @Test
+    public void stopFinishesNormally() throws IOException {
+        byte[] bytes = sse(textChunk("A table.", null), textChunk("", "STOP")).getBytes(StandardCharsets.UTF_8);
+        feed(bytes, 0, bytes.length);
+        parser.finish();
+
+        assertEquals("STOP", parser.getFinishReason());
+        assertEquals("A table.", parser.getText());
+    }
+
+    @Test
+    public void maxTokensKeepsPartialText() throws IOException {
+        byte[] bytes = sse(textChunk("A long hallway with", "MAX_TOKENS")).getBytes(StandardCharsets.UTF_8);
+        feed(bytes, 0, bytes.length);
+        parser.finish();
+
+        assertEquals("MAX_TOKENS", parser.getFinishReason());
+        assertEquals("A long hallway with", parser.getText());
+    }
+
+    @Test
+    public void maxTokensWithoutTextFails() throws IOException {
+        byte[] bytes = sse(textChunk("", "MAX_TOKENS")).getBytes(StandardCharsets.UTF_8);
+        feed(bytes, 0, bytes.length);
+        try {
+            parser.finish();
+            fail("Expected a truncation error");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("truncated"));
+        }
+    }
+
+    @Test
+    public void safetyBlockFailsTheStream() throws IOException {
+        byte[] bytes = sse(textChunk("A person", null), textChunk("", "SAFETY")).getBytes(StandardCharsets.UTF_8);
+        try {
+            feed(bytes, 0, bytes.length);
+            fail("Expected a safety block");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("SAFETY"));
+        }
+        assertEquals("SAFETY", parser.getFinishReason());
+        assertEquals(1, deltas.size()); // text before the block was already delivered
+    }
+
+    @Test
+    public void blockedPromptFailsTheStream() {
+        byte[] bytes = sse("{\"promptFeedback\":{\"blockReason\":\"OTHER\"}}").getBytes(StandardCharsets.UTF_8);
+        try {
+            feed(bytes, 0, bytes.length);
+            fail("Expected a blocked prompt");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Prompt blocked"));
+            assertTrue(e.getMessage(), e.getMessage().contains("OTHER"));
+        }
+        assertTrue(deltas.isEmpty());
+    }
+
+    @Test
+    public void errorEventFailsTheStream() {
+        byte[] bytes = sse(textChunk("A car", null),
+            "{\"error\":{\"code\":503,\"message\":\"The model is overloaded.\",\"status\":\"UNAVAILABLE\"}}")
+            .getBytes(StandardCharsets.UTF_8);
+        try {
+            feed(bytes, 0, bytes.length);
+            fail("Expected an API error");
+        } catch (IOException e) {
+            assertEquals("Gemini API error: The model is overloaded.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void malformedEventFailsTheStream() {
+        byte[] bytes = sse("{\"candidates\":[").getBytes(StandardCharsets.UTF_8);
+        try {
+            feed(bytes, 0, bytes.length);
+            fail("Expected a parse error");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Error parsing Gemini stream event"));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.cs663.visionassist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * NarrationCache policy on a manual clock: TTL expiry, LRU eviction and invalidation when
+ * the image hash drifts too far for the same key.
+ */
+public class NarrationCacheTest {
+    private static final int MAX_ENTRIES = 3;
+    private static final int MAX_IMAGE_DISTANCE = 10;
+    private static final long HASH = 0x0F0F_0F0F_0F0F_0F0FL;
+
+    private long nowMs = 1_000;
+    private final NarrationCache cache = new NarrationCache(MAX_ENTRIES, MAX_IMAGE_DISTANCE, () -> nowMs);
+
+    private static SceneSignature scene(String label, long imageHash) {
+        Detection detection = new Detection(label, 0.9f, 10, 10, 50, 50);
+        return SceneSignature.of(Collections.singletonList(detection), OCRResult.EMPTY, imageHash);
+    }
+
+    @Test
+    public void hitWithinTtl() {
+        cache.put(scene("chair", HASH), "A chair ahead.", NarrationCache.SOURCE_GEMINI, 5_000);
+        nowMs += 4_999;
+
+        NarrationCache.CachedNarration cached = cache.get(scene("chair", HASH));
+        assertNotNull(cached);
+        assertEquals("A chair ahead.", cached.getNarration());
+        assertEquals(NarrationCache.SOURCE_GEMINI, cached.getSource());
+    }
+
+    @Test
+    public void expiresAfterTtl() {
+        cache.put(scene("chair", HASH), "A chair ahead.", NarrationCache.SOURCE_GEMINI, 5_000);
+        cache.put(scene("door", HASH), "A door ahead.", NarrationCache.SOURCE_LOCAL, 1_000);
+        nowMs += 1_000;
+
+        assertNull(cache.get(scene("door", HASH)));
+        assertNotNull(cache.get(scene("chair", HASH)));
+        nowMs += 4_000;
+        assertNull(cache.get(scene("chair", HASH)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        cache.put(scene("chair", HASH), "chair", NarrationCache.SOURCE_GEMINI, 60_000);
+        cache.put(scene("door", HASH), "door", NarrationCache.SOURCE_GEMINI, 60_000);
+        cache.put(scene("table", HASH), "table", NarrationCache.SOURCE_GEMINI, 60_000);
+        // Reading chair makes door the least recently used
+        assertNotNull(cache.get(scene("chair", HASH)));
+
+        cache.put(scene("car", HASH), "car", NarrationCache.SOURCE_GEMINI, 60_000);
+
+        assertEquals(MAX_ENTRIES, cache.size());
+        assertNull(cache.get(scene("door", HASH)));
+        assertNotNull(cache.get(scene("chair", HASH)));
+        assertNotNull(cache.get(scene("table", HASH)));
+        assertNotNull(cache.get(scene("car", HASH)));
+    }
+
+    @Test
+    public void smallImageDriftStillHits() {
+        cache.put(scene("chair", HASH), "A chair ahead.", NarrationCache.SOURCE_GEMINI, 60_000);
+
+        long drifted = HASH ^ 0x3FFL; // 10 bits
+        assertEquals(MAX_IMAGE_DISTANCE, SceneSignature.imageDistance(HASH, drifted));
+        assertNotNull(cache.get(scene("chair", drifted)));
+    }
+
+    @Test
+    public void largeImageDriftInvalidates() {
+        cache.put(scene("chair", HASH), "A chair ahead.", NarrationCache.SOURCE_GEMINI, 60_000);
+
+        long changed = HASH ^ 0x7FFL; // 11 bits
+        assertNull(cache.get(scene("chair", changed)));
+        assertEquals(0, cache.size());
+        // The entry is gone, not just hidden from the drifted frame
+        assertNull(cache.get(scene("chair", HASH)));
+    }
+
+    @Test
+    public void missingImageHashNeverInvalidates() {
+        cache.put(scene("chair", SceneSignature.NO_IMAGE_HASH), "A chair ahead.",
+            NarrationCache.SOURCE_GEMINI, 60_000);
+
+        assertNotNull(cache.get(scene("chair", ~HASH)));
+    }
+
+    @Test
+    public void keyIgnoresDetectionOrder() {
+        Detection chair = new Detection("chair", 0.9f, 10, 10, 50, 50);
+        Detection door = new Detection("door", 0.6f, 100, 10, 150, 80);
+        cache.put(SceneSignature.of(Arrays.asList(chair, door), OCRResult.EMPTY, HASH), "both",
+            NarrationCache.SOURCE_GEMINI, 60_000);
+
+        assertNotNull(cache.get(SceneSignature.of(Arrays.asList(door, chair), OCRResult.EMPTY, HASH)));
+    }
+}
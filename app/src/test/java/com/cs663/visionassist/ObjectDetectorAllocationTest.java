@@ -0,0 +1,106 @@
+package com.cs663.visionassist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the Java side of a steady-state ObjectDetector.detect() call allocates nothing:
+ * packing pixels into the reused input buffer, decoding the reused output arrays and mapping
+ * the boxes into the reused batch. Drawing into the input bitmap and the interpreter call
+ * itself are framework/native code and are not covered here.
+ */
+public class ObjectDetectorAllocationTest {
+    private static final int INPUT_SIZE = 320;
+    private static final int MAX_DETECTIONS = 25;
+    private static final int WARMUP_FRAMES = 500;
+    private static final int MEASURED_FRAMES = 1_000;
+    // Slack for the measurement itself; one allocation per frame would be far above this
+    private static final long MAX_TOTAL_BYTES = 4 * 1024;
+
+    private final int[] pixels = new int[INPUT_SIZE * INPUT_SIZE];
+    private final ByteBuffer quantizedInput = ByteBuffer.allocateDirect(INPUT_SIZE * INPUT_SIZE * 3)
+        .order(ByteOrder.nativeOrder());
+    private final FloatBuffer floatInput = ByteBuffer.allocateDirect(INPUT_SIZE * INPUT_SIZE * 3 * 4)
+        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    private final byte[] quantizedLevels = ObjectDetector.quantizedLevels(127f, 128f, 1 / 128f, 127, false);
+    private final float[] floatLevels = ObjectDetector.floatLevels(127f, 128f);
+
+    private final float[][] boxes = new float[MAX_DETECTIONS][4];
+    private final float[] classes = new float[MAX_DETECTIONS];
+    private final float[] scores = new float[MAX_DETECTIONS];
+    private final DetectionDecoder decoder = new DetectionDecoder();
+    private final InputTransform transform = new InputTransform();
+    private final DetectionBatch batch = new DetectionBatch(MAX_DETECTIONS);
+    private final List<String> labels = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | (i * 40503) & 0xFFFFFF;
+        }
+        for (int i = 0; i < 80; i++) {
+            labels.add("class " + i);
+        }
+        // Post-processed outputs: a few overlapping pairs above the threshold, the rest below
+        for (int i = 0; i < MAX_DETECTIONS; i++) {
+            float y = (i % 5) * 0.18f;
+            float x = (i / 5) * 0.18f + (i % 2) * 0.01f;
+            boxes[i][0] = y;
+            boxes[i][1] = x;
+            boxes[i][2] = y + 0.15f;
+            boxes[i][3] = x + 0.15f;
+            classes[i] = i % 4;
+            scores[i] = i < 12 ? 0.9f - i * 0.02f : 0.1f;
+        }
+    }
+
+    private void detectFrame() {
+        transform.set(InputTransform.Mode.LETTERBOX, 640, 480, INPUT_SIZE, INPUT_SIZE);
+        ObjectDetector.packPixels(pixels, quantizedLevels, quantizedInput);
+        ObjectDetector.packPixels(pixels, floatLevels, floatInput);
+        int found = decoder.decode(boxes, classes, scores, MAX_DETECTIONS);
+        batch.reset(labels);
+        ObjectDetector.addDetections(decoder, found, transform, 0, 0, 640, 480, batch);
+    }
+
+    @Test
+    public void steadyStateDetectAllocatesNothing() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            detectFrame();
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            detectFrame();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("Found no detections", batch.size() > 0);
+        assertTrue("Allocated " + allocated + " bytes over " + MEASURED_FRAMES + " frames",
+            allocated <= MAX_TOTAL_BYTES);
+    }
+
+    @Test
+    public void boxesAreMappedThroughTheLetterbox() {
+        detectFrame();
+        // 640x480 letterboxed into 320x320: scale 0.5, 40 px of padding above and below
+        assertEquals(0.9f, batch.getConfidence(0), 1e-6f);
+        assertEquals(0f, batch.getLeft(0), 0.5f);
+        assertEquals(0f, batch.getTop(0), 0.5f);
+        assertEquals(0.15f * INPUT_SIZE * 2, batch.getRight(0), 0.5f);
+        assertEquals((0.15f * INPUT_SIZE - 40) * 2, batch.getBottom(0), 0.5f);
+    }
+}
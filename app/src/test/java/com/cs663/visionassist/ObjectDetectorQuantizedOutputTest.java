@@ -0,0 +1,72 @@
+package com.cs663.visionassist;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The integer-output path of ObjectDetector.detect() run after run, against a fake
+ * inference that copies into the output buffers the way TFLite's Tensor.copyTo does.
+ */
+public class ObjectDetectorQuantizedOutputTest {
+    private static final int DETECTIONS = 4;
+    private static final int CLASSES = 3;
+
+    private final float[][][] boxes = new float[1][DETECTIONS][4];
+    private final float[][][] classScores = new float[1][DETECTIONS][CLASSES];
+    private final ByteBuffer boxBuffer = ByteBuffer.allocateDirect(DETECTIONS * 4).order(ByteOrder.nativeOrder());
+    private final ByteBuffer scoreBuffer = ByteBuffer.allocateDirect(DETECTIONS * CLASSES)
+        .order(ByteOrder.nativeOrder());
+    private final List<ObjectDetector.QuantizedOutput> quantizedOutputs = Arrays.asList(
+        new ObjectDetector.QuantizedOutput(boxBuffer, boxes, new Tensor.QuantizationParams(1 / 256f, 0), false),
+        new ObjectDetector.QuantizedOutput(scoreBuffer, classScores,
+            new Tensor.QuantizationParams(1 / 256f, -128), true));
+    private final Map<Integer, Object> outputs = new HashMap<>();
+    private final Object[] inputs = {ByteBuffer.allocateDirect(1)};
+
+    private byte value = 0;
+
+    // Like Tensor.copyTo(ByteBuffer): relative puts from the current position
+    private final ObjectDetector.InferenceRun fakeRun = (runInputs, runOutputs) -> {
+        for (Object output : runOutputs.values()) {
+            ByteBuffer buffer = (ByteBuffer) output;
+            for (int i = 0; i < buffer.capacity(); i++) {
+                buffer.put(value);
+            }
+        }
+    };
+
+    public ObjectDetectorQuantizedOutputTest() {
+        outputs.put(0, boxBuffer);
+        outputs.put(1, scoreBuffer);
+    }
+
+    @Test
+    public void everyRunReadsFreshOutputs() {
+        // The first run is the warm-up; real frames follow
+        for (int run = 0; run < 3; run++) {
+            value = (byte) (32 * run);
+            ObjectDetector.run(fakeRun, inputs, outputs, quantizedOutputs);
+
+            assertEquals(32 * run / 256f, boxes[0][DETECTIONS - 1][3], 1e-6f);
+            assertEquals((32 * run + 128) / 256f, classScores[0][DETECTIONS - 1][CLASSES - 1], 1e-6f);
+        }
+    }
+
+    @Test
+    public void unsignedAndSignedOutputsDequantize() {
+        value = (byte) 0xC0; // 192 unsigned, -64 signed
+        ObjectDetector.run(fakeRun, inputs, outputs, quantizedOutputs);
+
+        assertEquals(192 / 256f, boxes[0][0][0], 1e-6f);
+        assertEquals(64 / 256f, classScores[0][0][0], 1e-6f);
+    }
+}
@@ -0,0 +1,227 @@
+package com.cs663.visionassist;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * YuvConverter on small synthetic frames: the same picture laid out as planar I420 and as
+ * semi-planar NV21/NV12, with and without row padding, and rotated by 90/180/270 degrees.
+ */
+public class YuvConverterTest {
+    private static final int WIDTH = 6;
+    private static final int HEIGHT = 4;
+    private static final byte PADDING = (byte) 0xEE; // never a valid sample below
+
+    // A picture where every sample differs, so a wrong stride or index shows up
+    private static int luma(int x, int y) {
+        return 16 + y * 40 + x * 5;
+    }
+
+    private static int chromaU(int cx, int cy) {
+        return 60 + cy * 50 + cx * 20;
+    }
+
+    private static int chromaV(int cx, int cy) {
+        return 200 - cy * 45 - cx * 25;
+    }
+
+    private static int[] expectedUnrotated() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                pixels[y * WIDTH + x] = YuvConverter.yuvToArgbPixel(luma(x, y),
+                    chromaU(x / 2, y / 2), chromaV(x / 2, y / 2));
+            }
+        }
+        return pixels;
+    }
+
+    private static ByteBuffer lumaPlane(int rowStride) {
+        byte[] plane = new byte[rowStride * HEIGHT];
+        Arrays.fill(plane, PADDING);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                plane[y * rowStride + x] = (byte) luma(x, y);
+            }
+        }
+        return ByteBuffer.wrap(plane);
+    }
+
+    private static int[] convert(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v,
+                                 int uvRowStride, int uvPixelStride, int rotationDegrees) {
+        int[] out = new int[WIDTH * HEIGHT];
+        YuvConverter.yuvToArgb(y, yRowStride, 1, u, v, uvRowStride, uvPixelStride,
+            WIDTH, HEIGHT, rotationDegrees, out);
+        return out;
+    }
+
+    // I420: separate U and V planes, one byte per sample
+    private static int[] convertI420(int yRowStride, int uvRowStride, int rotationDegrees) {
+        byte[] u = new byte[uvRowStride * HEIGHT / 2];
+        byte[] v = new byte[uvRowStride * HEIGHT / 2];
+        Arrays.fill(u, PADDING);
+        Arrays.fill(v, PADDING);
+        for (int cy = 0; cy < HEIGHT / 2; cy++) {
+            for (int cx = 0; cx < WIDTH / 2; cx++) {
+                u[cy * uvRowStride + cx] = (byte) chromaU(cx, cy);
+                v[cy * uvRowStride + cx] = (byte) chromaV(cx, cy);
+            }
+        }
+        return convert(lumaPlane(yRowStride), yRowStride, ByteBuffer.wrap(u), ByteBuffer.wrap(v),
+            uvRowStride, 1, rotationDegrees);
+    }
+
+    // NV21: one interleaved VU plane; U is the same memory one byte in, pixelStride 2
+    private static int[] convertNv21(int yRowStride, int uvRowStride, int rotationDegrees) {
+        byte[] vu = new byte[uvRowStride * HEIGHT / 2];
+        Arrays.fill(vu, PADDING);
+        for (int cy = 0; cy < HEIGHT / 2; cy++) {
+            for (int cx = 0; cx < WIDTH / 2; cx++) {
+                vu[cy * uvRowStride + 2 * cx] = (byte) chromaV(cx, cy);
+                vu[cy * uvRowStride + 2 * cx + 1] = (byte) chromaU(cx, cy);
+            }
+        }
+        ByteBuffer v = ByteBuffer.wrap(vu);
+        ByteBuffer u = ByteBuffer.wrap(vu, 1, vu.length - 1).slice();
+        return convert(lumaPlane(yRowStride), yRowStride, u, v, uvRowStride, 2, rotationDegrees);
+    }
+
+    // NV12: interleaved UV, the other semi-planar order
+    private static int[] convertNv12(int yRowStride, int uvRowStride) {
+        byte[] uv = new byte[uvRowStride * HEIGHT / 2];
+        Arrays.fill(uv, PADDING);
+        for (int cy = 0; cy < HEIGHT / 2; cy++) {
+            for (int cx = 0; cx < WIDTH / 2; cx++) {
+                uv[cy * uvRowStride + 2 * cx] = (byte) chromaU(cx, cy);
+                uv[cy * uvRowStride + 2 * cx + 1] = (byte) chromaV(cx, cy);
+            }
+        }
+        ByteBuffer u = ByteBuffer.wrap(uv);
+        ByteBuffer v = ByteBuffer.wrap(uv, 1, uv.length - 1).slice();
+        return convert(lumaPlane(yRowStride), yRowStride, u, v, uvRowStride, 2, 0);
+    }
+
+    @Test
+    public void planarI420() {
+        assertArrayEquals(expectedUnrotated(), convertI420(WIDTH, WIDTH / 2, 0));
+    }
+
+    @Test
+    public void planarI420WithPaddedRows() {
+        assertArrayEquals(expectedUnrotated(), convertI420(WIDTH + 10, WIDTH / 2 + 5, 0));
+    }
+
+    @Test
+    public void semiPlanarNv21() {
+        assertArrayEquals(expectedUnrotated(), convertNv21(WIDTH, WIDTH, 0));
+    }
+
+    @Test
+    public void semiPlanarNv21WithPaddedRows() {
+        // e.g. a 64-byte-aligned stride on a frame narrower than that
+        assertArrayEquals(expectedUnrotated(), convertNv21(16, 16, 0));
+    }
+
+    @Test
+    public void semiPlanarNv12() {
+        assertArrayEquals(expectedUnrotated(), convertNv12(WIDTH + 2, WIDTH + 2));
+    }
+
+    @Test
+    public void bufferPositionsAreUntouched() {
+        ByteBuffer y = lumaPlane(WIDTH);
+        y.position(3);
+        byte[] chroma = new byte[WIDTH * HEIGHT / 2];
+        ByteBuffer u = ByteBuffer.wrap(chroma);
+        ByteBuffer v = ByteBuffer.wrap(chroma);
+        convert(y, WIDTH, u, v, WIDTH, 2, 0);
+
+        assertEquals(3, y.position());
+        assertEquals(0, u.position());
+    }
+
+    @Test
+    public void rotatedSizes() {
+        assertEquals(HEIGHT, YuvConverter.rotatedWidth(WIDTH, HEIGHT, 90));
+        assertEquals(WIDTH, YuvConverter.rotatedHeight(WIDTH, HEIGHT, 90));
+        assertEquals(HEIGHT, YuvConverter.rotatedWidth(WIDTH, HEIGHT, 270));
+        assertEquals(WIDTH, YuvConverter.rotatedWidth(WIDTH, HEIGHT, 180));
+        assertEquals(HEIGHT, YuvConverter.rotatedHeight(WIDTH, HEIGHT, 0));
+    }
+
+    @Test
+    public void rotation90MapsCornersClockwise() {
+        // Rotated image is HEIGHT wide: source top-left goes to the top-right corner
+        assertEquals(HEIGHT - 1, YuvConverter.destinationIndex(0, 0, WIDTH, HEIGHT, 90));
+        // source bottom-left -> rotated top-left
+        assertEquals(0, YuvConverter.destinationIndex(0, HEIGHT - 1, WIDTH, HEIGHT, 90));
+        // source top-right -> rotated bottom-right
+        assertEquals(WIDTH * HEIGHT - 1, YuvConverter.destinationIndex(WIDTH - 1, 0, WIDTH, HEIGHT, 90));
+        // source bottom-right -> rotated bottom-left
+        assertEquals((WIDTH - 1) * HEIGHT, YuvConverter.destinationIndex(WIDTH - 1, HEIGHT - 1, WIDTH, HEIGHT, 90));
+    }
+
+    @Test
+    public void rotation270MapsCornersCounterClockwise() {
+        // source top-left -> rotated bottom-left
+        assertEquals((WIDTH - 1) * HEIGHT, YuvConverter.destinationIndex(0, 0, WIDTH, HEIGHT, 270));
+        // source top-right -> rotated top-left
+        assertEquals(0, YuvConverter.destinationIndex(WIDTH - 1, 0, WIDTH, HEIGHT, 270));
+        // source bottom-left -> rotated bottom-right
+        assertEquals(WIDTH * HEIGHT - 1, YuvConverter.destinationIndex(0, HEIGHT - 1, WIDTH, HEIGHT, 270));
+        // source bottom-right -> rotated top-right
+        assertEquals(HEIGHT - 1, YuvConverter.destinationIndex(WIDTH - 1, HEIGHT - 1, WIDTH, HEIGHT, 270));
+    }
+
+    @Test
+    public void everyRotationIsAPermutation() {
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            boolean[] hit = new boolean[WIDTH * HEIGHT];
+            for (int sy = 0; sy < HEIGHT; sy++) {
+                for (int sx = 0; sx < WIDTH; sx++) {
+                    int index = YuvConverter.destinationIndex(sx, sy, WIDTH, HEIGHT, rotation);
+                    assertTrue("rotation " + rotation + " hits " + index + " twice", !hit[index]);
+                    hit[index] = true;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rotatedConversionMatchesRotatedPicture() {
+        int[] upright = expectedUnrotated();
+        int[] rotated90 = convertNv21(16, 16, 90);
+        int[] rotated270 = convertI420(WIDTH, WIDTH / 2, 270);
+        int rotatedWidth = HEIGHT;
+        for (int ry = 0; ry < WIDTH; ry++) {
+            for (int rx = 0; rx < rotatedWidth; rx++) {
+                // Clockwise: rotated (rx, ry) shows source (ry, HEIGHT - 1 - rx)
+                assertEquals(upright[(HEIGHT - 1 - rx) * WIDTH + ry], rotated90[ry * rotatedWidth + rx]);
+                // Counter-clockwise: rotated (rx, ry) shows source (WIDTH - 1 - ry, rx)
+                assertEquals(upright[rx * WIDTH + (WIDTH - 1 - ry)], rotated270[ry * rotatedWidth + rx]);
+            }
+        }
+    }
+
+    @Test
+    public void rotation180ReversesThePixels() {
+        int[] upright = expectedUnrotated();
+        int[] rotated = convertI420(WIDTH + 4, WIDTH / 2 + 2, 180);
+        for (int i = 0; i < upright.length; i++) {
+            assertEquals(upright[i], rotated[upright.length - 1 - i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSmallOutput() {
+        ByteBuffer plane = ByteBuffer.allocate(WIDTH * HEIGHT);
+        YuvConverter.yuvToArgb(plane, WIDTH, 1, plane, plane, WIDTH, 2, WIDTH, HEIGHT, 0,
+            new int[WIDTH * HEIGHT - 1]);
+    }
+}
@@ -0,0 +1,50 @@
+package com.cs663.visionassist.benchmark;
+
+import com.cs663.visionassist.DetectionDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a raw detector output (boxes x per-class scores) into final detections:
+ * thresholds, class-aware hard or soft NMS and top-K, for thousands of anchors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DetectionDecoderBenchmark {
+    private static final int CLASS_COUNT = 80;
+    private static final int OBJECT_COUNT = 20;
+
+    @Param({"1000", "5000", "20000"})
+    public int anchorCount;
+
+    @Param({"hard", "soft"})
+    public String nms;
+
+    private final DetectionDecoder decoder = new DetectionDecoder();
+    private float[][] boxes;
+    private float[][] scores;
+
+    @Setup
+    public void setUp() {
+        boxes = SyntheticScenes.rawBoxes(anchorCount, OBJECT_COUNT, 42);
+        scores = SyntheticScenes.rawScores(anchorCount, CLASS_COUNT, 7);
+        decoder.setNms(true, DetectionDecoder.DEFAULT_IOU_THRESHOLD,
+            "soft".equals(nms) ? DetectionDecoder.DEFAULT_SOFT_SIGMA : 0f);
+        decoder.setTopK(100, 10);
+    }
+
+    @Benchmark
+    public int decode() {
+        return decoder.decode(boxes, scores, anchorCount);
+    }
+}
@@ -0,0 +1,43 @@
+package com.cs663.visionassist.benchmark;
+
+import com.cs663.visionassist.DetectionBatch;
+import com.cs663.visionassist.NarrationGenerator;
+import com.cs663.visionassist.OCRResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NarrationGeneratorBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int boxCount;
+
+    private DetectionBatch batch;
+    private OCRResult ocrResult;
+
+    @Setup
+    public void setUp() {
+        batch = SyntheticScenes.batch(boxCount, 42);
+        ocrResult = SyntheticScenes.ocr(3);
+    }
+
+    @Benchmark
+    public String generateBatch() {
+        return NarrationGenerator.generate(batch, ocrResult);
+    }
+
+    @Benchmark
+    public String generateBatchWithoutText() {
+        return NarrationGenerator.generate(batch, OCRResult.EMPTY);
+    }
+}
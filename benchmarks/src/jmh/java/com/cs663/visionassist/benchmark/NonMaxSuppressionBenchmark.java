@@ -0,0 +1,51 @@
+package com.cs663.visionassist.benchmark;
+
+import com.cs663.visionassist.DetectionBatch;
+import com.cs663.visionassist.NonMaxSuppression;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cross-tile merge of tiled detection: the global pass's boxes plus a slightly shifted
+ * duplicate of each from an overlapping tile, suppressed with class-aware NMS.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NonMaxSuppressionBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int boxCount;
+
+    private final NonMaxSuppression nms = new NonMaxSuppression();
+    private DetectionBatch merged;
+    private DetectionBatch out;
+
+    @Setup
+    public void setUp() {
+        DetectionBatch global = SyntheticScenes.batch(boxCount, 42);
+        DetectionBatch tiles = SyntheticScenes.moved(global, 7);
+        merged = new DetectionBatch(boxCount * 2);
+        merged.reset(global.getLabels());
+        for (DetectionBatch pass : new DetectionBatch[]{global, tiles}) {
+            for (int i = 0; i < pass.size(); i++) {
+                merged.add(pass.getClassId(i), pass.getConfidence(i), pass.getLeft(i), pass.getTop(i),
+                    pass.getRight(i), pass.getBottom(i));
+            }
+        }
+        out = new DetectionBatch(boxCount * 2);
+    }
+
+    @Benchmark
+    public DetectionBatch merge() {
+        return nms.run(merged, out);
+    }
+}
@@ -0,0 +1,53 @@
+package com.cs663.visionassist.benchmark;
+
+import com.cs663.visionassist.DetectionBatch;
+import com.cs663.visionassist.ObjectTracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tracker step against an already populated tracker: association of a slightly moved
+ * scene (update) and pure extrapolation (predict).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ObjectTrackerBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int boxCount;
+
+    private ObjectTracker tracker;
+    private DetectionBatch[] frames;
+    private DetectionBatch out;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        // Two scenes alternate, so every update matches the tracks made by the previous one
+        DetectionBatch first = SyntheticScenes.batch(boxCount, 42);
+        frames = new DetectionBatch[]{first, SyntheticScenes.moved(first, 7)};
+        out = new DetectionBatch(boxCount);
+        tracker = new ObjectTracker(1);
+        tracker.update(first, out);
+    }
+
+    @Benchmark
+    public DetectionBatch update() {
+        frame ^= 1;
+        return tracker.update(frames[frame], out);
+    }
+
+    @Benchmark
+    public DetectionBatch predict() {
+        return tracker.predict(out);
+    }
+}
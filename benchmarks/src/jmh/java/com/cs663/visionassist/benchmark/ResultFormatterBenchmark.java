@@ -0,0 +1,44 @@
+package com.cs663.visionassist.benchmark;
+
+import com.cs663.visionassist.Detection;
+import com.cs663.visionassist.OCRResult;
+import com.cs663.visionassist.ResultFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResultFormatterBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int boxCount;
+
+    private List<Detection> detections;
+    private OCRResult ocrResult;
+
+    @Setup
+    public void setUp() {
+        detections = SyntheticScenes.detections(boxCount, 42);
+        ocrResult = SyntheticScenes.ocr(3);
+    }
+
+    @Benchmark
+    public String createSummary() {
+        return ResultFormatter.createSummary(detections, ocrResult);
+    }
+
+    @Benchmark
+    public String convertToJson() {
+        return ResultFormatter.convertToJson(detections, ocrResult);
+    }
+}
@@ -0,0 +1,45 @@
+package com.cs663.visionassist.benchmark;
+
+import com.cs663.visionassist.Detection;
+import com.cs663.visionassist.DetectionBatch;
+import com.cs663.visionassist.SpatialAnalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialAnalyzerBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int boxCount;
+
+    private final SpatialAnalyzer analyzer = new SpatialAnalyzer();
+    private List<Detection> detections;
+    private DetectionBatch batch;
+
+    @Setup
+    public void setUp() {
+        detections = SyntheticScenes.detections(boxCount, 42);
+        batch = SyntheticScenes.batch(boxCount, 42);
+    }
+
+    @Benchmark
+    public List<Detection> analyzeList() {
+        return analyzer.analyze(detections, SyntheticScenes.IMAGE_WIDTH, SyntheticScenes.IMAGE_HEIGHT);
+    }
+
+    @Benchmark
+    public DetectionBatch analyzeBatch() {
+        return analyzer.analyze(batch, SyntheticScenes.IMAGE_WIDTH, SyntheticScenes.IMAGE_HEIGHT);
+    }
+}
@@ -0,0 +1,113 @@
+package com.cs663.visionassist.benchmark;
+
+import com.cs663.visionassist.Detection;
+import com.cs663.visionassist.DetectionBatch;
+import com.cs663.visionassist.OCRResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic detections and OCR output for the benchmarks.
+ */
+final class SyntheticScenes {
+    static final int IMAGE_WIDTH = 640;
+    static final int IMAGE_HEIGHT = 480;
+
+    static final List<String> LABELS = Arrays.asList(
+        "person", "bicycle", "car", "motorcycle", "bus", "truck", "traffic light",
+        "stop sign", "bench", "chair", "dog", "door", "stairs", "pole", "potted plant");
+
+    private SyntheticScenes() {
+    }
+
+    /**
+     * boxCount random boxes (fixed seed) with side/distance already filled in, as the
+     * detector + SpatialAnalyzer would produce them.
+     */
+    static DetectionBatch batch(int boxCount, long seed) {
+        Random random = new Random(seed);
+        DetectionBatch batch = new DetectionBatch(boxCount);
+        batch.reset(LABELS);
+        for (int i = 0; i < boxCount; i++) {
+            float width = 20 + random.nextFloat() * (IMAGE_WIDTH / 3f);
+            float height = 20 + random.nextFloat() * (IMAGE_HEIGHT / 2f);
+            float left = random.nextFloat() * (IMAGE_WIDTH - width);
+            float top = random.nextFloat() * (IMAGE_HEIGHT - height);
+            int index = batch.add(random.nextInt(LABELS.size()), 0.5f + random.nextFloat() * 0.5f,
+                left, top, left + width, top + height);
+            batch.setSide(index, (byte) random.nextInt(3));
+            batch.setDistance(index, (byte) random.nextInt(3));
+        }
+        return batch;
+    }
+
+    static List<Detection> detections(int boxCount, long seed) {
+        return batch(boxCount, seed).toDetections();
+    }
+
+    /**
+     * The same scene one frame later: every box shifted slightly, as the tracker sees it.
+     */
+    static DetectionBatch moved(DetectionBatch previous, long seed) {
+        Random random = new Random(seed);
+        DetectionBatch batch = new DetectionBatch(previous.size());
+        batch.reset(previous.getLabels());
+        for (int i = 0; i < previous.size(); i++) {
+            float dx = random.nextFloat() * 6 - 3;
+            float dy = random.nextFloat() * 6 - 3;
+            batch.add(previous.getClassId(i), previous.getConfidence(i),
+                previous.getLeft(i) + dx, previous.getTop(i) + dy,
+                previous.getRight(i) + dx, previous.getBottom(i) + dy);
+        }
+        return batch;
+    }
+
+    /**
+     * Decoded anchor boxes of a raw detector output ([ymin, xmin, ymax, xmax], normalized),
+     * clustered around objectCount objects the way neighbouring anchors fire on one object.
+     */
+    static float[][] rawBoxes(int anchorCount, int objectCount, long seed) {
+        Random random = new Random(seed);
+        float[][] objects = new float[objectCount][];
+        for (int o = 0; o < objectCount; o++) {
+            float width = 0.05f + random.nextFloat() * 0.3f;
+            float height = 0.05f + random.nextFloat() * 0.4f;
+            float left = random.nextFloat() * (1 - width);
+            float top = random.nextFloat() * (1 - height);
+            objects[o] = new float[]{top, left, top + height, left + width};
+        }
+        float[][] boxes = new float[anchorCount][4];
+        for (int i = 0; i < anchorCount; i++) {
+            float[] object = objects[random.nextInt(objectCount)];
+            for (int c = 0; c < 4; c++) {
+                boxes[i][c] = object[c] + (random.nextFloat() - 0.5f) * 0.04f;
+            }
+        }
+        return boxes;
+    }
+
+    /**
+     * Raw per-class scores: most anchors near zero, a few percent confident for some class.
+     */
+    static float[][] rawScores(int anchorCount, int classCount, long seed) {
+        Random random = new Random(seed);
+        float[][] scores = new float[anchorCount][classCount];
+        for (int i = 0; i < anchorCount; i++) {
+            for (int c = 0; c < classCount; c++) {
+                scores[i][c] = random.nextFloat() < 0.03f ? random.nextFloat() : random.nextFloat() * 0.05f;
+            }
+        }
+        return scores;
+    }
+
+    static OCRResult ocr(int lineCount) {
+        List<OCRResult.TextRegion> lines = new ArrayList<>();
+        for (int i = 0; i < lineCount; i++) {
+            lines.add(new OCRResult.TextRegion("EXIT " + i, 10, 10 + i * 20, 120, 28 + i * 20, "en"));
+        }
+        return new OCRResult(lines, lines, lines);
+    }
+}
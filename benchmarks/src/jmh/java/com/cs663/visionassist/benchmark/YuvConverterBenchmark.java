@@ -0,0 +1,147 @@
+package com.cs663.visionassist.benchmark;
+
+import com.cs663.visionassist.YuvConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * YUV_420_888 to ARGB for a 640x480 analysis frame, in the semi-planar (NV21-style,
+ * pixel stride 2) layout most camera HALs deliver and in fully planar I420.
+ *
+ * jpegRoundTrip is the baseline: the conversion the app used before YuvConverter, which
+ * packed the planes into an NV21 array, compressed it with YuvImage.compressToJpeg at
+ * quality 100 and decoded the JPEG with BitmapFactory. YuvImage and BitmapFactory are not
+ * available off-device, so the JDK's JPEG codec stands in for them, encoding the YCbCr
+ * samples directly as YuvImage does. The codecs differ from Android's libjpeg-turbo, so
+ * compare the two benchmarks with each other rather than with device timings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YuvConverterBenchmark {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    @Param({"0", "90"})
+    public int rotationDegrees;
+
+    @Param({"1", "2"})
+    public int uvPixelStride;
+
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+    private int uvRowStride;
+    private int[] argb;
+
+    // Baseline: full-resolution YCbCr samples for the encoder, and the encoder itself
+    private WritableRaster ycc;
+    private ImageWriter jpegWriter;
+    private ImageWriteParam jpegParam;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        random.nextBytes(luma);
+        yPlane = ByteBuffer.allocateDirect(luma.length);
+        yPlane.put(luma).rewind();
+
+        uvRowStride = WIDTH / 2 * uvPixelStride;
+        byte[] chroma = new byte[uvRowStride * HEIGHT / 2];
+        random.nextBytes(chroma);
+        if (uvPixelStride == 2) {
+            // Interleaved VU: U and V are views into the same buffer, offset by one byte
+            ByteBuffer interleaved = ByteBuffer.allocateDirect(chroma.length + 1);
+            interleaved.put(chroma).rewind();
+            vPlane = interleaved.slice();
+            interleaved.position(1);
+            uPlane = interleaved.slice();
+        } else {
+            uPlane = ByteBuffer.allocateDirect(chroma.length);
+            uPlane.put(chroma).rewind();
+            vPlane = ByteBuffer.allocateDirect(chroma.length);
+            random.nextBytes(chroma);
+            vPlane.put(chroma).rewind();
+        }
+        argb = new int[WIDTH * HEIGHT];
+
+        ImageIO.setUseCache(false);
+        ycc = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, WIDTH, HEIGHT, 3, null);
+        jpegWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
+        jpegParam = jpegWriter.getDefaultWriteParam();
+        jpegParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        jpegParam.setCompressionQuality(1f);
+    }
+
+    @Benchmark
+    public int[] yuvToArgb() {
+        YuvConverter.yuvToArgb(yPlane, WIDTH, 1, uPlane, vPlane, uvRowStride, uvPixelStride,
+            WIDTH, HEIGHT, rotationDegrees, argb);
+        return argb;
+    }
+
+    @Benchmark
+    public int[] jpegRoundTrip() throws IOException {
+        // Whole planes copied back to back, strides ignored, as the old code did. Rotation
+        // was not applied there either.
+        ByteBuffer y = yPlane.duplicate();
+        ByteBuffer u = uPlane.duplicate();
+        ByteBuffer v = vPlane.duplicate();
+        int ySize = y.remaining();
+        int uSize = u.remaining();
+        int vSize = v.remaining();
+        byte[] nv21 = new byte[ySize + uSize + vSize];
+        y.get(nv21, 0, ySize);
+        v.get(nv21, ySize, vSize);
+        u.get(nv21, ySize + vSize, uSize);
+
+        // compressToJpeg reads the NV21 layout: Y, then interleaved V/U at half resolution
+        byte[] samples = ((DataBufferByte) ycc.getDataBuffer()).getData();
+        for (int row = 0; row < HEIGHT; row++) {
+            int chroma = ySize + (row >> 1) * WIDTH;
+            for (int column = 0; column < WIDTH; column++) {
+                int s = (row * WIDTH + column) * 3;
+                int c = chroma + (column & ~1);
+                samples[s] = nv21[row * WIDTH + column];
+                samples[s + 1] = nv21[c + 1];
+                samples[s + 2] = nv21[c];
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            jpegWriter.setOutput(stream);
+            // A 3-band raster is written as YCbCr, without color conversion
+            jpegWriter.write(null, new IIOImage(ycc, null, null), jpegParam);
+        }
+
+        byte[] jpeg = out.toByteArray();
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        return decoded.getRGB(0, 0, WIDTH, HEIGHT, argb, 0, WIDTH);
+    }
+}